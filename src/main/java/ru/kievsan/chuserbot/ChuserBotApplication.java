@@ -8,7 +8,7 @@ import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzerImpl;
 import ru.kievsan.chuserbot.export.ReportRenderer;
 import ru.kievsan.chuserbot.export.ReportRendererImpl;
 import ru.kievsan.chuserbot.parser.Parser;
-import ru.kievsan.chuserbot.parser.ParserImpl;
+import ru.kievsan.chuserbot.parser.ParallelParserImpl;
 import ru.kievsan.chuserbot.tg.ChuserBot;
 import ru.kievsan.chuserbot.tg.ChatProcService;
 
@@ -23,11 +23,11 @@ public class ChuserBotApplication {
         }
 
         try {
-            Parser parser = new ParserImpl();
+            Parser parser = new ParallelParserImpl();
             ChatMessageAnalyzer analyzer = new ChatMessageAnalyzerImpl();
             ReportRenderer renderer = new ReportRendererImpl();
 
-            ChatProcService processingService = new ChatProcService(parser, analyzer, renderer);
+            ChatProcService processingService = new ChatProcService(parser, analyzer, renderer, ChatProcService.ProcMode.PARALLEL);
             ChuserBot bot = new ChuserBot(botToken, processingService);
 
             TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication();
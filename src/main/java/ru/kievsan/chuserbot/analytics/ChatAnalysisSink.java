@@ -0,0 +1,200 @@
+package ru.kievsan.chuserbot.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.MemberIndex;
+import ru.kievsan.chuserbot.domain.MemberStats;
+import ru.kievsan.chuserbot.domain.MentionIndex;
+import ru.kievsan.chuserbot.domain.ReplyGraph;
+import ru.kievsan.chuserbot.domain.TextIndex;
+import ru.kievsan.chuserbot.parser.ChatMessageHandler;
+import ru.kievsan.chuserbot.parser.MessageEvent;
+
+/**
+ * Инкрементальный анализатор: принимает сообщения по одному и накапливает уникальных участников и упоминания.
+ * Используется как обработчик потокового парсера (без промежуточных ChatExport.Message),
+ * а также внутри {@link ChatMessageAnalyzerImpl} для уже распарсенного экспорта.
+ * Повторный автор или упоминание не создают объектов: поиск идёт по строкам из сообщения.
+ * Статистика автора (сообщения, даты, упоминания) копится в {@link MemberStats} по номеру участника.
+ * Упоминания mention_name (пользователь без username) связываются с участником по user_id через {@link MemberIndex};
+ * ещё не встреченные user_id привязываются в {@link #result()}, когда известны все авторы.
+ * Ответы (reply_to_message_id) связывают отвечающего с автором исходного сообщения в {@link ReplyGraph}.
+ * Если задан предел памяти индекса слов, слова текста сообщений копятся в {@link TextIndex} для /search.
+ */
+@Slf4j
+public class ChatAnalysisSink implements ChatMessageHandler {
+
+    private static final String DELETED_ACCOUNT_NAME_EN = "Deleted account";
+    private static final String DELETED_ACCOUNT_NAME_RU = "Удалённый аккаунт";
+    private static final String MENTION_TYPE_NAME = "mention";
+    private static final String MENTION_NAME_TYPE_NAME = "mention_name";
+
+    private final MemberIndex members = new MemberIndex();
+    private final MentionIndex mentions = new MentionIndex();
+    private final MemberStats stats = new MemberStats();
+    private long deletedAccountMessages;
+    private long invalidMentions;
+
+    /**
+     * Анализатор без индекса слов.
+     */
+    public ChatAnalysisSink() {
+        this(0);
+    }
+
+    /**
+     * @param textIndexMaxBytes предел памяти индекса слов; 0 - индекс не строится.
+     */
+    public ChatAnalysisSink(long textIndexMaxBytes) {
+        if (textIndexMaxBytes < 0) {
+            throw new IllegalArgumentException("textIndexMaxBytes cannot be negative");
+        }
+        if (textIndexMaxBytes > 0) {
+            stats.enableText(textIndexMaxBytes);
+        }
+    }
+
+    @Override
+    public void onMessage(MessageEvent message) {
+        // Извлечение участника, не удалённый аккаунт
+        int slot = extractParticipant(message);
+
+        // Извлечение упоминания
+        int mentionCount = extractMentions(message);
+
+        if (slot >= 0) {
+            stats.addMessage(slot, message.date());
+            if (mentionCount > 0) {
+                stats.addMentions(slot, mentionCount);
+            }
+            if (message.replyToId() != MessageEvent.NO_ID) {
+                stats.replies().addReply(slot, message.replyToId());
+            }
+            if (stats.text() != null) {
+                indexText(slot, message);
+            }
+        }
+        stats.replies().addMessage(message.id(), slot >= 0 ? slot : ReplyGraph.NO_AUTHOR);
+    }
+
+    private void indexText(int slot, MessageEvent message) {
+        TextIndex text = stats.text();
+        text.nextMessage();
+        for (int i = 0; i < message.entityCount(); i++) {
+            text.add(slot, message.entityText(i));
+        }
+    }
+
+    /**
+     * Результат анализа по всем полученным сообщениям.
+     */
+    public ChatMsgAnalysisResult result() {
+        stats.resolvePending(members);
+        if (deletedAccountMessages > 0) {
+            log.info("Пропущены сообщения удалённых аккаунтов: {}", deletedAccountMessages);
+        }
+        if (stats.text() != null && stats.text().overflowed()) {
+            log.warn("Text index dropped: memory limit exceeded");
+        }
+        if (invalidMentions > 0) {
+            log.warn("Skipped invalid mentions: {}", invalidMentions);
+        }
+        log.info("Analysis completed: {} members, {} mentions, {} mentioned non-authors, {} reply pairs",
+                members.size(), mentions.size(), stats.pendingUserCount(), stats.replies().edgeCount());
+        return new ChatMsgAnalysisResult(members, mentions, stats);
+    }
+
+    /**
+     * Извлечь участника из сообщения (если он не является удалённым аккаунтом).
+     *
+     * @return номер участника или -1, если участника нет.
+     */
+    private int extractParticipant(MessageEvent message) {
+        String from = message.from();
+        String fromId = message.fromId();
+
+        // Пропускаем, когда:
+        // нет обязательных полей,
+        // fromId - не null и не blank,
+        // from - не null.
+        if (fromId == null || fromId.isBlank() || from == null) {
+            return -1;
+        }
+
+        if (isDeletedAccount(from)) {
+            // Без лога на каждое сообщение: итог выводится в result().
+            deletedAccountMessages++;
+            return -1;
+        }
+
+        return members.add(fromId, from);
+    }
+
+    /**
+     * Извлечь упоминания из сообщения.
+     *
+     * @return число корректных упоминаний в сообщении.
+     */
+    private int extractMentions(MessageEvent message) {
+        int count = 0;
+        for (int i = 0; i < message.entityCount(); i++) {
+            String text = message.entityText(i);
+
+            // Упоминание пользователя без username: связь с участником по user_id.
+            if (MENTION_NAME_TYPE_NAME.equals(message.entityType(i))) {
+                if (message.entityUserId(i) > 0) {
+                    extractMentionedUser(message.entityUserId(i));
+                    count++;
+                }
+                continue;
+            }
+
+            // Поиск сущностей "mention".
+            if (MENTION_TYPE_NAME.equals(message.entityType(i)) && text != null) {
+                // trim() возвращает ту же строку, если пробелов по краям нет.
+                String mentionText = text.trim();
+                if (mentionText.isEmpty()) {
+                    continue;
+                }
+                if (mentionText.charAt(0) != '@') {
+                    invalidMentions++;
+                    continue;
+                }
+                mentions.add(mentionText);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Учесть упоминание пользователя по user_id: участнику - сразу, иначе - в ожидающие.
+     */
+    private void extractMentionedUser(long userId) {
+        int slot = members.slotOfUser(userId);
+        if (slot >= 0) {
+            stats.addMentioned(slot, 1);
+        } else {
+            stats.addPendingMention(userId, 1);
+        }
+    }
+
+    /**
+     * Проверить, является ли аккаунт удалённым (без учёта регистра и пробелов по краям, без новых строк).
+     */
+    static boolean isDeletedAccount(String from) {
+        int start = 0;
+        int end = from.length();
+        while (start < end && from.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && from.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return matches(from, start, end, DELETED_ACCOUNT_NAME_EN) || matches(from, start, end, DELETED_ACCOUNT_NAME_RU);
+    }
+
+    private static boolean matches(String from, int start, int end, String name) {
+        return end - start == name.length() && from.regionMatches(true, start, name, 0, name.length());
+    }
+}
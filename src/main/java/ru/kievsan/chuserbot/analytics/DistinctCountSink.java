@@ -0,0 +1,103 @@
+package ru.kievsan.chuserbot.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.DistinctCountResult;
+import ru.kievsan.chuserbot.domain.HyperLogLog;
+import ru.kievsan.chuserbot.domain.SpaceSaving;
+import ru.kievsan.chuserbot.parser.ChatMessageHandler;
+import ru.kievsan.chuserbot.parser.MessageEvent;
+
+/**
+ * Приближённый подсчёт уникальных участников и упоминаний для очень больших экспортов:
+ * вместо множеств - два скетча {@link HyperLogLog} по 2^p байт, память не зависит от объёма файла.
+ * Правила отбора те же, что у {@link ChatAnalysisSink}: удалённые аккаунты пропускаются, участник - по fromId,
+ * упоминание - текст сущности mention без пробелов по краям, начинающийся с '@'. Для оценок хешируется сам текст
+ * в сообщении, без создания строк. Топ самых частых значений собирают две сводки {@link SpaceSaving}
+ * по {@link BotConfig#TOP_CAPACITY} счётчиков (строка и счётчик на значение) - они, а не скетчи, занимают
+ * основную память: при 256 счётчиках - десятки КБ на обработчик, по обработчику на фрагмент файла. Сливается с обработчиками других фрагментов через {@link #merge}.
+ */
+@Slf4j
+public class DistinctCountSink implements ChatMessageHandler {
+
+    private static final String MENTION_TYPE_NAME = "mention";
+
+    private final HyperLogLog members;
+    private final HyperLogLog mentions;
+    private final SpaceSaving topMembers;
+    private final SpaceSaving topMentions;
+    private final int topN;
+
+    public DistinctCountSink() {
+        this(BotConfig.HLL_PRECISION, BotConfig.TOP_CAPACITY, BotConfig.TOP_N);
+    }
+
+    /**
+     * @param precision   точность скетчей (см. {@link HyperLogLog}).
+     * @param topCapacity число счётчиков сводок топа (см. {@link SpaceSaving}).
+     * @param topN        длина топа в результате.
+     */
+    public DistinctCountSink(int precision, int topCapacity, int topN) {
+        if (topN < 0) {
+            throw new IllegalArgumentException("topN cannot be negative");
+        }
+        this.members = new HyperLogLog(precision);
+        this.mentions = new HyperLogLog(precision);
+        this.topMembers = new SpaceSaving(topCapacity);
+        this.topMentions = new SpaceSaving(topCapacity);
+        this.topN = topN;
+    }
+
+    @Override
+    public void onMessage(MessageEvent message) {
+        String from = message.from();
+        String fromId = message.fromId();
+        if (fromId != null && !fromId.isBlank() && from != null && !ChatAnalysisSink.isDeletedAccount(from)) {
+            members.add(HyperLogLog.hash(fromId, 0, fromId.length()));
+            topMembers.add(fromId, from);
+        }
+
+        for (int i = 0; i < message.entityCount(); i++) {
+            String text = message.entityText(i);
+            if (!MENTION_TYPE_NAME.equals(message.entityType(i)) || text == null) {
+                continue;
+            }
+            // Границы как у trim(), но без новой строки.
+            int start = 0;
+            int end = text.length();
+            while (start < end && text.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (start < end && text.charAt(start) == '@') {
+                mentions.add(HyperLogLog.hash(text, start, end));
+                String mention = start == 0 && end == text.length() ? text : text.substring(start, end);
+                topMentions.add(mention, mention);
+            }
+        }
+    }
+
+    /**
+     * Добавить подсчёт другого обработчика (например, следующего фрагмента файла).
+     */
+    public void merge(DistinctCountSink other) {
+        members.merge(other.members);
+        mentions.merge(other.mentions);
+        topMembers.merge(other.topMembers);
+        topMentions.merge(other.topMentions);
+    }
+
+    /**
+     * Оценки по всем полученным сообщениям.
+     */
+    public DistinctCountResult result() {
+        DistinctCountResult result = new DistinctCountResult(
+                members.estimate(), mentions.estimate(), members.relativeError(),
+                topMembers.top(topN), topMentions.top(topN), topMembers.exact() && topMentions.exact());
+        log.info("Distinct count completed: ~{} members, ~{} mentions (±{}%)",
+                result.membersEstimate(), result.mentionsEstimate(), Math.round(result.relativeError() * 1000) / 10.0);
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.kievsan.chuserbot.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult.ChatAnalysis;
+import ru.kievsan.chuserbot.parser.ChatMessageHandler;
+import ru.kievsan.chuserbot.parser.MessageEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Инкрементальный анализатор полного экспорта аккаунта: отдельный {@link ChatAnalysisSink} на каждый чат
+ * из chats.list, а также на сообщения корня (экспорт одного чата).
+ * Индекс слов (см. {@link ChatAnalysisSink#ChatAnalysisSink(long)}) строится, только если задан его предел.
+ */
+@Slf4j
+public class MultiChatAnalysisSink implements ChatMessageHandler {
+
+    private final long textIndexMaxBytes;
+    private final ChatAnalysisSink rootSink;
+    private final List<ChatAnalysis> chats = new ArrayList<>();
+    private ChatAnalysisSink currentSink;
+    private boolean rootHasMessages;
+
+    public MultiChatAnalysisSink() {
+        this(0);
+    }
+
+    /**
+     * @param textIndexMaxBytes предел памяти индекса слов каждого чата; 0 - индекс не строится.
+     */
+    public MultiChatAnalysisSink(long textIndexMaxBytes) {
+        this.textIndexMaxBytes = textIndexMaxBytes;
+        this.rootSink = new ChatAnalysisSink(textIndexMaxBytes);
+        this.currentSink = rootSink;
+    }
+
+    @Override
+    public void onMessage(MessageEvent message) {
+        if (currentSink == rootSink) {
+            rootHasMessages = true;
+        }
+        currentSink.onMessage(message);
+    }
+
+    @Override
+    public void onChatStart() {
+        currentSink = new ChatAnalysisSink(textIndexMaxBytes);
+    }
+
+    @Override
+    public void onChatEnd(ChatExport header) {
+        chats.add(new ChatAnalysis(header.getName(), header.getType(), header.getId(), currentSink.result()));
+        currentSink = rootSink;
+    }
+
+    /**
+     * Результаты по чатам и объединение по всем чатам.
+     * Объединение считается параллельно с сохранением порядка чатов: при совпадении fromId
+     * остаётся участник из более раннего чата.
+     *
+     * Может вызываться и после обрыва разбора: незавершённый чат попадает в результат без заголовка.
+     *
+     * @param header заголовок корня экспорта (для экспорта одного чата).
+     */
+    public MultiChatAnalysisResult result(ChatExport header) {
+        List<ChatAnalysis> all = new ArrayList<>(chats.size() + 1);
+        if (rootHasMessages || chats.isEmpty()) {
+            String name = header != null ? header.getName() : null;
+            String type = header != null ? header.getType() : null;
+            Long id = header != null ? header.getId() : null;
+            all.add(new ChatAnalysis(name, type, id, rootSink.result()));
+        }
+        all.addAll(chats);
+        if (currentSink != rootSink) {
+            // Файл оборван внутри чата - учитываем прочитанную часть.
+            all.add(new ChatAnalysis(null, null, null, currentSink.result()));
+        }
+
+        ChatMsgAnalysisResult total = all.parallelStream()
+                .map(ChatAnalysis::result)
+                .reduce(ChatMsgAnalysisResult::mergeChat)
+                .orElseGet(() -> new ChatMsgAnalysisResult(Set.of(), Set.of()));
+        log.info("Multi-chat analysis completed: {} chats, {} members, {} mentions",
+                all.size(), total.getMembersCount(), total.getMentionsCount());
+        return new MultiChatAnalysisResult(all, total);
+    }
+}
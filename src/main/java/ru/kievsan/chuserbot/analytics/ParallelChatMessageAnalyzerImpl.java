@@ -0,0 +1,121 @@
+package ru.kievsan.chuserbot.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.parser.MessageEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельный анализатор чата: список сообщений делится на диапазоны, каждый диапазон анализируется
+ * своим {@link ChatAnalysisSink} на ForkJoinPool, частичные результаты объединяются через
+ * {@link ChatMsgAnalysisResult#merge} в порядке диапазонов. Поэтому результат совпадает с последовательным
+ * анализом: при совпадении fromId остаётся имя из более раннего сообщения.
+ * Нужен только режиму {@link ru.kievsan.chuserbot.tg.ChatProcService.ProcMode#REFERENCE} (анализ готового
+ * ChatExport); режим PARALLEL распараллеливает разбор и анализ вместе и анализатор не вызывает.
+ */
+@Slf4j
+public class ParallelChatMessageAnalyzerImpl implements ChatMessageAnalyzer {
+
+    private static final int DEFAULT_MIN_RANGE_SIZE = 16 * 1024;
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int minRangeSize;
+
+    public ParallelChatMessageAnalyzerImpl() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MIN_RANGE_SIZE);
+    }
+
+    /**
+     * @param pool         пул для анализа диапазонов.
+     * @param minRangeSize минимальное число сообщений в диапазоне (меньшие списки анализируются в одном потоке).
+     */
+    public ParallelChatMessageAnalyzerImpl(ForkJoinPool pool, int minRangeSize) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        if (minRangeSize <= 0) {
+            throw new IllegalArgumentException("minRangeSize must be positive");
+        }
+        this.pool = pool;
+        this.minRangeSize = minRangeSize;
+    }
+
+    @Override
+    public ChatMsgAnalysisResult analyze(ChatExport chatExport) throws ChatAnalysisException {
+        if (chatExport == null) {
+            throw new ChatAnalysisException("ChatExport cannot be null");
+        }
+
+        List<ChatExport.Message> messages = chatExport.getMessages();
+        if (messages == null) {
+            log.warn("ChatExport has null messages list, returning empty result");
+            return new ChatMsgAnalysisResult(Set.of(), Set.of());
+        }
+        if (!(messages instanceof RandomAccess)) {
+            messages = new ArrayList<>(messages);
+        }
+
+        // Не больше нескольких диапазонов на поток: меньше частичных результатов для объединения.
+        int rangeSize = Math.max(minRangeSize, messages.size() / (pool.getParallelism() * RANGES_PER_THREAD) + 1);
+        if (messages.size() <= rangeSize) {
+            return analyzeRange(messages, 0, messages.size());
+        }
+
+        try {
+            return pool.invoke(new RangeTask(messages, 0, messages.size(), rangeSize));
+        } catch (RuntimeException e) {
+            throw new ChatAnalysisException("Parallel analysis failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static ChatMsgAnalysisResult analyzeRange(List<ChatExport.Message> messages, int from, int to) {
+        ChatAnalysisSink sink = new ChatAnalysisSink();
+        MessageEvent event = new MessageEvent();
+        for (int i = from; i < to; i++) {
+            ChatExport.Message message = messages.get(i);
+            if (message != null) {
+                sink.onMessage(event.fill(message));
+            }
+        }
+        return sink.result();
+    }
+
+    /**
+     * Анализ диапазона [from, to): делится пополам, пока не станет меньше rangeSize.
+     */
+    private static final class RangeTask extends RecursiveTask<ChatMsgAnalysisResult> {
+
+        private final List<ChatExport.Message> messages;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+
+        RangeTask(List<ChatExport.Message> messages, int from, int to, int rangeSize) {
+            this.messages = messages;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        protected ChatMsgAnalysisResult compute() {
+            if (to - from <= rangeSize) {
+                return analyzeRange(messages, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            RangeTask left = new RangeTask(messages, from, mid, rangeSize);
+            left.fork();
+            ChatMsgAnalysisResult right = new RangeTask(messages, mid, to, rangeSize).compute();
+            // Левый диапазон - более ранние сообщения, его участники имеют приоритет.
+            return left.join().merge(right);
+        }
+    }
+}
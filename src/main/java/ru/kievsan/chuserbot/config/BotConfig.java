@@ -1,6 +1,7 @@
 package ru.kievsan.chuserbot.config;
 
 import lombok.Getter;
+import ru.kievsan.chuserbot.domain.HyperLogLog;
 
 /**
  * Конфигурация бота с основными параметрами.
@@ -15,7 +16,98 @@ public class BotConfig {
      */
     public static final int EXCEL_THRESHOLD = 51;
 
+    /**
+     * Порог числа сущностей, с которого вместо Excel отправляется CSV в gzip (строки пишутся потоком,
+     * без книги; Excel к тому же не откроет лист больше 1 048 576 строк). Замер на 500 000 участников
+     * и 250 000 упоминаний: XLSX - около 10 с, CSV - около 0,9 с (с gzip - около 1,1 с); минимальная куча
+     * почти одинакова (112 и 108 МБ при 98 МБ самих данных) - обе записи потоковые.
+     * Переопределяется переменной окружения CHUSERBOT_CSV_THRESHOLD.
+     */
+    public static final long CSV_THRESHOLD = Math.max(EXCEL_THRESHOLD, envLong("CHUSERBOT_CSV_THRESHOLD", 500_000));
+
+    /**
+     * Порог размера файла экспорта (в байтах), выше которого загрузка пишется во временный файл
+     * и парсится через отображение файла в память, а не из кучи.
+     * Переопределяется переменной окружения CHUSERBOT_SPOOL_THRESHOLD_BYTES.
+     */
+    public static final long SPOOL_THRESHOLD_BYTES = envLong("CHUSERBOT_SPOOL_THRESHOLD_BYTES", 16L * 1024 * 1024);
+
+    /**
+     * Время без активности (в минутах), после которого сессия загрузки нескольких файлов удаляется.
+     * Переопределяется переменной окружения CHUSERBOT_SESSION_IDLE_MINUTES.
+     */
+    public static final long SESSION_IDLE_MINUTES = envLong("CHUSERBOT_SESSION_IDLE_MINUTES", 30);
+
+    /**
+     * Предел памяти сессий: суммарное число хранимых участников и упоминаний по всем открытым сессиям.
+     * Переопределяется переменной окружения CHUSERBOT_SESSION_MAX_ENTITIES.
+     */
+    public static final long SESSION_MAX_ENTITIES = envLong("CHUSERBOT_SESSION_MAX_ENTITIES", 5_000_000);
+
+    /**
+     * Время без обращений (в минутах), после которого сохранённый результат анализа чата (для /active) удаляется.
+     * Переопределяется переменной окружения CHUSERBOT_RESULT_CACHE_IDLE_MINUTES.
+     */
+    public static final long RESULT_CACHE_IDLE_MINUTES = envLong("CHUSERBOT_RESULT_CACHE_IDLE_MINUTES", 60);
+
+    /**
+     * Предел памяти сохранённых результатов анализа: суммарное число участников и упоминаний по всем чатам.
+     * Переопределяется переменной окружения CHUSERBOT_RESULT_CACHE_MAX_ENTITIES.
+     */
+    public static final long RESULT_CACHE_MAX_ENTITIES = envLong("CHUSERBOT_RESULT_CACHE_MAX_ENTITIES", 5_000_000);
+
+    /**
+     * Предел памяти индекса слов сообщений одного файла для /search, в байтах; при превышении индекс файла
+     * не сохраняется. Индекс строится только для чатов, включивших его командой /index; 0 - команда недоступна.
+     * Переопределяется переменной окружения CHUSERBOT_SEARCH_INDEX_MAX_BYTES.
+     */
+    public static final long SEARCH_INDEX_MAX_BYTES =
+            Math.max(0, envLong("CHUSERBOT_SEARCH_INDEX_MAX_BYTES", 16L * 1024 * 1024));
+
+    /**
+     * Общий предел памяти индексов слов, в байтах: поровну делится между сохранёнными результатами и сессиями,
+     * при превышении удаляются индексы, к которым дольше всего не обращались. По умолчанию - 1/8 кучи JVM.
+     * Переопределяется переменной окружения CHUSERBOT_SEARCH_INDEX_BUDGET_BYTES.
+     */
+    public static final long SEARCH_INDEX_BUDGET_BYTES =
+            Math.max(2, envLong("CHUSERBOT_SEARCH_INDEX_BUDGET_BYTES", Runtime.getRuntime().maxMemory() / 8));
+
+    /**
+     * Точность скетчей HyperLogLog режима подсчёта (/count): 2^p регистров по байту на скетч,
+     * погрешность 1.04 / sqrt(2^p). При 12 - 4 КБ на скетч и ±1.6%.
+     * Переопределяется переменной окружения CHUSERBOT_HLL_PRECISION (от 4 до 16).
+     */
+    public static final int HLL_PRECISION = (int) Math.max(HyperLogLog.MIN_PRECISION,
+            Math.min(HyperLogLog.MAX_PRECISION, envLong("CHUSERBOT_HLL_PRECISION", 12)));
+
+    /**
+     * Длина топа самых активных участников и самых частых упоминаний в отчётах.
+     * Переопределяется переменной окружения CHUSERBOT_TOP_N.
+     */
+    public static final int TOP_N = (int) Math.max(1, Math.min(1000, envLong("CHUSERBOT_TOP_N", 20)));
+
+    /**
+     * Число счётчиков сводки Space-Saving в режиме подсчёта (/count): до стольких уникальных значений
+     * топ точный, дальше - оценка с гарантией для значений с долей больше 1 / TOP_CAPACITY.
+     * Сводки держит каждый обработчик фрагмента файла, поэтому счётчиков немного: при 256 - десятки КБ
+     * на обработчик. Переопределяется переменной окружения CHUSERBOT_TOP_CAPACITY (не больше 4096).
+     */
+    public static final int TOP_CAPACITY = (int) Math.max(TOP_N,
+            Math.min(4096, envLong("CHUSERBOT_TOP_CAPACITY", 256)));
+
     // Утильный класс.
     private BotConfig() {
     }
+
+    private static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 }
@@ -0,0 +1,216 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Индекс активности по дням (UTC): для каждого дня - число сообщений и множество номеров авторов
+ * из {@link MemberIndex}. Множество дня хранится как в roaring bitmap: отсортированный массив номеров,
+ * пока авторов мало, и битовая карта, когда массив становится больше {@link #ARRAY_LIMIT}.
+ * Запрос «кто писал с X по Y» - одно OR множества на каждый день диапазона, без повторного чтения экспорта.
+ * Экземпляр не потокобезопасен.
+ */
+public final class ActivityIndex {
+
+    /**
+     * Наибольший размер массива номеров дня, дальше день переходит на битовую карту.
+     */
+    static final int ARRAY_LIMIT = 4096;
+
+    private final TreeMap<Long, Day> days = new TreeMap<>();
+    // Сообщения обычно идут по времени: день предыдущего сообщения ищется без дерева.
+    private long lastEpochDay;
+    private Day lastDay;
+
+    /**
+     * Учесть сообщение участника.
+     *
+     * @param slot номер участника.
+     * @param date дата сообщения в секундах эпохи UTC; {@link MemberStats#NO_DATE} пропускается.
+     */
+    public void add(int slot, long date) {
+        if (slot < 0) {
+            throw new IndexOutOfBoundsException("Member slot cannot be negative: " + slot);
+        }
+        if (date == MemberStats.NO_DATE) {
+            return;
+        }
+        day(Math.floorDiv(date, 86_400L)).add(slot, 1);
+    }
+
+    /**
+     * Число дней с сообщениями.
+     */
+    public int dayCount() {
+        return days.size();
+    }
+
+    /**
+     * Первый день с сообщениями (номер дня эпохи) или -1, если дней нет.
+     */
+    public long firstEpochDay() {
+        return days.isEmpty() ? -1 : days.firstKey();
+    }
+
+    /**
+     * Последний день с сообщениями (номер дня эпохи) или -1, если дней нет.
+     */
+    public long lastEpochDay() {
+        return days.isEmpty() ? -1 : days.lastKey();
+    }
+
+    /**
+     * Число сообщений за дни [fromEpochDay, toEpochDay].
+     */
+    public long messageCount(long fromEpochDay, long toEpochDay) {
+        long count = 0;
+        for (Day day : range(fromEpochDay, toEpochDay).values()) {
+            count += day.messages;
+        }
+        return count;
+    }
+
+    /**
+     * Номера участников, писавших в дни [fromEpochDay, toEpochDay].
+     */
+    public BitSet activeSlots(long fromEpochDay, long toEpochDay) {
+        long[] words = new long[0];
+        for (Day day : range(fromEpochDay, toEpochDay).values()) {
+            words = day.orInto(words);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Добавить активность другого индекса.
+     *
+     * @param other   индекс с номерами другого {@link MemberIndex}.
+     * @param slotMap номер в этом индексе для каждого номера other (см. {@link MemberIndex#mergeFrom}).
+     */
+    public void merge(ActivityIndex other, int[] slotMap) {
+        for (Map.Entry<Long, Day> entry : other.days.entrySet()) {
+            Day source = entry.getValue();
+            Day target = day(entry.getKey());
+            target.messages += source.messages;
+            source.forEach(slot -> target.add(slotMap[slot], 0));
+        }
+    }
+
+    /**
+     * Независимая копия.
+     */
+    public ActivityIndex copy() {
+        ActivityIndex copy = new ActivityIndex();
+        for (Map.Entry<Long, Day> entry : days.entrySet()) {
+            copy.days.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    private Map<Long, Day> range(long fromEpochDay, long toEpochDay) {
+        if (fromEpochDay > toEpochDay) {
+            throw new IllegalArgumentException("fromEpochDay cannot be after toEpochDay");
+        }
+        return days.subMap(fromEpochDay, true, toEpochDay, true);
+    }
+
+    private Day day(long epochDay) {
+        if (lastDay == null || lastEpochDay != epochDay) {
+            lastDay = days.computeIfAbsent(epochDay, key -> new Day());
+            lastEpochDay = epochDay;
+        }
+        return lastDay;
+    }
+
+    /**
+     * Один день: число сообщений и множество номеров авторов (массив или битовая карта).
+     */
+    private static final class Day {
+        private int messages;
+        private int[] slots = new int[4];
+        private int size;
+        private long[] bits;
+
+        void add(int slot, int messageCount) {
+            messages += messageCount;
+            if (bits != null) {
+                setBit(slot);
+                return;
+            }
+            int pos = Arrays.binarySearch(slots, 0, size, slot);
+            if (pos >= 0) {
+                return;
+            }
+            if (size == ARRAY_LIMIT) {
+                toBitmap();
+                setBit(slot);
+                return;
+            }
+            int insert = -pos - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            System.arraycopy(slots, insert, slots, insert + 1, size - insert);
+            slots[insert] = slot;
+            size++;
+        }
+
+        long[] orInto(long[] words) {
+            if (bits != null) {
+                if (words.length < bits.length) {
+                    words = Arrays.copyOf(words, bits.length);
+                }
+                for (int i = 0; i < bits.length; i++) {
+                    words[i] |= bits[i];
+                }
+                return words;
+            }
+            if (size > 0 && words.length <= (slots[size - 1] >>> 6)) {
+                words = Arrays.copyOf(words, (slots[size - 1] >>> 6) + 1);
+            }
+            for (int i = 0; i < size; i++) {
+                words[slots[i] >>> 6] |= 1L << slots[i];
+            }
+            return words;
+        }
+
+        void forEach(IntConsumer action) {
+            if (bits == null) {
+                for (int i = 0; i < size; i++) {
+                    action.accept(slots[i]);
+                }
+                return;
+            }
+            BitSet.valueOf(bits).stream().forEach(action);
+        }
+
+        Day copy() {
+            Day copy = new Day();
+            copy.messages = messages;
+            copy.slots = slots != null ? slots.clone() : null;
+            copy.size = size;
+            copy.bits = bits != null ? bits.clone() : null;
+            return copy;
+        }
+
+        private void toBitmap() {
+            bits = new long[(slots[size - 1] >>> 6) + 1];
+            for (int i = 0; i < size; i++) {
+                bits[slots[i] >>> 6] |= 1L << slots[i];
+            }
+            slots = null;
+            size = 0;
+        }
+
+        private void setBit(int slot) {
+            int word = slot >>> 6;
+            if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, Math.max(bits.length * 2, word + 1));
+            }
+            bits[word] |= 1L << slot;
+        }
+    }
+}
@@ -24,14 +24,23 @@ public class ChatExport {
      * Сообщение в чате.
      * Поле text из JSON не парсится, т.к. может быть строкой или массивом.
      * Используется только textEntities для извлечения упоминаний.
+     * Дата - секунды эпохи UTC из date_unixtime (при его отсутствии - из локального времени date).
      */
     @Data
     public static class Message {
+        private Long id;
+
+        @JsonProperty("date_unixtime")
+        private Long date;
+
         private String from;
 
         @JsonProperty("from_id")
         private String fromId;
 
+        @JsonProperty("reply_to_message_id")
+        private Long replyToMessageId;
+
         @JsonProperty("text_entities")
         private List<TextEntity> textEntities;
 
@@ -53,10 +62,14 @@ public class ChatExport {
 
     /**
      * Текстовая сущность в сообщении (plain, mention и т.д.).
+     * userId есть у mention_name - упоминания пользователя без username.
      */
     @Data
     public static class TextEntity {
         private String type;
         private String text;
+
+        @JsonProperty("user_id")
+        private Long userId;
     }
 }
@@ -4,8 +4,11 @@ import java.util.Set;
 
 /**
  * Результат анализа чата: уникальные участники и упоминания.
+ * Участники и упоминания анализатора хранятся в индексах {@link MemberIndex} и {@link MentionIndex}.
+ * Статистика активности участников (stats) есть только у результата анализатора и адресуется
+ * номерами участников в {@link MemberIndex}; у результата, собранного из множеств, она равна null.
  */
-public record ChatMsgAnalysisResult(Set<Member> members, Set<Mention> mentions) {
+public record ChatMsgAnalysisResult(Set<Member> members, Set<Mention> mentions, MemberStats stats) {
 
     public ChatMsgAnalysisResult {
         if (members == null) {
@@ -14,6 +17,27 @@ public record ChatMsgAnalysisResult(Set<Member> members, Set<Mention> mentions)
         if (mentions == null) {
             throw new IllegalArgumentException("mentions cannot be null");
         }
+        if (stats != null && !(members instanceof MemberIndex)) {
+            throw new IllegalArgumentException("stats require members as MemberIndex");
+        }
+    }
+
+    public ChatMsgAnalysisResult(Set<Member> members, Set<Mention> mentions) {
+        this(members, mentions, null);
+    }
+
+    /**
+     * Участники в виде индекса с номерами (для множества другого типа строится копия).
+     */
+    public MemberIndex memberIndex() {
+        return members instanceof MemberIndex index ? index : MemberIndex.copyOf(members);
+    }
+
+    /**
+     * Упоминания в виде индекса с числом вхождений (для множества другого типа строится копия с единицами).
+     */
+    public MentionIndex mentionIndex() {
+        return mentions instanceof MentionIndex index ? index : MentionIndex.copyOf(mentions);
     }
 
     /**
@@ -36,4 +60,46 @@ public record ChatMsgAnalysisResult(Set<Member> members, Set<Mention> mentions)
     public int getTotalCount() {
         return getMembersCount() + getMentionsCount();
     }
+
+    /**
+     * Объединить с результатом анализа следующей части чата.
+     * При совпадении fromId сохраняется участник из этого (более раннего) результата, статистика суммируется.
+     * Ответы следующей части на сообщения этой связываются по id сообщения.
+     *
+     * @param next результат анализа следующей части.
+     * @return новый объединённый результат.
+     */
+    public ChatMsgAnalysisResult merge(ChatMsgAnalysisResult next) {
+        return merge(next, true);
+    }
+
+    /**
+     * Объединить с результатом анализа другого чата (или другого файла): как {@link #merge}, но id сообщений
+     * разных чатов не связываются, и граф ответов результата завершается ({@link ReplyGraph#seal()}).
+     *
+     * @param other результат анализа другого чата.
+     * @return новый объединённый результат.
+     */
+    public ChatMsgAnalysisResult mergeChat(ChatMsgAnalysisResult other) {
+        return merge(other, false);
+    }
+
+    private ChatMsgAnalysisResult merge(ChatMsgAnalysisResult next, boolean sameChat) {
+        MemberIndex mergedMembers = MemberIndex.copyOf(members);
+        int[] nextSlots = mergedMembers.mergeFrom(next.memberIndex());
+        MentionIndex mergedMentions = MentionIndex.copyOf(mentions);
+        mergedMentions.mergeFrom(next.mentionIndex());
+
+        MemberStats mergedStats = null;
+        if (stats != null || next.stats() != null) {
+            // Копия индекса сохраняет номера участников этого результата.
+            mergedStats = stats != null ? stats.copy() : new MemberStats(mergedMembers.size());
+            if (next.stats() != null) {
+                mergedStats.merge(next.stats(), nextSlots, sameChat);
+            }
+            // Упомянутые в одной части могут оказаться авторами другой.
+            mergedStats.resolvePending(mergedMembers);
+        }
+        return new ChatMsgAnalysisResult(mergedMembers, mergedMentions, mergedStats);
+    }
 }
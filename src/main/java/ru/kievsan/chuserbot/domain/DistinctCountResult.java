@@ -0,0 +1,34 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.List;
+
+/**
+ * Результат приближённого подсчёта: оценки числа уникальных участников и упоминаний без самих списков
+ * и топ самых частых значений из сводок {@link SpaceSaving}.
+ *
+ * @param membersEstimate  оценка числа уникальных участников.
+ * @param mentionsEstimate оценка числа уникальных упоминаний.
+ * @param relativeError    стандартная относительная погрешность оценок (0.016 - это ±1.6%).
+ * @param topMembers       самые активные участники (ключ - fromId, подпись - имя), по убыванию.
+ * @param topMentions      самые частые упоминания, по убыванию.
+ * @param topExact         точны ли счётчики топа (ни одно значение не вытеснялось из сводок).
+ */
+public record DistinctCountResult(long membersEstimate, long mentionsEstimate, double relativeError,
+                                  List<SpaceSaving.Entry> topMembers, List<SpaceSaving.Entry> topMentions,
+                                  boolean topExact) {
+
+    public DistinctCountResult {
+        if (membersEstimate < 0 || mentionsEstimate < 0) {
+            throw new IllegalArgumentException("estimates cannot be negative");
+        }
+        if (relativeError < 0) {
+            throw new IllegalArgumentException("relativeError cannot be negative");
+        }
+        topMembers = topMembers == null ? List.of() : List.copyOf(topMembers);
+        topMentions = topMentions == null ? List.of() : List.copyOf(topMentions);
+    }
+
+    public DistinctCountResult(long membersEstimate, long mentionsEstimate, double relativeError) {
+        this(membersEstimate, mentionsEstimate, relativeError, List.of(), List.of(), true);
+    }
+}
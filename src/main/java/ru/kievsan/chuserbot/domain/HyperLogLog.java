@@ -0,0 +1,122 @@
+package ru.kievsan.chuserbot.domain;
+
+/**
+ * Скетч HyperLogLog для приближённого подсчёта числа уникальных значений.
+ * Память постоянна: 2^precision однобайтовых регистров, независимо от объёма данных.
+ * Стандартная относительная погрешность оценки - 1.04 / sqrt(2^precision).
+ * Значения добавляются 64-битным хешем ({@link #hash}), скетчи одинаковой точности объединяются без потерь.
+ * Экземпляр не потокобезопасен.
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision число бит хеша на номер регистра (от {@link #MIN_PRECISION} до {@link #MAX_PRECISION}).
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Добавить значение по его 64-битному хешу.
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Маркерный бит ограничивает ранг, когда оставшиеся биты хеша нулевые.
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Объединить со скетчем той же точности: результат - как если бы все значения добавили в этот скетч.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with precision " + precision
+                    + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Оценка числа уникальных значений.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Малые значения: линейный подсчёт по пустым регистрам точнее.
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Стандартная относительная погрешность оценки.
+     */
+    public double relativeError() {
+        return relativeError(precision);
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Стандартная относительная погрешность для заданной точности.
+     */
+    public static double relativeError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    /**
+     * 64-битный хеш символов s[from, to) без создания строк: FNV-1a и финальное перемешивание MurmurHash3.
+     */
+    public static long hash(CharSequence s, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
@@ -0,0 +1,339 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Компактный индекс участников: множество {@link Member} с уникальностью по fromId.
+ * Идентификаторы вида user123 / channel123 / chat123 кодируются в long (тег типа в старших битах + число)
+ * и хранятся в хеш-таблице с открытой адресацией без объектов-обёрток; прочие идентификаторы - в запасной карте.
+ * Каждому участнику выдаётся номер (slot) в порядке добавления, имя хранится один раз в массиве по номеру.
+ * При повторном добавлении того же fromId сохраняется первое имя. Экземпляр не потокобезопасен.
+ */
+public final class MemberIndex extends AbstractSet<Member> {
+
+    private static final String[] ID_PREFIXES = {"user", "channel", "chat"};
+    private static final int TAG_SHIFT = 60;
+    private static final long MAX_ENCODED_NUMBER = (1L << TAG_SHIFT) - 1;
+    private static final long USER_TAG = 1L << TAG_SHIFT;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Хеш-таблица: пары (закодированный fromId, номер участника) в соседних ячейках, ключ 0 - пустая пара.
+    private long[] table;
+    private int tableMask;
+
+    // Данные участников по номеру.
+    private long[] ids;
+    private String[] names;
+    private String[] otherIds;
+    private Map<String, Integer> otherSlots;
+    private int size;
+
+    public MemberIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize ожидаемое число участников.
+     */
+    public MemberIndex(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize cannot be negative");
+        }
+        int capacity = tableCapacity(Math.max(expectedSize, INITIAL_CAPACITY));
+        table = new long[capacity * 2];
+        tableMask = capacity - 1;
+        ids = new long[Math.max(expectedSize, INITIAL_CAPACITY)];
+        names = new String[ids.length];
+    }
+
+    /**
+     * Индекс с участниками из произвольного множества (в порядке его обхода).
+     */
+    public static MemberIndex copyOf(Set<Member> members) {
+        if (members instanceof MemberIndex index) {
+            return index.copy();
+        }
+        MemberIndex index = new MemberIndex(members.size());
+        index.addAll(members);
+        return index;
+    }
+
+    /**
+     * Добавить участника, если его fromId ещё не встречался.
+     *
+     * @return номер участника (новый или существующий).
+     * @throws IllegalArgumentException если fromId пустой или displayName равен null.
+     */
+    public int add(String fromId, String displayName) {
+        if (fromId == null || fromId.isBlank()) {
+            throw new IllegalArgumentException("fromId cannot be null or blank");
+        }
+        if (displayName == null) {
+            throw new IllegalArgumentException("displayName cannot be null");
+        }
+
+        long key = encode(fromId);
+        if (key == 0) {
+            return addOther(fromId, displayName);
+        }
+        return addEncoded(key, displayName);
+    }
+
+    /**
+     * Добавить всех участников другого индекса (по закодированным ключам, без создания {@link Member}).
+     */
+    @Override
+    public boolean addAll(Collection<? extends Member> members) {
+        if (!(members instanceof MemberIndex other)) {
+            return super.addAll(members);
+        }
+        int before = size;
+        mergeFrom(other);
+        return size != before;
+    }
+
+    /**
+     * Добавить всех участников другого индекса и вернуть соответствие номеров.
+     *
+     * @return номер в этом индексе для каждого номера other.
+     */
+    public int[] mergeFrom(MemberIndex other) {
+        int[] slotMap = new int[other.size];
+        for (int slot = 0; slot < other.size; slot++) {
+            long key = other.ids[slot];
+            slotMap[slot] = key == 0
+                    ? addOther(other.otherIds[slot], other.names[slot])
+                    : addEncoded(key, other.names[slot]);
+        }
+        return slotMap;
+    }
+
+    private int addEncoded(long key, String displayName) {
+        int cell = findCell(key);
+        if (table[cell] != 0) {
+            return (int) table[cell + 1];
+        }
+        int slot = newSlot(key, displayName);
+        table[cell] = key;
+        table[cell + 1] = slot;
+        if (size * 2 > tableMask + 1) {
+            rehash((tableMask + 1) * 2);
+        }
+        return slot;
+    }
+
+    /**
+     * Номер участника по fromId или -1, если такого нет.
+     */
+    public int slotOf(String fromId) {
+        if (fromId == null) {
+            return -1;
+        }
+        long key = encode(fromId);
+        if (key == 0) {
+            Integer slot = otherSlots != null ? otherSlots.get(fromId) : null;
+            return slot != null ? slot : -1;
+        }
+        int cell = findCell(key);
+        return table[cell] != 0 ? (int) table[cell + 1] : -1;
+    }
+
+    /**
+     * Номер участника с fromId "user" + userId (без построения строки) или -1, если такого нет.
+     */
+    public int slotOfUser(long userId) {
+        if (userId < 0 || userId > MAX_ENCODED_NUMBER) {
+            return -1;
+        }
+        int cell = findCell(USER_TAG | userId);
+        return table[cell] != 0 ? (int) table[cell + 1] : -1;
+    }
+
+    /**
+     * Идентификатор участника по номеру.
+     */
+    public String fromId(int slot) {
+        checkSlot(slot);
+        long key = ids[slot];
+        if (key == 0) {
+            return otherIds[slot];
+        }
+        return ID_PREFIXES[(int) (key >>> TAG_SHIFT) - 1] + (key & MAX_ENCODED_NUMBER);
+    }
+
+    /**
+     * Имя участника по номеру.
+     */
+    public String displayName(int slot) {
+        checkSlot(slot);
+        return names[slot];
+    }
+
+    /**
+     * Участник по номеру.
+     */
+    public Member member(int slot) {
+        return new Member(fromId(slot), displayName(slot));
+    }
+
+    /**
+     * Копия индекса с теми же номерами участников.
+     */
+    public MemberIndex copy() {
+        MemberIndex copy = new MemberIndex(0);
+        copy.table = table.clone();
+        copy.tableMask = tableMask;
+        copy.ids = ids.clone();
+        copy.names = names.clone();
+        copy.otherIds = otherIds != null ? otherIds.clone() : null;
+        copy.otherSlots = otherSlots != null ? new HashMap<>(otherSlots) : null;
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public boolean add(Member member) {
+        int before = size;
+        add(member.fromId(), member.displayName());
+        return size != before;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Member member && slotOf(member.fromId()) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Member> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Member next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return member(next++);
+            }
+        };
+    }
+
+    private int addOther(String fromId, String displayName) {
+        if (otherSlots == null) {
+            otherSlots = new HashMap<>();
+        }
+        Integer existing = otherSlots.get(fromId);
+        if (existing != null) {
+            return existing;
+        }
+        int slot = newSlot(0, displayName);
+        if (otherIds == null || otherIds.length < ids.length) {
+            otherIds = otherIds == null ? new String[ids.length] : Arrays.copyOf(otherIds, ids.length);
+        }
+        otherIds[slot] = fromId;
+        otherSlots.put(fromId, slot);
+        return slot;
+    }
+
+    private int newSlot(long key, String displayName) {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            if (otherIds != null) {
+                otherIds = Arrays.copyOf(otherIds, capacity);
+            }
+        }
+        ids[size] = key;
+        names[size] = displayName;
+        return size++;
+    }
+
+    /**
+     * Индекс ключа пары с этим ключом или первой пустой пары на пути линейного пробирования.
+     */
+    private int findCell(long key) {
+        int pair = mix(key) & tableMask;
+        while (table[pair * 2] != 0 && table[pair * 2] != key) {
+            pair = (pair + 1) & tableMask;
+        }
+        return pair * 2;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        table = new long[capacity * 2];
+        tableMask = capacity - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0) {
+                int cell = findCell(old[i]);
+                table[cell] = old[i];
+                table[cell + 1] = old[i + 1];
+            }
+        }
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Member slot " + slot + " out of bounds: " + size);
+        }
+    }
+
+    private static int tableCapacity(int expectedSize) {
+        // Заполненность таблицы не больше половины.
+        return Integer.highestOneBit(expectedSize * 2 - 1) << 1;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Закодировать fromId в long: тег префикса в старших 4 битах и число в младших 60.
+     * Возвращает 0, если fromId не подходит под формат (префикс + десятичное число без ведущих нулей).
+     */
+    static long encode(String fromId) {
+        for (int tag = 0; tag < ID_PREFIXES.length; tag++) {
+            String prefix = ID_PREFIXES[tag];
+            if (fromId.startsWith(prefix)) {
+                long number = parseNumber(fromId, prefix.length());
+                return number < 0 ? 0 : ((long) (tag + 1) << TAG_SHIFT) | number;
+            }
+        }
+        return 0;
+    }
+
+    private static long parseNumber(String s, int from) {
+        int length = s.length() - from;
+        if (length <= 0 || length > 18 || (length > 1 && s.charAt(from) == '0')) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number <= MAX_ENCODED_NUMBER ? number : -1;
+    }
+}
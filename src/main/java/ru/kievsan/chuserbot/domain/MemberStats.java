@@ -0,0 +1,339 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.Arrays;
+
+/**
+ * Статистика активности участников по номеру (slot) из {@link MemberIndex}:
+ * число сообщений, даты первого и последнего сообщения, число упоминаний в сообщениях участника
+ * и сколько раз участника упомянули через mention_name (по user_id).
+ * Хранится в параллельных примитивных массивах (28 байт на участника), без объекта на участника.
+ * Номер без данных читается как нули. Даты - секунды эпохи UTC, 0 - даты нет.
+ * Кто писал в какой день, хранит {@link ActivityIndex} ({@link #activity()}), кто кому отвечал -
+ * {@link ReplyGraph} ({@link #replies()}), какие слова встречались в сообщениях - необязательный
+ * {@link TextIndex} ({@link #text()}).
+ * <p>
+ * Упоминание user_id, которого ещё нет среди участников, копится в таблице ожидающих (user_id -> число)
+ * и привязывается к участнику в {@link #resolvePending(MemberIndex)} - автор может написать позже
+ * или оказаться в другой части чата. Экземпляр не потокобезопасен.
+ */
+public final class MemberStats {
+
+    /**
+     * Значение даты, когда у участника нет сообщений с датой.
+     */
+    public static final long NO_DATE = 0;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] messageCounts;
+    private long[] firstDates;
+    private long[] lastDates;
+    private int[] mentionCounts;
+    private int[] mentionedCounts;
+    private int size;
+    private ActivityIndex activity = new ActivityIndex();
+    private ReplyGraph replies = new ReplyGraph();
+    private TextIndex text;
+
+    // Ожидающие упоминания: открытая адресация, ключ - user_id (0 - пустая ячейка).
+    private long[] pendingUserIds = new long[INITIAL_CAPACITY];
+    private int[] pendingCounts = new int[INITIAL_CAPACITY];
+    private int pendingSize;
+
+    public MemberStats() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize ожидаемое число участников.
+     */
+    public MemberStats(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize cannot be negative");
+        }
+        int capacity = Math.max(expectedSize, INITIAL_CAPACITY);
+        messageCounts = new int[capacity];
+        firstDates = new long[capacity];
+        lastDates = new long[capacity];
+        mentionCounts = new int[capacity];
+        mentionedCounts = new int[capacity];
+    }
+
+    /**
+     * Учесть сообщение участника.
+     *
+     * @param date дата сообщения или {@link #NO_DATE}.
+     */
+    public void addMessage(int slot, long date) {
+        ensureSlot(slot);
+        messageCounts[slot]++;
+        addDates(slot, date, date);
+        activity.add(slot, date);
+    }
+
+    /**
+     * Учесть упоминания в сообщении участника.
+     */
+    public void addMentions(int slot, int count) {
+        ensureSlot(slot);
+        mentionCounts[slot] += count;
+    }
+
+    /**
+     * Учесть упоминание участника через mention_name.
+     */
+    public void addMentioned(int slot, int count) {
+        ensureSlot(slot);
+        mentionedCounts[slot] += count;
+    }
+
+    /**
+     * Учесть упоминание user_id, которого пока нет среди участников.
+     */
+    public void addPendingMention(long userId, int count) {
+        if (userId <= 0) {
+            throw new IllegalArgumentException("userId must be positive");
+        }
+        int cell = findPending(userId);
+        if (pendingUserIds[cell] == 0) {
+            pendingUserIds[cell] = userId;
+            pendingSize++;
+        }
+        pendingCounts[cell] += count;
+        if (pendingSize * 2 > pendingUserIds.length) {
+            rehashPending(pendingUserIds.length * 2);
+        }
+    }
+
+    /**
+     * Привязать ожидающие упоминания к участникам индекса (один поиск в хеш-таблице на user_id)
+     * и ожидающие ответы - к уже известным сообщениям. Не найденные остаются ожидающими.
+     */
+    public void resolvePending(MemberIndex members) {
+        replies.resolvePending();
+        if (pendingSize == 0) {
+            return;
+        }
+        int remaining = 0;
+        for (int cell = 0; cell < pendingUserIds.length; cell++) {
+            long userId = pendingUserIds[cell];
+            if (userId == 0) {
+                continue;
+            }
+            int slot = members.slotOfUser(userId);
+            if (slot >= 0) {
+                addMentioned(slot, pendingCounts[cell]);
+                pendingUserIds[cell] = 0;
+                pendingCounts[cell] = 0;
+            } else {
+                remaining++;
+            }
+        }
+        if (remaining != pendingSize) {
+            // Удаление из открытой адресации ломает цепочки пробирования - перестраиваем таблицу.
+            pendingSize = remaining;
+            rehashPending(pendingUserIds.length);
+        }
+    }
+
+    /**
+     * Число разных упомянутых через mention_name пользователей, не найденных среди участников.
+     */
+    public int pendingUserCount() {
+        return pendingSize;
+    }
+
+    /**
+     * Число сообщений участника.
+     */
+    public int messageCount(int slot) {
+        checkSlot(slot);
+        return slot < size ? messageCounts[slot] : 0;
+    }
+
+    /**
+     * Дата первого сообщения участника или {@link #NO_DATE}.
+     */
+    public long firstDate(int slot) {
+        checkSlot(slot);
+        return slot < size ? firstDates[slot] : NO_DATE;
+    }
+
+    /**
+     * Дата последнего сообщения участника или {@link #NO_DATE}.
+     */
+    public long lastDate(int slot) {
+        checkSlot(slot);
+        return slot < size ? lastDates[slot] : NO_DATE;
+    }
+
+    /**
+     * Число упоминаний в сообщениях участника.
+     */
+    public int mentionCount(int slot) {
+        checkSlot(slot);
+        return slot < size ? mentionCounts[slot] : 0;
+    }
+
+    /**
+     * Сколько раз участника упомянули через mention_name.
+     */
+    public int mentionedCount(int slot) {
+        checkSlot(slot);
+        return slot < size ? mentionedCounts[slot] : 0;
+    }
+
+    /**
+     * Активность участников по дням.
+     */
+    public ActivityIndex activity() {
+        return activity;
+    }
+
+    /**
+     * Граф ответов между участниками.
+     */
+    public ReplyGraph replies() {
+        return replies;
+    }
+
+    /**
+     * Индекс слов сообщений или null, если он не строится или удалён.
+     */
+    public TextIndex text() {
+        return text;
+    }
+
+    /**
+     * Строить индекс слов сообщений (см. {@link #text()}).
+     *
+     * @param maxBytes предел памяти индекса.
+     */
+    public void enableText(long maxBytes) {
+        text = new TextIndex(maxBytes);
+    }
+
+    /**
+     * Удалить индекс слов (например, при нехватке памяти кэша результатов).
+     */
+    public void dropText() {
+        text = null;
+    }
+
+    /**
+     * Число номеров, для которых есть данные (наибольший номер + 1).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавить статистику другого результата. Ожидающие упоминания other переносятся в ожидающие этой
+     * статистики - после объединения индексов их нужно привязать через {@link #resolvePending}.
+     * Индекс слов остаётся, только если он есть у обеих статистик: иначе поиск был бы неполным.
+     *
+     * @param other    статистика с номерами другого индекса.
+     * @param slotMap  номер в этой статистике для каждого номера other (см. {@link MemberIndex#mergeFrom}).
+     * @param sameChat other - следующая часть того же чата (см. {@link ReplyGraph#merge}).
+     */
+    public void merge(MemberStats other, int[] slotMap, boolean sameChat) {
+        int count = Math.min(other.size, slotMap.length);
+        for (int slot = 0; slot < count; slot++) {
+            int target = slotMap[slot];
+            ensureSlot(target);
+            messageCounts[target] += other.messageCounts[slot];
+            mentionCounts[target] += other.mentionCounts[slot];
+            mentionedCounts[target] += other.mentionedCounts[slot];
+            addDates(target, other.firstDates[slot], other.lastDates[slot]);
+        }
+        activity.merge(other.activity, slotMap);
+        replies.merge(other.replies, slotMap, sameChat);
+        if (text != null && other.text != null) {
+            text.merge(other.text, slotMap);
+        } else {
+            text = null;
+        }
+        for (int cell = 0; cell < other.pendingUserIds.length; cell++) {
+            if (other.pendingUserIds[cell] != 0) {
+                addPendingMention(other.pendingUserIds[cell], other.pendingCounts[cell]);
+            }
+        }
+    }
+
+    /**
+     * Независимая копия.
+     */
+    public MemberStats copy() {
+        MemberStats copy = new MemberStats(0);
+        copy.messageCounts = messageCounts.clone();
+        copy.firstDates = firstDates.clone();
+        copy.lastDates = lastDates.clone();
+        copy.mentionCounts = mentionCounts.clone();
+        copy.mentionedCounts = mentionedCounts.clone();
+        copy.size = size;
+        copy.activity = activity.copy();
+        copy.replies = replies.copy();
+        copy.text = text != null ? text.copy() : null;
+        copy.pendingUserIds = pendingUserIds.clone();
+        copy.pendingCounts = pendingCounts.clone();
+        copy.pendingSize = pendingSize;
+        return copy;
+    }
+
+    private void addDates(int slot, long first, long last) {
+        if (first != NO_DATE && (firstDates[slot] == NO_DATE || first < firstDates[slot])) {
+            firstDates[slot] = first;
+        }
+        if (last != NO_DATE && last > lastDates[slot]) {
+            lastDates[slot] = last;
+        }
+    }
+
+    private void ensureSlot(int slot) {
+        checkSlot(slot);
+        if (slot >= messageCounts.length) {
+            int capacity = Math.max(messageCounts.length * 2, slot + 1);
+            messageCounts = Arrays.copyOf(messageCounts, capacity);
+            firstDates = Arrays.copyOf(firstDates, capacity);
+            lastDates = Arrays.copyOf(lastDates, capacity);
+            mentionCounts = Arrays.copyOf(mentionCounts, capacity);
+            mentionedCounts = Arrays.copyOf(mentionedCounts, capacity);
+        }
+        if (slot >= size) {
+            size = slot + 1;
+        }
+    }
+
+    /**
+     * Ячейка с этим user_id или первая пустая на пути линейного пробирования.
+     */
+    private int findPending(long userId) {
+        int mask = pendingUserIds.length - 1;
+        long h = userId * 0x9E3779B97F4A7C15L;
+        int cell = (int) (h ^ (h >>> 32)) & mask;
+        while (pendingUserIds[cell] != 0 && pendingUserIds[cell] != userId) {
+            cell = (cell + 1) & mask;
+        }
+        return cell;
+    }
+
+    private void rehashPending(int capacity) {
+        long[] oldUserIds = pendingUserIds;
+        int[] oldCounts = pendingCounts;
+        pendingUserIds = new long[capacity];
+        pendingCounts = new int[capacity];
+        for (int i = 0; i < oldUserIds.length; i++) {
+            if (oldUserIds[i] != 0) {
+                int cell = findPending(oldUserIds[i]);
+                pendingUserIds[cell] = oldUserIds[i];
+                pendingCounts[cell] = oldCounts[i];
+            }
+        }
+    }
+
+    private static void checkSlot(int slot) {
+        if (slot < 0) {
+            throw new IndexOutOfBoundsException("Member slot cannot be negative: " + slot);
+        }
+    }
+}
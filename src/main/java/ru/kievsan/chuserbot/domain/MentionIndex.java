@@ -0,0 +1,118 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Индекс упоминаний: множество {@link Mention} с поиском по тексту без создания объекта.
+ * Каждому упоминанию выдаётся номер (slot) в порядке добавления; по номеру хранится число вхождений
+ * (каждое добавление, в том числе повторное, увеличивает его на 1). Экземпляр не потокобезопасен.
+ */
+public final class MentionIndex extends AbstractSet<Mention> {
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<Mention> mentions = new ArrayList<>();
+    private int[] counts = new int[16];
+
+    /**
+     * Индекс с упоминаниями из произвольного множества (в порядке его обхода).
+     */
+    public static MentionIndex copyOf(Set<Mention> mentions) {
+        MentionIndex index = new MentionIndex();
+        if (mentions instanceof MentionIndex other) {
+            index.mergeFrom(other);
+        } else {
+            index.addAll(mentions);
+        }
+        return index;
+    }
+
+    /**
+     * Добавить упоминание, если такого текста ещё не было. Повторное добавление ничего не создаёт.
+     *
+     * @return номер упоминания (новый или существующий).
+     * @throws IllegalArgumentException если текст не является упоминанием (см. {@link Mention}).
+     */
+    public int add(String mentionText) {
+        return add(mentionText, 1);
+    }
+
+    private int add(String mentionText, int count) {
+        Integer slot = slots.get(mentionText);
+        if (slot != null) {
+            counts[slot] += count;
+            return slot;
+        }
+        Mention mention = new Mention(mentionText);
+        int newSlot = mentions.size();
+        mentions.add(mention);
+        slots.put(mention.mentionText(), newSlot);
+        if (newSlot == counts.length) {
+            counts = Arrays.copyOf(counts, newSlot * 2);
+        }
+        counts[newSlot] = count;
+        return newSlot;
+    }
+
+    /**
+     * Добавить все упоминания другого индекса, суммируя число вхождений.
+     */
+    public void mergeFrom(MentionIndex other) {
+        for (int slot = 0; slot < other.mentions.size(); slot++) {
+            add(other.mentions.get(slot).mentionText(), other.counts[slot]);
+        }
+    }
+
+    /**
+     * Номер упоминания по тексту или -1, если такого нет.
+     */
+    public int slotOf(String mentionText) {
+        Integer slot = mentionText != null ? slots.get(mentionText) : null;
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Упоминание по номеру.
+     */
+    public Mention mention(int slot) {
+        return mentions.get(slot);
+    }
+
+    /**
+     * Число вхождений упоминания по номеру.
+     */
+    public int count(int slot) {
+        Objects.checkIndex(slot, mentions.size());
+        return counts[slot];
+    }
+
+    @Override
+    public boolean add(Mention mention) {
+        int before = mentions.size();
+        add(mention.mentionText());
+        return mentions.size() != before;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Mention mention && slots.containsKey(mention.mentionText());
+    }
+
+    @Override
+    public int size() {
+        return mentions.size();
+    }
+
+    @Override
+    public Iterator<Mention> iterator() {
+        return Collections.unmodifiableList(mentions).iterator();
+    }
+}
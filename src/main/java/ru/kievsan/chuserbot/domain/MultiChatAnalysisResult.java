@@ -0,0 +1,36 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.List;
+
+/**
+ * Результат анализа полного экспорта аккаунта: результаты по каждому чату и их объединение.
+ */
+public record MultiChatAnalysisResult(List<ChatAnalysis> chats, ChatMsgAnalysisResult total) {
+
+    public MultiChatAnalysisResult {
+        if (chats == null) {
+            throw new IllegalArgumentException("chats cannot be null");
+        }
+        if (total == null) {
+            throw new IllegalArgumentException("total cannot be null");
+        }
+        chats = List.copyOf(chats);
+    }
+
+    /**
+     * Результат анализа одного чата.
+     *
+     * @param name   название чата (может быть null).
+     * @param type   тип чата (может быть null).
+     * @param id     идентификатор чата (может быть null).
+     * @param result участники и упоминания чата.
+     */
+    public record ChatAnalysis(String name, String type, Long id, ChatMsgAnalysisResult result) {
+
+        public ChatAnalysis {
+            if (result == null) {
+                throw new IllegalArgumentException("result cannot be null");
+            }
+        }
+    }
+}
@@ -1,17 +1,118 @@
 package ru.kievsan.chuserbot.domain;
 
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+
 /**
- * Представление сырого файла экспорта чата в виде строки JSON.
+ * Представление сырого файла экспорта чата до парсинга.
+ * Содержимое может быть строкой JSON или источником UTF-8 байтов (поток, канал, файл),
+ * которые парсер декодирует напрямую, без промежуточной строки.
  * Используется для передачи между слоями до парсинга.
  */
-public record RawChatFile(String fileName, String jsonContent) {
+public record RawChatFile(String fileName, Source source) {
 
     public RawChatFile {
         if (fileName == null || fileName.isBlank()) {
             throw new IllegalArgumentException("fileName cannot be null or blank");
         }
-        if (jsonContent == null) {
-            throw new IllegalArgumentException("jsonContent cannot be null");
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+    }
+
+    /**
+     * Файл с содержимым в виде строки JSON.
+     */
+    public RawChatFile(String fileName, String jsonContent) {
+        this(fileName, new TextSource(jsonContent));
+    }
+
+    /**
+     * Файл, читаемый из потока UTF-8 байтов. Поток закрывает вызывающая сторона.
+     */
+    public static RawChatFile ofStream(String fileName, InputStream inputStream) {
+        return new RawChatFile(fileName, new StreamSource(inputStream));
+    }
+
+    /**
+     * Файл, читаемый из канала UTF-8 байтов. Канал закрывает вызывающая сторона.
+     */
+    public static RawChatFile ofChannel(String fileName, ReadableByteChannel channel) {
+        return new RawChatFile(fileName, new ChannelSource(channel));
+    }
+
+    /**
+     * Файл на диске; открывается и закрывается парсером.
+     */
+    public static RawChatFile ofPath(String fileName, Path path) {
+        return new RawChatFile(fileName, new PathSource(path));
+    }
+
+    /**
+     * Содержимое в виде строки JSON (только для файлов, созданных из строки).
+     *
+     * @throws IllegalStateException если содержимое задано потоком, каналом или файлом.
+     */
+    public String jsonContent() {
+        if (source instanceof TextSource text) {
+            return text.json();
+        }
+        throw new IllegalStateException("Content of '" + fileName + "' is not a string: " + source);
+    }
+
+    /**
+     * Источник содержимого файла экспорта.
+     */
+    public sealed interface Source permits TextSource, StreamSource, ChannelSource, PathSource {
+    }
+
+    /**
+     * Содержимое в виде строки JSON.
+     */
+    public record TextSource(String json) implements Source {
+        public TextSource {
+            if (json == null) {
+                throw new IllegalArgumentException("jsonContent cannot be null");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TextSource[length=" + json.length() + "]";
+        }
+    }
+
+    /**
+     * Поток UTF-8 байтов.
+     */
+    public record StreamSource(InputStream inputStream) implements Source {
+        public StreamSource {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("inputStream cannot be null");
+            }
+        }
+    }
+
+    /**
+     * Канал UTF-8 байтов.
+     */
+    public record ChannelSource(ReadableByteChannel channel) implements Source {
+        public ChannelSource {
+            if (channel == null) {
+                throw new IllegalArgumentException("channel cannot be null");
+            }
+        }
+    }
+
+    /**
+     * Файл на диске в кодировке UTF-8.
+     */
+    public record PathSource(Path path) implements Source {
+        public PathSource {
+            if (path == null) {
+                throw new IllegalArgumentException("path cannot be null");
+            }
         }
     }
 }
@@ -0,0 +1,424 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.Arrays;
+
+/**
+ * Граф ответов «кто кому отвечает» между участниками (номерами из {@link MemberIndex}).
+ * Рёбра хранятся в примитивных массивах формата CSR: offsets[from]..offsets[from + 1] - диапазон
+ * в targets/weights, вес - число ответов. Новые рёбра копятся в буфере и раз в {@link #COMPACT_THRESHOLD}
+ * ответов сливаются в CSR (сортировка и склейка повторов), поэтому память - порядка числа разных пар.
+ * <p>
+ * Автор сообщения, на которое дан ответ, находится по индексу «id сообщения -> номер автора»: id сообщений
+ * Telegram идут подряд по возрастанию, поэтому индекс - страницы int[] по {@link #MESSAGE_PAGE_SIZE} id,
+ * номер автора лежит по смещению id в странице (около 4 байт на сообщение, страницы заводятся по мере
+ * появления id). Ответ на ещё не встреченное сообщение (ссылка вперёд или в другую часть чата)
+ * ждёт в буфере ожидающих ограниченного размера; не поместившиеся и так и не найденные ответы только
+ * считаются ({@link #unresolvedCount()}). Экземпляр не потокобезопасен.
+ */
+public final class ReplyGraph {
+
+    /**
+     * Номер автора для сообщения, автор которого не участник (удалённый аккаунт, служебное сообщение).
+     */
+    public static final int NO_AUTHOR = -1;
+
+    /**
+     * Размер буфера ожидающих ответов по умолчанию.
+     */
+    public static final int DEFAULT_PENDING_LIMIT = 1 << 16;
+
+    static final int COMPACT_THRESHOLD = 1 << 20;
+
+    static final int MESSAGE_PAGE_BITS = 12;
+    static final int MESSAGE_PAGE_SIZE = 1 << MESSAGE_PAGE_BITS;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int pendingLimit;
+
+    // Индекс сообщений: страница с номером firstPage + i - messagePages[i] (null - id страницы не встречались),
+    // в ячейке номер автора + 2 (0 - сообщение не встречалось); null после seal().
+    private int[][] messagePages = new int[0][];
+    private int firstPage;
+
+    // Ожидающие ответы: id сообщения, на которое ответили, и номер отвечающего.
+    private long[] pendingTargets = new long[INITIAL_CAPACITY];
+    private int[] pendingFrom = new int[INITIAL_CAPACITY];
+    private int pendingSize;
+    private long unresolved;
+
+    // Новые рёбра: (from << 32 | to) и вес.
+    private long[] bufferKeys = new long[INITIAL_CAPACITY];
+    private int[] bufferWeights = new int[INITIAL_CAPACITY];
+    private int bufferSize;
+
+    private int[] offsets = {0};
+    private int[] targets = new int[0];
+    private int[] weights = new int[0];
+
+    public ReplyGraph() {
+        this(DEFAULT_PENDING_LIMIT);
+    }
+
+    /**
+     * @param pendingLimit наибольшее число ожидающих ответов.
+     */
+    public ReplyGraph(int pendingLimit) {
+        if (pendingLimit < 0) {
+            throw new IllegalArgumentException("pendingLimit cannot be negative");
+        }
+        this.pendingLimit = pendingLimit;
+    }
+
+    /**
+     * Учесть сообщение: запомнить его автора для будущих ответов.
+     *
+     * @param messageId id сообщения в чате (отрицательный - сообщение без id, пропускается).
+     * @param slot      номер автора или {@link #NO_AUTHOR}.
+     */
+    public void addMessage(long messageId, int slot) {
+        if (messageId < 0 || messageId > Integer.MAX_VALUE || messagePages == null) {
+            return;
+        }
+        int page = (int) (messageId >>> MESSAGE_PAGE_BITS);
+        int[] authors = ensurePage(page);
+        authors[(int) messageId & (MESSAGE_PAGE_SIZE - 1)] = slot + 2;
+    }
+
+    /**
+     * Учесть ответ участника на сообщение.
+     *
+     * @param fromSlot  номер отвечающего.
+     * @param replyToId id сообщения, на которое дан ответ.
+     */
+    public void addReply(int fromSlot, long replyToId) {
+        if (fromSlot < 0) {
+            throw new IndexOutOfBoundsException("Member slot cannot be negative: " + fromSlot);
+        }
+        if (replyToId < 0) {
+            return;
+        }
+        int author = findAuthor(replyToId);
+        if (author != 0) {
+            addEdge(fromSlot, author - 2, 1);
+            return;
+        }
+        addPending(replyToId, fromSlot);
+    }
+
+    /**
+     * Привязать ожидающие ответы к уже известным сообщениям (ссылки вперёд).
+     */
+    public void resolvePending() {
+        if (messagePages == null) {
+            return;
+        }
+        int remaining = 0;
+        for (int i = 0; i < pendingSize; i++) {
+            int author = findAuthor(pendingTargets[i]);
+            if (author != 0) {
+                addEdge(pendingFrom[i], author - 2, 1);
+            } else {
+                pendingTargets[remaining] = pendingTargets[i];
+                pendingFrom[remaining] = pendingFrom[i];
+                remaining++;
+            }
+        }
+        pendingSize = remaining;
+    }
+
+    /**
+     * Завершить построение: освободить индекс сообщений, оставшиеся ожидающие ответы считать ненайденными.
+     * После этого новые сообщения и ответы не связываются.
+     */
+    public void seal() {
+        resolvePending();
+        unresolved += pendingSize;
+        pendingSize = 0;
+        pendingTargets = new long[0];
+        pendingFrom = new int[0];
+        messagePages = null;
+        compact();
+    }
+
+    /**
+     * Добавить граф другого результата.
+     *
+     * @param other    граф с номерами другого индекса.
+     * @param slotMap  номер в этом графе для каждого номера other (см. {@link MemberIndex#mergeFrom}).
+     * @param sameChat other - следующая часть того же чата: его ожидающие ответы ищутся среди сообщений
+     *                 этого графа, индексы сообщений объединяются. Иначе id сообщений разных чатов не связываются
+     *                 и результат запечатывается ({@link #seal()}).
+     */
+    public void merge(ReplyGraph other, int[] slotMap, boolean sameChat) {
+        other.compact();
+        for (int from = 0; from < other.offsets.length - 1; from++) {
+            for (int i = other.offsets[from]; i < other.offsets[from + 1]; i++) {
+                addEdge(slotMap[from], slotMap[other.targets[i]], other.weights[i]);
+            }
+        }
+        unresolved += other.unresolved;
+
+        if (!sameChat || messagePages == null || other.messagePages == null) {
+            unresolved += other.pendingSize;
+            seal();
+            return;
+        }
+        for (int i = 0; i < other.pendingSize; i++) {
+            addReply(slotMap[other.pendingFrom[i]], other.pendingTargets[i]);
+        }
+        for (int p = 0; p < other.messagePages.length; p++) {
+            int[] authors = other.messagePages[p];
+            if (authors == null) {
+                continue;
+            }
+            long pageStart = (long) (other.firstPage + p) << MESSAGE_PAGE_BITS;
+            for (int offset = 0; offset < MESSAGE_PAGE_SIZE; offset++) {
+                int author = authors[offset] - 2;
+                if (author >= 0) {
+                    addMessage(pageStart + offset, slotMap[author]);
+                } else if (author == NO_AUTHOR) {
+                    addMessage(pageStart + offset, NO_AUTHOR);
+                }
+            }
+        }
+        // Ответы этой части на сообщения следующей.
+        resolvePending();
+    }
+
+    /**
+     * Независимая копия.
+     */
+    public ReplyGraph copy() {
+        compact();
+        ReplyGraph copy = new ReplyGraph(pendingLimit);
+        if (messagePages != null) {
+            copy.messagePages = new int[messagePages.length][];
+            for (int p = 0; p < messagePages.length; p++) {
+                copy.messagePages[p] = messagePages[p] != null ? messagePages[p].clone() : null;
+            }
+        } else {
+            copy.messagePages = null;
+        }
+        copy.firstPage = firstPage;
+        copy.pendingTargets = pendingTargets.clone();
+        copy.pendingFrom = pendingFrom.clone();
+        copy.pendingSize = pendingSize;
+        copy.unresolved = unresolved;
+        copy.offsets = offsets.clone();
+        copy.targets = targets.clone();
+        copy.weights = weights.clone();
+        return copy;
+    }
+
+    /**
+     * Число разных пар «отвечающий -> автор».
+     */
+    public int edgeCount() {
+        compact();
+        return targets.length;
+    }
+
+    /**
+     * Число ответов, связанных с участниками (сумма весов рёбер).
+     */
+    public long replyCount() {
+        compact();
+        long count = 0;
+        for (int weight : weights) {
+            count += weight;
+        }
+        return count;
+    }
+
+    /**
+     * Число ответов, для которых сообщение не найдено (удалено, вне экспорта или не поместилось в буфер),
+     * включая ещё ожидающие.
+     */
+    public long unresolvedCount() {
+        return unresolved + pendingSize;
+    }
+
+    /**
+     * Обойти рёбра по возрастанию номера отвечающего, затем номера автора.
+     */
+    public void forEachEdge(EdgeVisitor visitor) {
+        compact();
+        for (int from = 0; from < offsets.length - 1; from++) {
+            for (int i = offsets[from]; i < offsets[from + 1]; i++) {
+                visitor.edge(from, targets[i], weights[i]);
+            }
+        }
+    }
+
+    private void addEdge(int from, int to, int weight) {
+        // Ответы на сообщения не участников и самому себе в граф не входят.
+        if (to == NO_AUTHOR || from == to) {
+            return;
+        }
+        if (bufferSize == bufferKeys.length) {
+            if (bufferSize >= COMPACT_THRESHOLD) {
+                compact();
+            } else {
+                bufferKeys = Arrays.copyOf(bufferKeys, bufferSize * 2);
+                bufferWeights = Arrays.copyOf(bufferWeights, bufferSize * 2);
+            }
+        }
+        bufferKeys[bufferSize] = (long) from << 32 | to;
+        bufferWeights[bufferSize] = weight;
+        bufferSize++;
+    }
+
+    private void addPending(long replyToId, int fromSlot) {
+        if (pendingSize == pendingLimit) {
+            // Буфер полон: сначала пробуем привязать ответы, чьи сообщения уже пришли.
+            resolvePending();
+        }
+        if (pendingSize == pendingLimit) {
+            unresolved++;
+            return;
+        }
+        if (pendingSize == pendingTargets.length) {
+            int capacity = Math.min(pendingLimit, Math.max(INITIAL_CAPACITY, pendingSize * 2));
+            pendingTargets = Arrays.copyOf(pendingTargets, capacity);
+            pendingFrom = Arrays.copyOf(pendingFrom, capacity);
+        }
+        pendingTargets[pendingSize] = replyToId;
+        pendingFrom[pendingSize] = fromSlot;
+        pendingSize++;
+    }
+
+    /**
+     * Слить буфер новых рёбер с CSR: сортировка буфера по ключу, склейка повторов и слияние двух
+     * упорядоченных последовательностей.
+     */
+    private void compact() {
+        if (bufferSize == 0) {
+            return;
+        }
+        sortBuffer();
+        long[] keys = bufferKeys;
+
+        int maxFrom = Math.max(offsets.length - 2, (int) (keys[bufferSize - 1] >>> 32));
+        int oldFromCount = offsets.length - 1;
+        int[] newOffsets = new int[maxFrom + 2];
+        int[] newTargets = new int[targets.length + bufferSize];
+        int[] newWeights = new int[targets.length + bufferSize];
+        int size = 0;
+        int b = 0;
+        for (int from = 0; from <= maxFrom; from++) {
+            newOffsets[from] = size;
+            int i = from < oldFromCount ? offsets[from] : 0;
+            int end = from < oldFromCount ? offsets[from + 1] : 0;
+            while (i < end || (b < bufferSize && (int) (keys[b] >>> 32) == from)) {
+                boolean fromBuffer = b < bufferSize && (int) (keys[b] >>> 32) == from
+                        && (i == end || (int) keys[b] < targets[i]);
+                int to = fromBuffer ? (int) keys[b] : targets[i];
+                int weight = fromBuffer ? bufferWeights[b++] : weights[i++];
+                if (size > newOffsets[from] && newTargets[size - 1] == to) {
+                    newWeights[size - 1] += weight;
+                } else {
+                    newTargets[size] = to;
+                    newWeights[size] = weight;
+                    size++;
+                }
+            }
+        }
+        newOffsets[maxFrom + 1] = size;
+
+        offsets = newOffsets;
+        targets = Arrays.copyOf(newTargets, size);
+        weights = Arrays.copyOf(newWeights, size);
+        bufferSize = 0;
+    }
+
+    /**
+     * Поразрядная сортировка буфера по ключу (по 16 бит за проход), веса переставляются вместе с ключами.
+     */
+    private void sortBuffer() {
+        long[] keys = bufferKeys;
+        int[] values = bufferWeights;
+        long[] keysTmp = new long[bufferKeys.length];
+        int[] valuesTmp = new int[bufferWeights.length];
+        int[] counts = new int[(1 << 16) + 1];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < bufferSize; i++) {
+                counts[(int) (keys[i] >>> shift & 0xFFFF) + 1]++;
+            }
+            if (counts[(int) (keys[0] >>> shift & 0xFFFF) + 1] == bufferSize) {
+                // Все ключи совпадают в этих разрядах - проход ничего не меняет.
+                continue;
+            }
+            for (int d = 1; d < counts.length; d++) {
+                counts[d] += counts[d - 1];
+            }
+            for (int i = 0; i < bufferSize; i++) {
+                int pos = counts[(int) (keys[i] >>> shift & 0xFFFF)]++;
+                keysTmp[pos] = keys[i];
+                valuesTmp[pos] = values[i];
+            }
+            long[] k = keys;
+            keys = keysTmp;
+            keysTmp = k;
+            int[] v = values;
+            values = valuesTmp;
+            valuesTmp = v;
+        }
+        bufferKeys = keys;
+        bufferWeights = values;
+    }
+
+    /**
+     * Номер автора сообщения + 2 или 0, если сообщение не встречалось (или индекс освобождён).
+     */
+    private int findAuthor(long messageId) {
+        if (messagePages == null || messageId > Integer.MAX_VALUE) {
+            return 0;
+        }
+        int p = (int) (messageId >>> MESSAGE_PAGE_BITS) - firstPage;
+        if (p < 0 || p >= messagePages.length || messagePages[p] == null) {
+            return 0;
+        }
+        return messagePages[p][(int) messageId & (MESSAGE_PAGE_SIZE - 1)];
+    }
+
+    /**
+     * Страница индекса сообщений с этим номером; каталог страниц растёт в обе стороны.
+     */
+    private int[] ensurePage(int page) {
+        if (messagePages.length == 0) {
+            messagePages = new int[INITIAL_CAPACITY][];
+            firstPage = page;
+        } else if (page < firstPage) {
+            int shift = Math.max(firstPage - page, messagePages.length);
+            int[][] grown = new int[messagePages.length + shift][];
+            System.arraycopy(messagePages, 0, grown, shift, messagePages.length);
+            messagePages = grown;
+            firstPage -= shift;
+            if (firstPage < 0) {
+                // Каталог не уходит ниже страницы 0.
+                int[][] trimmed = new int[messagePages.length + firstPage][];
+                System.arraycopy(messagePages, -firstPage, trimmed, 0, trimmed.length);
+                messagePages = trimmed;
+                firstPage = 0;
+            }
+        } else if (page - firstPage >= messagePages.length) {
+            int size = Math.max(page - firstPage + 1, messagePages.length * 2);
+            messagePages = Arrays.copyOf(messagePages, size);
+        }
+        int p = page - firstPage;
+        if (messagePages[p] == null) {
+            messagePages[p] = new int[MESSAGE_PAGE_SIZE];
+        }
+        return messagePages[p];
+    }
+
+    /**
+     * Получатель рёбер графа.
+     */
+    @FunctionalInterface
+    public interface EdgeVisitor {
+        void edge(int fromSlot, int toSlot, int weight);
+    }
+}
@@ -0,0 +1,16 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Содержимое файла отчёта, записываемое в поток при отправке (без копии всего файла в памяти).
+ */
+@FunctionalInterface
+public interface ReportBody {
+
+    /**
+     * Записать файл в поток (поток не закрывается). Можно вызывать несколько раз.
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
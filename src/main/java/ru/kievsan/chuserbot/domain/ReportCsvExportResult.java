@@ -0,0 +1,44 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Результат форматирования отчета в виде файла CSV или TSV (возможно, сжатого gzip).
+ * Содержимое пишется в поток при отправке ({@link ReportBody}).
+ */
+public final class ReportCsvExportResult extends ReportExportResult {
+
+    private final ReportBody body;
+    private final String csvFileName;
+
+    public ReportCsvExportResult(String fileName, ReportBody body, String csvFileName) {
+        this(fileName, body, csvFileName, null);
+    }
+
+    public ReportCsvExportResult(String fileName, ReportBody body, String csvFileName, String warning) {
+        super(fileName, warning);
+        if (body == null) {
+            throw new IllegalArgumentException("'body' cannot be null");
+        }
+        if (csvFileName == null) {
+            throw new IllegalArgumentException("'csvFileName' cannot be null");
+        }
+        this.body = body;
+        this.csvFileName = csvFileName;
+    }
+
+    /**
+     * Записать файл в поток (поток не закрывается). Можно вызывать несколько раз.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        body.writeTo(out);
+    }
+
+    /**
+     * Имя файла для отправки (.csv, .tsv, с .gz при сжатии).
+     */
+    public String csvFileName() {
+        return csvFileName;
+    }
+}
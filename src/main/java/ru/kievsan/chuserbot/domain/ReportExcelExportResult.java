@@ -1,30 +1,63 @@
 package ru.kievsan.chuserbot.domain;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * Результат форматирования отчета в виде Excel-файла.
+ * Содержимое файла - {@link ReportBody}: пишется в поток при отправке (например, сразу во временный файл загрузки),
+ * без копии всего файла в памяти. {@link #excelBytes()} - адаптер для тех, кому нужен массив байт.
  */
 public final class ReportExcelExportResult extends ReportExportResult {
 
-    private final byte[] excelBytes;
+    private final ReportBody body;
     private final String excelFileName;
 
     public ReportExcelExportResult(String fileName, byte[] excelBytes, String excelFileName) {
-        super(fileName);
-        if (excelBytes == null) {
-            throw new IllegalArgumentException("'excelBytes' cannot be null");
+        this(fileName, excelBytes, excelFileName, null);
+    }
+
+    public ReportExcelExportResult(String fileName, byte[] excelBytes, String excelFileName, String warning) {
+        this(fileName, bytesBody(excelBytes), excelFileName, warning);
+    }
+
+    public ReportExcelExportResult(String fileName, ReportBody body, String excelFileName, String warning) {
+        super(fileName, warning);
+        if (body == null) {
+            throw new IllegalArgumentException("'body' cannot be null");
         }
         if (excelFileName == null) {
             throw new IllegalArgumentException("'excelFileName' cannot be null");
         }
-        this.excelBytes = excelBytes;
+        this.body = body;
         this.excelFileName = excelFileName;
     }
 
     /**
-     * Excel-файл в виде байтов.
+     * Записать Excel-файл в поток (поток не закрывается). Можно вызывать несколько раз.
+     *
+     * @throws IOException если запись не удалась, в том числе при ошибке построения книги.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            body.writeTo(out);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to write Excel report", e);
+        }
+    }
+
+    /**
+     * Excel-файл в виде байтов (весь файл в памяти; для отправки лучше {@link #writeTo}).
      */
     public byte[] excelBytes() {
-        return excelBytes;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write Excel report", e);
+        }
+        return out.toByteArray();
     }
 
     /**
@@ -33,5 +66,11 @@ public final class ReportExcelExportResult extends ReportExportResult {
     public String excelFileName() {
         return excelFileName;
     }
-}
 
+    private static ReportBody bytesBody(byte[] excelBytes) {
+        if (excelBytes == null) {
+            throw new IllegalArgumentException("'excelBytes' cannot be null");
+        }
+        return out -> out.write(excelBytes);
+    }
+}
@@ -2,16 +2,22 @@ package ru.kievsan.chuserbot.domain;
 
 /**
  * Абстрактный базовый класс для форматирования отчетов.
- * Хранит имя исх. файла экспорта.
+ * Хранит имя исх. файла экспорта и предупреждение о неполном результате.
  */
 public abstract class ReportExportResult {
     private final String fileName;
+    private final String warning;
 
     protected ReportExportResult(String fileName) {
+        this(fileName, null);
+    }
+
+    protected ReportExportResult(String fileName, String warning) {
         if (fileName == null) {
             throw new IllegalArgumentException("'fileName' cannot be null!");
         }
         this.fileName = fileName;
+        this.warning = warning;
     }
 
     /**
@@ -20,4 +26,11 @@ public abstract class ReportExportResult {
     public String fileName() {
         return fileName;
     }
+
+    /**
+     * Предупреждение для пользователя (например, отчёт построен по оборванному файлу); null, если его нет.
+     */
+    public String warning() {
+        return warning;
+    }
 }
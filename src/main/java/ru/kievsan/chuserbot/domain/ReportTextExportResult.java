@@ -8,7 +8,11 @@ public final class ReportTextExportResult extends ReportExportResult {
     private final String text;
 
     public ReportTextExportResult(String fileName, String text) {
-        super(fileName);
+        this(fileName, text, null);
+    }
+
+    public ReportTextExportResult(String fileName, String text, String warning) {
+        super(fileName, warning);
         if (text == null) {
             throw new IllegalArgumentException("'text' cannot be null");
         }
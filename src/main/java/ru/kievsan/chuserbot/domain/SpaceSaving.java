@@ -0,0 +1,188 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поиск самых частых значений алгоритмом Space-Saving: не больше capacity счётчиков при любом числе
+ * уникальных значений. Пока уникальных значений не больше capacity, счёт точный ({@link #exact()});
+ * дальше новое значение вытесняет счётчик с наименьшим числом и наследует его как погрешность,
+ * поэтому истинное число лежит в [count - error, count]. Любое значение с частотой выше total / capacity
+ * гарантированно остаётся в сводке. Экземпляр не потокобезопасен.
+ */
+public final class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Integer> slots;
+    private final String[] keys;
+    private final String[] labels;
+    private final long[] counts;
+    private final long[] errors;
+    // Мин-куча номеров счётчиков по count и позиция номера в куче.
+    private final int[] heap;
+    private final int[] heapIndex;
+    private int size;
+    private boolean evicted;
+
+    /**
+     * @param capacity наибольшее число счётчиков.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = new HashMap<>(capacity * 2);
+        this.keys = new String[capacity];
+        this.labels = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapIndex = new int[capacity];
+    }
+
+    /**
+     * Учесть одно вхождение значения.
+     *
+     * @param key   значение (ключ счётчика).
+     * @param label подпись для отчёта (например, имя автора); сохраняется первая.
+     */
+    public void add(String key, String label) {
+        add(key, label, 1, 0);
+    }
+
+    private void add(String key, String label, long count, long error) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            counts[slot] += count;
+            errors[slot] += error;
+            siftDown(heapIndex[slot]);
+            return;
+        }
+        if (size < capacity) {
+            int newSlot = size++;
+            keys[newSlot] = key;
+            labels[newSlot] = label;
+            counts[newSlot] = count;
+            errors[newSlot] = error;
+            slots.put(key, newSlot);
+            heap[newSlot] = newSlot;
+            heapIndex[newSlot] = newSlot;
+            siftUp(newSlot);
+            return;
+        }
+        // Вытесняем счётчик с наименьшим числом: новое значение могло встречаться до min раз.
+        int victim = heap[0];
+        long min = counts[victim];
+        slots.remove(keys[victim]);
+        keys[victim] = key;
+        labels[victim] = label;
+        counts[victim] = min + count;
+        errors[victim] = min + error;
+        slots.put(key, victim);
+        evicted = true;
+        siftDown(0);
+    }
+
+    /**
+     * Объединить со сводкой другой части данных. Значение, которого нет в одной из полных сводок,
+     * получает её минимальный счётчик как верхнюю оценку (и погрешность), поэтому гарантии сохраняются.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = size == capacity ? counts[heap[0]] : 0;
+        long otherMin = other.size == other.capacity ? other.counts[other.heap[0]] : 0;
+
+        Map<String, long[]> merged = new HashMap<>((size + other.size) * 2);
+        Map<String, String> mergedLabels = new HashMap<>((size + other.size) * 2);
+        for (int slot = 0; slot < size; slot++) {
+            merged.put(keys[slot], new long[]{counts[slot] + otherMin, errors[slot] + otherMin});
+            mergedLabels.put(keys[slot], labels[slot]);
+        }
+        for (int slot = 0; slot < other.size; slot++) {
+            long[] entry = merged.get(other.keys[slot]);
+            if (entry != null) {
+                entry[0] += other.counts[slot] - otherMin;
+                entry[1] += other.errors[slot] - otherMin;
+            } else {
+                merged.put(other.keys[slot], new long[]{other.counts[slot] + thisMin, other.errors[slot] + thisMin});
+                mergedLabels.put(other.keys[slot], other.labels[slot]);
+            }
+        }
+
+        boolean wasEvicted = evicted || other.evicted || merged.size() > capacity;
+        slots.clear();
+        size = 0;
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        for (int i = 0; i < Math.min(capacity, entries.size()); i++) {
+            Map.Entry<String, long[]> entry = entries.get(i);
+            add(entry.getKey(), mergedLabels.get(entry.getKey()), entry.getValue()[0], entry.getValue()[1]);
+        }
+        evicted = wasEvicted;
+    }
+
+    /**
+     * Точен ли счёт: ни одно значение не вытеснялось.
+     */
+    public boolean exact() {
+        return !evicted;
+    }
+
+    /**
+     * N значений с наибольшим числом вхождений, по убыванию.
+     */
+    public List<Entry> top(int n) {
+        int[] top = TopSelector.top(size, slot -> counts[slot], n);
+        List<Entry> result = new ArrayList<>(top.length);
+        for (int slot : top) {
+            result.add(new Entry(keys[slot], labels[slot], counts[slot], errors[slot]));
+        }
+        return result;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[heap[i]] >= counts[heap[parent]]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && counts[heap[left]] < counts[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && counts[heap[right]] < counts[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int slot = heap[a];
+        heap[a] = heap[b];
+        heap[b] = slot;
+        heapIndex[heap[a]] = a;
+        heapIndex[heap[b]] = b;
+    }
+
+    /**
+     * Значение сводки: истинное число вхождений лежит в [count - error, count].
+     */
+    public record Entry(String key, String label, long count, long error) {
+    }
+}
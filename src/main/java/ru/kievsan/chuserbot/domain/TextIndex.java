@@ -0,0 +1,468 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.Arrays;
+
+/**
+ * Инвертированный индекс слов сообщений: для каждого слова - в сообщениях каких участников (номеров из
+ * {@link MemberIndex}) оно встречалось и в скольких сообщениях. При разборе пары (слово, участник) считаются
+ * в таблице с открытой адресацией - повторная пара ничего не создаёт; {@link #compact()} переносит их
+ * в сжатые списки вхождений: для каждого слова - пары (разность номеров, число сообщений) в кодировке varint
+ * по возрастанию номера, все списки - в одном массиве байт. Словарь - открытая адресация по символам слова,
+ * повторное слово не создаёт строк.
+ * <p>
+ * Слово - непрерывная последовательность букв, цифр и '_' длиной от {@link #MIN_TERM_LENGTH}
+ * до {@link #MAX_TERM_LENGTH} символов, без учёта регистра и с 'ё' = 'е'. Память ограничена: если оценка
+ * размера превышает предел даже после сжатия, индекс очищается и дальше не строится ({@link #overflowed()}).
+ * Экземпляр не потокобезопасен.
+ */
+public final class TextIndex {
+
+    public static final int MIN_TERM_LENGTH = 2;
+    public static final int MAX_TERM_LENGTH = 32;
+
+    /**
+     * Число несжатых пар, после которого они переносятся в сжатые списки.
+     */
+    static final int COMPACT_THRESHOLD = 1 << 18;
+
+    // Оценка памяти слова без списка вхождений: строка и ячейки массивов.
+    private static final int TERM_OVERHEAD_BYTES = 80;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long maxBytes;
+    private boolean overflowed;
+
+    // Словарь: номер слова + 1 в ячейке (0 - пусто).
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private String[] terms = new String[INITIAL_CAPACITY];
+    // Последнее сообщение, в котором встретилось слово: повтор слова в сообщении не считается.
+    private int[] lastMessages = new int[INITIAL_CAPACITY];
+    private int termCount;
+    private long termBytes;
+    private int message;
+
+    // Несжатые пары: ключ (номер слова + 1) << 32 | номер участника (0 - пусто) и число сообщений.
+    private long[] pairKeys = new long[INITIAL_CAPACITY];
+    private int[] pairCounts = new int[INITIAL_CAPACITY];
+    private int pairSize;
+
+    // Сжатые списки: вхождения слова t - data[offsets[t], offsets[t + 1]) для t < offsets.length - 1.
+    private byte[] data = new byte[0];
+    private int[] offsets = {0};
+
+    private final char[] buffer = new char[MAX_TERM_LENGTH];
+
+    /**
+     * @param maxBytes предел оценки памяти индекса в байтах.
+     */
+    public TextIndex(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Начать следующее сообщение: слова, добавленные до следующего вызова, относятся к одному сообщению.
+     */
+    public void nextMessage() {
+        message++;
+    }
+
+    /**
+     * Добавить слова текста в текущее сообщение участника.
+     */
+    public void add(int slot, CharSequence text) {
+        if (slot < 0) {
+            throw new IndexOutOfBoundsException("Member slot cannot be negative: " + slot);
+        }
+        if (overflowed || text == null) {
+            return;
+        }
+        int length = 0;
+        boolean tooLong = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (isTermChar(c)) {
+                if (length < MAX_TERM_LENGTH) {
+                    buffer[length++] = normalize(c);
+                } else {
+                    tooLong = true;
+                }
+                continue;
+            }
+            if (length >= MIN_TERM_LENGTH && !tooLong) {
+                int termId = termId(length);
+                if (termId < 0) {
+                    return;
+                }
+                if (lastMessages[termId] != message) {
+                    lastMessages[termId] = message;
+                    addPair(termId, slot, 1);
+                }
+            }
+            length = 0;
+            tooLong = false;
+        }
+    }
+
+    /**
+     * Участники, в сообщениях которых встречалось слово, по возрастанию номера, и число таких сообщений.
+     *
+     * @param term слово (регистр и 'ё' не важны).
+     */
+    public void search(String term, PostingVisitor visitor) {
+        compact();
+        int termId = find(term);
+        if (termId < 0 || termId >= offsets.length - 1) {
+            return;
+        }
+        int[] pos = {offsets[termId]};
+        int slot = 0;
+        while (pos[0] < offsets[termId + 1]) {
+            slot += readVarint(data, pos);
+            visitor.posting(slot, readVarint(data, pos));
+        }
+    }
+
+    /**
+     * Является ли строка одним словом индекса (с точки зрения разбиения на слова).
+     */
+    public static boolean isTerm(String term) {
+        if (term == null || term.length() < MIN_TERM_LENGTH || term.length() > MAX_TERM_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < term.length(); i++) {
+            if (!isTermChar(term.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Перенести несжатые пары в сжатые списки вхождений.
+     */
+    public void compact() {
+        if (pairSize == 0) {
+            return;
+        }
+        long[] keys = new long[pairSize];
+        int size = 0;
+        for (long key : pairKeys) {
+            if (key != 0) {
+                keys[size++] = key;
+            }
+        }
+        // Ключ начинается с номера слова: после сортировки пары идут по словам, внутри слова - по номеру.
+        Arrays.sort(keys);
+
+        int[] merged = new int[termCount + 1];
+        // Новая пара занимает не больше 10 байт, старые при слиянии не растут.
+        byte[] out = new byte[data.length + size * 10];
+        int length = 0;
+        int next = 0;
+        for (int termId = 0; termId < termCount; termId++) {
+            merged[termId] = length;
+            boolean hasOldList = termId < offsets.length - 1;
+            int[] pos = {hasOldList ? offsets[termId] : 0};
+            int end = hasOldList ? offsets[termId + 1] : 0;
+            // Текущая пара старого списка (-1 - список прочитан).
+            int oldSlot = -1;
+            int oldCount = 0;
+            if (pos[0] < end) {
+                oldSlot = readVarint(data, pos);
+                oldCount = readVarint(data, pos);
+            }
+            int prevSlot = 0;
+            while (oldSlot >= 0 || (next < size && keyTerm(keys[next]) == termId)) {
+                boolean hasNew = next < size && keyTerm(keys[next]) == termId;
+                int slot;
+                long count;
+                int lastOld = oldSlot;
+                if (hasNew && (oldSlot < 0 || (int) keys[next] <= oldSlot)) {
+                    slot = (int) keys[next];
+                    count = pairCounts[findPair(keys[next])];
+                    next++;
+                    if (slot == oldSlot) {
+                        count += oldCount;
+                        oldSlot = -1;
+                    }
+                } else {
+                    slot = oldSlot;
+                    count = oldCount;
+                    oldSlot = -1;
+                }
+                if (oldSlot < 0 && pos[0] < end) {
+                    oldSlot = lastOld + readVarint(data, pos);
+                    oldCount = readVarint(data, pos);
+                }
+                length = writeVarint(out, length, slot - prevSlot);
+                length = writeVarint(out, length, (int) Math.min(Integer.MAX_VALUE, count));
+                prevSlot = slot;
+            }
+        }
+        merged[termCount] = length;
+        data = Arrays.copyOf(out, length);
+        offsets = merged;
+        pairKeys = new long[INITIAL_CAPACITY];
+        pairCounts = new int[INITIAL_CAPACITY];
+        pairSize = 0;
+    }
+
+    /**
+     * Добавить индекс другого результата.
+     *
+     * @param other   индекс с номерами другого {@link MemberIndex}.
+     * @param slotMap номер в этом индексе для каждого номера other (см. {@link MemberIndex#mergeFrom}).
+     */
+    public void merge(TextIndex other, int[] slotMap) {
+        if (other.overflowed) {
+            clear();
+        }
+        if (overflowed) {
+            return;
+        }
+        other.compact();
+        for (int otherId = 0; otherId < other.offsets.length - 1 && !overflowed; otherId++) {
+            String term = other.terms[otherId];
+            term.getChars(0, term.length(), buffer, 0);
+            int termId = termId(term.length());
+            int[] pos = {other.offsets[otherId]};
+            int slot = 0;
+            while (termId >= 0 && !overflowed && pos[0] < other.offsets[otherId + 1]) {
+                slot += readVarint(other.data, pos);
+                addPair(termId, slotMap[slot], readVarint(other.data, pos));
+            }
+        }
+    }
+
+    /**
+     * Независимая копия.
+     */
+    public TextIndex copy() {
+        compact();
+        TextIndex copy = new TextIndex(maxBytes);
+        copy.overflowed = overflowed;
+        copy.table = table.clone();
+        copy.terms = terms.clone();
+        copy.lastMessages = lastMessages.clone();
+        copy.termCount = termCount;
+        copy.termBytes = termBytes;
+        copy.message = message;
+        copy.data = data.clone();
+        copy.offsets = offsets.clone();
+        return copy;
+    }
+
+    /**
+     * Индекс очищен из-за превышения предела памяти.
+     */
+    public boolean overflowed() {
+        return overflowed;
+    }
+
+    /**
+     * Число разных слов.
+     */
+    public int termCount() {
+        return termCount;
+    }
+
+    /**
+     * Оценка занимаемой памяти в байтах.
+     */
+    public long estimatedBytes() {
+        return overflowed ? 0 : termBytes + 4L * table.length + 12L * pairKeys.length
+                + data.length + 4L * offsets.length;
+    }
+
+    /**
+     * Номер слова из buffer[0, length) (новое слово добавляется) или -1, если индекс переполнился.
+     */
+    private int termId(int length) {
+        int cell = findCell(length);
+        if (table[cell] != 0) {
+            return table[cell] - 1;
+        }
+        if (!reserve(TERM_OVERHEAD_BYTES + 2L * length)) {
+            return -1;
+        }
+        int termId = termCount++;
+        if (termId == terms.length) {
+            terms = Arrays.copyOf(terms, termId * 2);
+            lastMessages = Arrays.copyOf(lastMessages, termId * 2);
+        }
+        terms[termId] = new String(buffer, 0, length);
+        lastMessages[termId] = -1;
+        termBytes += TERM_OVERHEAD_BYTES + 2L * length;
+        table[cell] = termId + 1;
+        if (termCount * 2 > table.length) {
+            rehashTerms(table.length * 2);
+        }
+        return termId;
+    }
+
+    private void addPair(int termId, int slot, int count) {
+        long key = (long) (termId + 1) << 32 | slot;
+        int cell = findPair(key);
+        if (pairKeys[cell] != 0) {
+            pairCounts[cell] += count;
+            return;
+        }
+        pairKeys[cell] = key;
+        pairCounts[cell] = count;
+        pairSize++;
+        if (pairSize * 2 > pairKeys.length) {
+            if (pairSize >= COMPACT_THRESHOLD) {
+                compact();
+                reserve(0);
+            } else if (reserve(12L * pairKeys.length) && pairSize > 0) {
+                rehashPairs(pairKeys.length * 2);
+            }
+        }
+    }
+
+    /**
+     * Проверить, что ещё extra байт помещаются в предел: если нет - сжать пары, если и это не помогло -
+     * очистить индекс.
+     */
+    private boolean reserve(long extra) {
+        if (estimatedBytes() + extra <= maxBytes) {
+            return true;
+        }
+        compact();
+        if (estimatedBytes() + extra <= maxBytes) {
+            return true;
+        }
+        clear();
+        return false;
+    }
+
+    private void clear() {
+        overflowed = true;
+        table = new int[INITIAL_CAPACITY * 2];
+        terms = new String[INITIAL_CAPACITY];
+        lastMessages = new int[INITIAL_CAPACITY];
+        termCount = 0;
+        termBytes = 0;
+        pairKeys = new long[INITIAL_CAPACITY];
+        pairCounts = new int[INITIAL_CAPACITY];
+        pairSize = 0;
+        data = new byte[0];
+        offsets = new int[]{0};
+    }
+
+    private int find(String term) {
+        if (term == null || overflowed) {
+            return -1;
+        }
+        int length = 0;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (!isTermChar(c) || length == MAX_TERM_LENGTH) {
+                return -1;
+            }
+            buffer[length++] = normalize(c);
+        }
+        return table[findCell(length)] - 1;
+    }
+
+    private int findCell(int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = table.length - 1;
+        int cell = (hash ^ (hash >>> 16)) & mask;
+        while (table[cell] != 0 && !termEquals(terms[table[cell] - 1], length)) {
+            cell = (cell + 1) & mask;
+        }
+        return cell;
+    }
+
+    private boolean termEquals(String term, int length) {
+        if (term.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (term.charAt(i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehashTerms(int capacity) {
+        table = new int[capacity];
+        for (int termId = 0; termId < termCount; termId++) {
+            String term = terms[termId];
+            term.getChars(0, term.length(), buffer, 0);
+            table[findCell(term.length())] = termId + 1;
+        }
+    }
+
+    private int findPair(long key) {
+        int mask = pairKeys.length - 1;
+        int cell = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (pairKeys[cell] != 0 && pairKeys[cell] != key) {
+            cell = (cell + 1) & mask;
+        }
+        return cell;
+    }
+
+    private void rehashPairs(int capacity) {
+        long[] oldKeys = pairKeys;
+        int[] oldCounts = pairCounts;
+        pairKeys = new long[capacity];
+        pairCounts = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int cell = findPair(oldKeys[i]);
+                pairKeys[cell] = oldKeys[i];
+                pairCounts[cell] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int keyTerm(long key) {
+        return (int) (key >>> 32) - 1;
+    }
+
+    private static boolean isTermChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static char normalize(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    private static int writeVarint(byte[] data, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Получатель вхождений слова.
+     */
+    @FunctionalInterface
+    public interface PostingVisitor {
+        void posting(int slot, int messages);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.List;
+
+/**
+ * Результат поиска слова по индексу слов сохранённого результата ({@link TextIndex}).
+ *
+ * @param term        искомое слово.
+ * @param messages    число сообщений со словом.
+ * @param authorCount число участников, писавших слово.
+ * @param topAuthors  участники с наибольшим числом сообщений со словом, по убыванию.
+ */
+public record TextSearchResult(String term, long messages, int authorCount, List<Hit> topAuthors) {
+
+    public TextSearchResult {
+        if (term == null) {
+            throw new IllegalArgumentException("term cannot be null");
+        }
+        if (messages < 0 || authorCount < 0) {
+            throw new IllegalArgumentException("counts cannot be negative");
+        }
+        topAuthors = topAuthors == null ? List.of() : List.copyOf(topAuthors);
+    }
+
+    /**
+     * Участник и число его сообщений со словом.
+     */
+    public record Hit(String fromId, String displayName, int messages) {
+    }
+}
@@ -0,0 +1,96 @@
+package ru.kievsan.chuserbot.domain;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Выбор N номеров с наибольшими значениями за один проход: куча из N элементов, O(size * log N) времени
+ * и O(N) памяти независимо от числа номеров. Используется для топа по точным счётчикам
+ * ({@link MemberStats}, {@link MentionIndex}).
+ */
+public final class TopSelector {
+
+    private TopSelector() {
+    }
+
+    /**
+     * Номера из [0, size) с наибольшими значениями, по убыванию значения; при равенстве - меньший номер раньше.
+     * Номера с нулевым значением не выбираются.
+     */
+    public static int[] top(int size, IntToLongFunction value, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n cannot be negative");
+        }
+        // Мин-куча по (значение, обратный номер): в корне - худший из отобранных.
+        int[] heap = new int[Math.min(n, size)];
+        long[] heapValues = new long[heap.length];
+        int heapSize = 0;
+        for (int slot = 0; slot < size; slot++) {
+            long v = value.applyAsLong(slot);
+            if (v <= 0) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                heapValues[heapSize] = v;
+                siftUp(heap, heapValues, heapSize++);
+            } else if (heapSize > 0 && v > heapValues[0]) {
+                heap[0] = slot;
+                heapValues[0] = v;
+                siftDown(heap, heapValues, heapSize);
+            }
+        }
+
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[i];
+            heapValues[0] = heapValues[i];
+            siftDown(heap, heapValues, i);
+        }
+        return result;
+    }
+
+    private static boolean less(int[] heap, long[] values, int a, int b) {
+        return values[a] < values[b] || (values[a] == values[b] && heap[a] > heap[b]);
+    }
+
+    private static void siftUp(int[] heap, long[] values, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(heap, values, i, parent)) {
+                return;
+            }
+            swap(heap, values, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, long[] values, int size) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && less(heap, values, left, smallest)) {
+                smallest = left;
+            }
+            if (right < size && less(heap, values, right, smallest)) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(heap, values, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, long[] values, int a, int b) {
+        int slot = heap[a];
+        heap[a] = heap[b];
+        heap[b] = slot;
+        long value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.kievsan.chuserbot.export;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Ширины колонок листа, накопленные при записи строк: вместо {@link Sheet#autoSizeColumn(int)}, который
+ * измеряет каждую ячейку шрифтами AWT и не видит строк, уже сброшенных SXSSF на диск.
+ * Ширина строки оценивается в символах цифры '0' шрифта по умолчанию (единица ширины колонки Excel):
+ * узкие знаки (точки, i, l, пробел) - половина, заглавные и широкие строчные латиницы и кириллицы
+ * (м, ш, щ, ж, ю, ы, w) - 1.3, иероглифы и эмодзи - 2.
+ */
+final class ColumnWidths {
+
+    // Поля ячейки по краям - как у autoSizeColumn.
+    private static final double PADDING = 1.5;
+    private static final double MIN_WIDTH = 4;
+    // Максимальная ширина колонки Excel - 255 символов.
+    private static final double MAX_WIDTH = 255;
+
+    private final double[] widths;
+
+    /**
+     * @param columns число колонок листа.
+     */
+    ColumnWidths(int columns) {
+        this.widths = new double[columns];
+    }
+
+    /**
+     * Учесть текст ячейки колонки.
+     */
+    void track(int column, String value) {
+        if (value != null) {
+            widths[column] = Math.max(widths[column], estimate(value));
+        }
+    }
+
+    /**
+     * Учесть число в ячейке колонки.
+     */
+    void track(int column, long value) {
+        widths[column] = Math.max(widths[column], Long.toString(value).length());
+    }
+
+    /**
+     * Установить накопленные ширины колонок листа.
+     */
+    void apply(Sheet sheet) {
+        for (int column = 0; column < widths.length; column++) {
+            double width = Math.min(MAX_WIDTH, Math.max(MIN_WIDTH, widths[column] + PADDING));
+            sheet.setColumnWidth(column, (int) (width * 256));
+        }
+    }
+
+    /**
+     * Оценка ширины строки в символах '0'.
+     */
+    static double estimate(CharSequence value) {
+        double width = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isHighSurrogate(c)) {
+                // Эмодзи и символы вне BMP: пара char - один широкий знак.
+                width += 2;
+                i++;
+            } else {
+                width += charWidth(c);
+            }
+        }
+        return width;
+    }
+
+    private static double charWidth(char c) {
+        if (c >= 'ᄀ' && isWide(c)) {
+            return 2;
+        }
+        return switch (c) {
+            case ' ', '.', ',', ':', ';', '\'', '!', '|', 'i', 'l', 'j', 'I', 'f', 't', 'r', '(', ')', '[', ']' -> 0.5;
+            case 'm', 'w', 'м', 'ш', 'щ', 'ж', 'ю', 'ы', 'ф', '@', '%' -> 1.3;
+            default -> Character.isUpperCase(c) ? 1.3 : 1;
+        };
+    }
+
+    private static boolean isWide(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.MISCELLANEOUS_SYMBOLS
+                || block == Character.UnicodeBlock.DINGBATS;
+    }
+}
@@ -0,0 +1,196 @@
+package ru.kievsan.chuserbot.export;
+
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Форматирование отчёта в построчный файл CSV (RFC 4180) или TSV: одна таблица, участники и упоминания
+ * различаются колонкой «Тип». Строки пишутся прямо в поток отправки через буфер {@link #WRITE_BUFFER_SIZE}
+ * байт (при gzip - через сжатие), без книги и объектов на строку. Небольшие результаты, приближённый
+ * подсчёт и поиск форматирует основной рендерер (текстом); листы «Сводка», «Топ» и «Ответы» есть только в XLSX.
+ * Со статистикой у всех строк одинаковое число полей: строки упоминаний дополняются пустыми полями.
+ */
+public class DelimitedReportRenderer implements ReportRenderer {
+
+    static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+    private static final String MEMBER_TYPE = "участник";
+    private static final String MENTION_TYPE = "упоминание";
+
+    private final ReportRenderer fallback;
+    private final ReportFormat format;
+    private final char delimiter;
+    private final String lineEnd;
+
+    /**
+     * @param fallback рендерер текстовых результатов.
+     * @param format   формат CSV или TSV.
+     */
+    public DelimitedReportRenderer(ReportRenderer fallback, ReportFormat format) {
+        if (fallback == null) {
+            throw new IllegalArgumentException("fallback cannot be null");
+        }
+        if (format == null || format.type() == ReportFormat.Type.XLSX) {
+            throw new IllegalArgumentException("format must be CSV or TSV");
+        }
+        this.fallback = fallback;
+        this.format = format;
+        this.delimiter = format.type() == ReportFormat.Type.CSV ? ',' : '\t';
+        this.lineEnd = format.type() == ReportFormat.Type.CSV ? "\r\n" : "\n";
+    }
+
+    @Override
+    public ReportExportResult render(ChatMsgAnalysisResult analysisResult, String fileName)
+            throws ReportRenderException {
+        if (analysisResult.getTotalCount() < BotConfig.EXCEL_THRESHOLD) {
+            return fallback.render(analysisResult, fileName);
+        }
+        return new ReportCsvExportResult(fileName, out -> write(analysisResult, out),
+                ReportRendererImpl.reportFileName(fileName, format.extension()));
+    }
+
+    @Override
+    public ReportExportResult renderChats(MultiChatAnalysisResult analysisResult, String fileName)
+            throws ReportRenderException {
+        if (analysisResult.total().getTotalCount() < BotConfig.EXCEL_THRESHOLD) {
+            return fallback.renderChats(analysisResult, fileName);
+        }
+        return render(analysisResult.total(), fileName);
+    }
+
+    @Override
+    public ReportExportResult renderCount(DistinctCountResult countResult, String fileName)
+            throws ReportRenderException {
+        return fallback.renderCount(countResult, fileName);
+    }
+
+    @Override
+    public ReportExportResult renderSearch(TextSearchResult searchResult, String fileName)
+            throws ReportRenderException {
+        return fallback.renderSearch(searchResult, fileName);
+    }
+
+    /**
+     * Записать строки результата в поток (поток не закрывается).
+     */
+    void write(ChatMsgAnalysisResult result, OutputStream out) throws IOException {
+        GZIPOutputStream gzip = format.gzip() ? new GZIPOutputStream(out, WRITE_BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(gzip != null ? gzip : out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        // BOM: Excel открывает CSV в UTF-8 без искажения кириллицы.
+        writer.write('\uFEFF');
+
+        MemberStats stats = result.stats();
+        writeRow(writer, "Тип", "Id", "Имя");
+        if (stats != null) {
+            for (String column : ReportRendererImpl.MEMBER_STATS_COLUMNS) {
+                writer.write(delimiter);
+                writeField(writer, column);
+            }
+        }
+        writer.write(lineEnd);
+
+        if (stats != null || format.sorted()) {
+            writeMembers(writer, result.memberIndex(), stats);
+        } else {
+            for (Member member : result.members()) {
+                writeRow(writer, MEMBER_TYPE, member.fromId(), member.displayName());
+                writer.write(lineEnd);
+            }
+        }
+
+        Iterable<String> mentions = format.sorted()
+                ? result.mentions().stream().map(Mention::mentionText).sorted()::iterator
+                : () -> result.mentions().stream().map(Mention::mentionText).iterator();
+        for (String mention : mentions) {
+            writeRow(writer, MENTION_TYPE, mention, "");
+            if (stats != null) {
+                for (int i = 0; i < ReportRendererImpl.MEMBER_STATS_COLUMNS.length; i++) {
+                    writer.write(delimiter);
+                }
+            }
+            writer.write(lineEnd);
+        }
+
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+    }
+
+    /**
+     * Строки участников по номерам индекса: в порядке номеров или по имени (затем по fromId).
+     */
+    private void writeMembers(Writer writer, MemberIndex members, MemberStats stats) throws IOException {
+        int[] order = format.sorted() ? sortedSlots(members) : null;
+        for (int i = 0; i < members.size(); i++) {
+            int slot = order != null ? order[i] : i;
+            writeRow(writer, MEMBER_TYPE, members.fromId(slot), members.displayName(slot));
+            if (stats != null) {
+                writer.write(delimiter);
+                writer.write(Integer.toString(stats.messageCount(slot)));
+                writer.write(delimiter);
+                writeField(writer, ReportRendererImpl.formatDate(stats.firstDate(slot)));
+                writer.write(delimiter);
+                writeField(writer, ReportRendererImpl.formatDate(stats.lastDate(slot)));
+                writer.write(delimiter);
+                writer.write(Integer.toString(stats.mentionCount(slot)));
+                writer.write(delimiter);
+                writer.write(Integer.toString(stats.mentionedCount(slot)));
+            }
+            writer.write(lineEnd);
+        }
+    }
+
+    private static int[] sortedSlots(MemberIndex members) {
+        return IntStream.range(0, members.size()).boxed()
+                .sorted(Comparator.comparing((Integer slot) -> members.displayName(slot), String.CASE_INSENSITIVE_ORDER)
+                        .thenComparing(members::fromId))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private void writeRow(Writer writer, String type, String id, String name) throws IOException {
+        writeField(writer, type);
+        writer.write(delimiter);
+        writeField(writer, id);
+        writer.write(delimiter);
+        writeField(writer, name);
+    }
+
+    /**
+     * CSV: значение с разделителем, кавычкой или переводом строки - в кавычках, кавычки удваиваются.
+     * TSV: табуляции и переводы строк заменяются пробелами (экранирования в TSV нет).
+     */
+    private void writeField(Writer writer, String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (delimiter == '\t') {
+            writer.write(value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' '));
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == delimiter || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
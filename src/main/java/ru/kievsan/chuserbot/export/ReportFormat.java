@@ -0,0 +1,77 @@
+package ru.kievsan.chuserbot.export;
+
+import java.util.Locale;
+
+/**
+ * Формат файла отчёта: XLSX (по умолчанию) или построчный CSV/TSV - с сортировкой и сжатием gzip по выбору.
+ *
+ * @param type   тип файла.
+ * @param sorted строки участников по имени, упоминаний - по тексту (иначе - в порядке анализа).
+ * @param gzip   сжать файл gzip.
+ */
+public record ReportFormat(Type type, boolean sorted, boolean gzip) {
+
+    /**
+     * Формат по умолчанию: Excel.
+     */
+    public static final ReportFormat DEFAULT = new ReportFormat(Type.XLSX, false, false);
+
+    /**
+     * Формат очень больших отчётов, выбираемый автоматически вместо XLSX: CSV в gzip, без сортировки.
+     */
+    public static final ReportFormat LARGE = new ReportFormat(Type.CSV, false, true);
+
+    public enum Type {
+        XLSX, CSV, TSV
+    }
+
+    public ReportFormat {
+        if (type == null) {
+            throw new IllegalArgumentException("type cannot be null");
+        }
+        if (type == Type.XLSX && (sorted || gzip)) {
+            throw new IllegalArgumentException("sorted and gzip apply to CSV and TSV only");
+        }
+    }
+
+    /**
+     * Разобрать формат из слов команды: тип (xlsx, csv, tsv), затем необязательные sorted и gz.
+     *
+     * @throws IllegalArgumentException если слово не распознано.
+     */
+    public static ReportFormat parse(String spec) {
+        String[] words = spec == null ? new String[0] : spec.strip().toLowerCase(Locale.ROOT).split("\\s+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            throw new IllegalArgumentException("Report format is empty");
+        }
+        Type type = switch (words[0]) {
+            case "xlsx", "excel" -> Type.XLSX;
+            case "csv" -> Type.CSV;
+            case "tsv" -> Type.TSV;
+            default -> throw new IllegalArgumentException("Unknown report format: " + words[0]);
+        };
+        boolean sorted = false;
+        boolean gzip = false;
+        for (int i = 1; i < words.length; i++) {
+            switch (words[i]) {
+                case "sorted", "sort" -> sorted = true;
+                case "gz", "gzip" -> gzip = true;
+                default -> throw new IllegalArgumentException("Unknown report format option: " + words[i]);
+            }
+        }
+        return new ReportFormat(type, sorted, gzip);
+    }
+
+    /**
+     * Расширение файла отчёта (с точкой).
+     */
+    public String extension() {
+        String extension = "." + type.name().toLowerCase(Locale.ROOT);
+        return gzip ? extension + ".gz" : extension;
+    }
+
+    @Override
+    public String toString() {
+        return type.name().toLowerCase(Locale.ROOT) + (sorted ? " sorted" : "") + (gzip ? " gz" : "");
+    }
+}
@@ -1,7 +1,11 @@
 package ru.kievsan.chuserbot.export;
 
 import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.DistinctCountResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
+import ru.kievsan.chuserbot.domain.ReportExcelExportResult;
 import ru.kievsan.chuserbot.domain.ReportExportResult;
+import ru.kievsan.chuserbot.domain.TextSearchResult;
 
 /**
  * Интерфейс для форматирования результата анализа.
@@ -10,6 +14,7 @@ public interface ReportRenderer {
 
     /**
      * Отформатировать результат анализа: создаёт текстовый ответ или Excel-файл в зависимости от количества сущностей.
+     * Excel-файл строится при записи результата ({@link ReportExcelExportResult#writeTo}).
      *
      * @param analysisResult результат анализа чата.
      * @param fileName       имя исходного файла экспорта.
@@ -18,6 +23,37 @@ public interface ReportRenderer {
      */
     ReportExportResult render(ChatMsgAnalysisResult analysisResult, String fileName) throws ReportRenderException;
 
+    /**
+     * Отформатировать результат анализа полного экспорта аккаунта: общий отчёт по объединению всех чатов
+     * со сводкой по каждому чату.
+     *
+     * @param analysisResult результаты анализа по чатам и их объединение.
+     * @param fileName       имя исходного файла экспорта.
+     * @return результат форматирования (ReportTextExportResult или ReportExcelExportResult).
+     * @throws ReportRenderException если не удалось сформировать результат.
+     */
+    ReportExportResult renderChats(MultiChatAnalysisResult analysisResult, String fileName) throws ReportRenderException;
+
+    /**
+     * Отформатировать результат приближённого подсчёта: текст с оценками и погрешностью.
+     *
+     * @param countResult оценки числа уникальных участников и упоминаний.
+     * @param fileName    имя исходного файла экспорта.
+     * @return текстовый результат (ReportTextExportResult).
+     * @throws ReportRenderException если не удалось сформировать результат.
+     */
+    ReportExportResult renderCount(DistinctCountResult countResult, String fileName) throws ReportRenderException;
+
+    /**
+     * Отформатировать результат поиска слова по сохранённому результату (/search).
+     *
+     * @param searchResult авторы сообщений со словом и число сообщений.
+     * @param fileName     имя исходного файла экспорта.
+     * @return текстовый результат (ReportTextExportResult).
+     * @throws ReportRenderException если не удалось сформировать результат.
+     */
+    ReportExportResult renderSearch(TextSearchResult searchResult, String fileName) throws ReportRenderException;
+
     /**
      * Исключение при форматировании отчета.
      */
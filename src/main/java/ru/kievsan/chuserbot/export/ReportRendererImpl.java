@@ -1,22 +1,57 @@
 package ru.kievsan.chuserbot.export;
 
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import ru.kievsan.chuserbot.config.BotConfig;
 import ru.kievsan.chuserbot.domain.*;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult.ChatAnalysis;
 import ru.kievsan.chuserbot.domain.ReportExportResult;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Реализация сервиса для форматирования результата анализа.
  * Генерирует текстовый ответ или Excel-файл в зависимости от количества сущностей.
+ * Excel пишется потоково (SXSSF): в памяти держится не больше {@link #EXCEL_ROW_WINDOW} строк листа,
+ * остальные сбрасываются во временные файлы, которые удаляются при закрытии книги. Книга строится
+ * при записи результата ({@link ReportExcelExportResult#writeTo}) и сразу пишется в поток получателя.
  */
 public class ReportRendererImpl implements ReportRenderer {
 
+    /**
+     * Сколько последних строк листа держится в памяти при записи Excel.
+     */
+    static final int EXCEL_ROW_WINDOW = 100;
+
+    /**
+     * Колонки статистики участника (общие с {@link DelimitedReportRenderer}).
+     */
+    static final String[] MEMBER_STATS_COLUMNS = {
+            "Сообщений",
+            "Первое сообщение (UTC)",
+            "Последнее сообщение (UTC)",
+            "Упоминаний в сообщениях",
+            "Упомянут раз",
+    };
+
+    /**
+     * Наибольший номер строки листа Excel: строк данных под заголовком не больше этого числа.
+     */
+    static final int EXCEL_LAST_ROW = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+
+    private static final int EXCEL_MAX_TEXT_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+
+    private static final DateTimeFormatter MESSAGE_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
     @Override
     public ReportExportResult render(ChatMsgAnalysisResult analysisResult, String fileName) throws ReportRenderException {
         try {
@@ -27,16 +62,134 @@ public class ReportRendererImpl implements ReportRenderer {
                 String text = renderText(analysisResult, fileName);
                 return new ReportTextExportResult(fileName, text);
             } else {
-                // Генерируем Excel-файл.
-                byte[] excelBytes = renderExcel(analysisResult);
+                // Excel-файл пишется при отправке - сразу в поток загрузки.
                 String excelFileName = generateExcelFileName(fileName);
-                return new ReportExcelExportResult(fileName, excelBytes, excelFileName);
+                return new ReportExcelExportResult(fileName,
+                        out -> writeExcel(analysisResult, List.of(), out), excelFileName, excelWarning(analysisResult));
             }
         } catch (Exception e) {
             throw new ReportRenderException("Failed to render report", e);
         }
     }
 
+    @Override
+    public ReportExportResult renderChats(MultiChatAnalysisResult analysisResult, String fileName) throws ReportRenderException {
+        try {
+            ChatMsgAnalysisResult total = analysisResult.total();
+
+            if (total.getTotalCount() < BotConfig.EXCEL_THRESHOLD) {
+                // Генерируем текстовый ответ: сводка по чатам + общий список.
+                String text = renderSummaryText(analysisResult) + renderText(total, fileName);
+                return new ReportTextExportResult(fileName, text);
+            } else {
+                // Excel-файл с листом сводки пишется при отправке - сразу в поток загрузки.
+                String excelFileName = generateExcelFileName(fileName);
+                return new ReportExcelExportResult(fileName,
+                        out -> writeExcel(total, analysisResult.chats(), out), excelFileName, excelWarning(total));
+            }
+        } catch (Exception e) {
+            throw new ReportRenderException("Failed to render report", e);
+        }
+    }
+
+    @Override
+    public ReportExportResult renderCount(DistinctCountResult countResult, String fileName) throws ReportRenderException {
+        if (countResult == null) {
+            throw new ReportRenderException("Count result cannot be null");
+        }
+        String text = "Файл: " + fileName + "\n"
+                + "Режим подсчёта: оценка без списков (HyperLogLog)\n"
+                + "Уникальных участников: ~" + countResult.membersEstimate() + "\n"
+                + "Уникальных упоминаний: ~" + countResult.mentionsEstimate() + "\n"
+                + "Погрешность оценки: ±" + formatPercent(countResult.relativeError())
+                + " (стандартное отклонение)\n"
+                + renderCountTop("Самые активные участники", countResult.topMembers(), true)
+                + renderCountTop("Самые частые упоминания", countResult.topMentions(), false);
+        if (!countResult.topExact()) {
+            text += "\nСчётчики топа - верхняя оценка (±N - наибольшее завышение)\n";
+        }
+        return new ReportTextExportResult(fileName, text);
+    }
+
+    @Override
+    public ReportExportResult renderSearch(TextSearchResult searchResult, String fileName)
+            throws ReportRenderException {
+        if (searchResult == null) {
+            throw new ReportRenderException("Search result cannot be null");
+        }
+        StringBuilder sb = new StringBuilder("Слово «").append(searchResult.term()).append("»: ")
+                .append(searchResult.messages()).append(" сообщ., участников: ")
+                .append(searchResult.authorCount()).append("\n");
+        List<TextSearchResult.Hit> hits = searchResult.topAuthors();
+        for (int i = 0; i < hits.size(); i++) {
+            TextSearchResult.Hit hit = hits.get(i);
+            sb.append(i + 1).append(". ").append(hit.displayName())
+                    .append(" (").append(hit.fromId()).append(") - ").append(hit.messages()).append("\n");
+        }
+        return new ReportTextExportResult(fileName, sb.toString());
+    }
+
+    /**
+     * Предупреждение о строках, не поместившихся в лист Excel (или null).
+     */
+    private static String excelWarning(ChatMsgAnalysisResult result) {
+        StringBuilder sb = new StringBuilder();
+        if (result.getMembersCount() > EXCEL_LAST_ROW) {
+            sb.append("участников ").append(result.getMembersCount());
+        }
+        if (result.getMentionsCount() > EXCEL_LAST_ROW) {
+            sb.append(sb.isEmpty() ? "" : ", ").append("упоминаний ").append(result.getMentionsCount());
+        }
+        if (result.stats() != null && result.stats().replies().edgeCount() > EXCEL_LAST_ROW) {
+            sb.append(sb.isEmpty() ? "" : ", ").append("пар на листе «Ответы» ")
+                    .append(result.stats().replies().edgeCount());
+        }
+        if (sb.isEmpty()) {
+            return null;
+        }
+        boolean csvHelps = result.getMembersCount() > EXCEL_LAST_ROW || result.getMentionsCount() > EXCEL_LAST_ROW;
+        // Лист «Ответы» есть только в XLSX - для него CSV не поможет.
+        return "Внимание: " + sb + " - больше строк листа Excel, в файл вошли первые " + EXCEL_LAST_ROW + "."
+                + (csvHelps ? " Полные списки участников и упоминаний - в формате CSV (/format csv)." : "");
+    }
+
+    private String renderCountTop(String title, List<SpaceSaving.Entry> top, boolean withKey) {
+        if (top.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("\n").append(title).append(":\n");
+        for (int i = 0; i < top.size(); i++) {
+            SpaceSaving.Entry entry = top.get(i);
+            sb.append(i + 1).append(". ").append(entry.label());
+            if (withKey) {
+                sb.append(" (").append(entry.key()).append(")");
+            }
+            sb.append(" - ").append(entry.count());
+            if (entry.error() > 0) {
+                sb.append(" ±").append(entry.error());
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private String formatPercent(double fraction) {
+        return String.format(Locale.ROOT, "%.1f%%", fraction * 100);
+    }
+
+    private String renderSummaryText(MultiChatAnalysisResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Чатов в экспорте: ").append(result.chats().size()).append("\n");
+        for (ChatAnalysis chat : result.chats()) {
+            sb.append("- ")
+                    .append(chatName(chat))
+                    .append(": участников ").append(chat.result().getMembersCount())
+                    .append(", упоминаний ").append(chat.result().getMentionsCount())
+                    .append("\n");
+        }
+        return sb.append("\n").toString();
+    }
+
     private String renderText(ChatMsgAnalysisResult result, String fileName) {
         StringBuilder sb = new StringBuilder();
         int participantsCount = result.getMembersCount();
@@ -63,37 +216,66 @@ public class ReportRendererImpl implements ReportRenderer {
         return sb.toString();
     }
 
-    private byte[] renderExcel(ChatMsgAnalysisResult result) throws Exception {
-        try (Workbook workbook = new XSSFWorkbook()) {
+    /**
+     * Записать Excel-отчёт в поток: книга SXSSF сериализуется прямо в out, без массива байт всего файла.
+     */
+    private void writeExcel(ChatMsgAnalysisResult result, List<ChatAnalysis> chats, OutputStream out)
+            throws IOException {
+        // Временные файлы листов сжимаются: большой отчёт не занимает на диске в разы больше итогового файла.
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_WINDOW)) {
+            workbook.setCompressTempFiles(true);
+            if (!chats.isEmpty()) {
+                Sheet sheetSummary = workbook.createSheet("Сводка");
+                writeSummarySheet(sheetSummary, chats, result);
+            }
+
             Sheet sheetMembers = workbook.createSheet("Участники");
             Sheet sheetMentions = workbook.createSheet("Упоминания");
 
-            createHeaderMembersSheet(sheetMembers);
-            createHeaderMentionsSheet(sheetMentions);
+            // Ширины колонок копятся при записи строк и ставятся в конце листа - один проход по данным.
+            MemberStats stats = result.stats();
+            ColumnWidths membersWidths = new ColumnWidths(stats != null ? 3 + MEMBER_STATS_COLUMNS.length : 3);
+            ColumnWidths mentionsWidths = new ColumnWidths(2);
+            createHeaderMembersSheet(sheetMembers, stats != null, membersWidths);
+            createHeaderMentionsSheet(sheetMentions, mentionsWidths);
+
+            String exportDate = LocalDate.now().toString();
+            writeRowsMembers(sheetMembers, result, exportDate, membersWidths);
+            writeRowsMentions(sheetMentions, result, exportDate, mentionsWidths);
 
-            List<RowData> rowsMembers = collectRowsMembers(result);
-            writeRowsMembers(sheetMembers, rowsMembers);
+            membersWidths.apply(sheetMembers);
+            mentionsWidths.apply(sheetMentions);
 
-            List<RowData> rowsMentions = collectRowsMentions(result);
-            writeRowsMentions(sheetMentions, rowsMentions);
+            if (stats != null) {
+                // Топ по точным счётчикам полного анализа: куча из TOP_N элементов, без сортировки всех.
+                Sheet sheetTop = workbook.createSheet("Топ");
+                writeTopSheet(sheetTop, result.memberIndex(), stats, result.mentionIndex());
+            }
 
-            autosize(sheetMembers, 3);
-            autosize(sheetMentions, 2);
+            if (stats != null && stats.replies().edgeCount() > 0) {
+                Sheet sheetReplies = workbook.createSheet("Ответы");
+                writeRepliesSheet(sheetReplies, result.memberIndex(), stats.replies());
+            }
 
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
             workbook.write(out);
-            return out.toByteArray();
         }
     }
 
     private String generateExcelFileName(String fileName) {
+        return reportFileName(fileName, ".xlsx");
+    }
+
+    /**
+     * Имя файла отчёта: имя исходного файла без расширений экспорта, дата и расширение отчёта.
+     */
+    static String reportFileName(String fileName, String extension) {
         String baseFileName = fileName != null && !fileName.isBlank()
-                ? sanitizeFileName(fileName.replace(".json", ""))
+                ? sanitizeFileName(fileName.replaceAll("(?i)(\\.json)?(\\.gz|\\.zip|\\.zst)?$", ""))
                 : "chat-export";
-        return baseFileName + "-" + LocalDate.now() + ".xlsx";
+        return baseFileName + "-" + LocalDate.now() + extension;
     }
 
-    private void createHeaderMembersSheet(Sheet sheet) {
+    private void createHeaderMembersSheet(Sheet sheet, boolean withStats, ColumnWidths widths) {
         Row header = sheet.createRow(0);
 
         String[] columns = {
@@ -103,11 +285,16 @@ public class ReportRendererImpl implements ReportRenderer {
         };
 
         for (int i = 0; i < columns.length; i++) {
-            header.createCell(i).setCellValue(columns[i]);
+            cell(header, i, columns[i], widths);
+        }
+        if (withStats) {
+            for (int i = 0; i < MEMBER_STATS_COLUMNS.length; i++) {
+                cell(header, columns.length + i, MEMBER_STATS_COLUMNS[i], widths);
+            }
         }
     }
 
-    private void createHeaderMentionsSheet(Sheet sheet) {
+    private void createHeaderMentionsSheet(Sheet sheet, ColumnWidths widths) {
         Row header = sheet.createRow(0);
 
         String[] columns = {
@@ -116,62 +303,197 @@ public class ReportRendererImpl implements ReportRenderer {
         };
 
         for (int i = 0; i < columns.length; i++) {
-            header.createCell(i).setCellValue(columns[i]);
+            cell(header, i, columns[i], widths);
         }
     }
 
-    private List<RowData> collectRowsMembers(ChatMsgAnalysisResult result) {
-        List<RowData> rows = new ArrayList<>();
-        LocalDate exportDate = LocalDate.now();
+    private void writeSummarySheet(Sheet sheet, List<ChatAnalysis> chats, ChatMsgAnalysisResult total) {
+        ColumnWidths widths = new ColumnWidths(5);
+        Row header = sheet.createRow(0);
+
+        String[] columns = {
+                "Чат",
+                "Тип",
+                "ChatId",
+                "Участников",
+                "Упоминаний",
+        };
+
+        for (int i = 0; i < columns.length; i++) {
+            cell(header, i, columns[i], widths);
+        }
+
+        int rowIndex = 1;
+        for (ChatAnalysis chat : chats) {
+            Row row = sheet.createRow(rowIndex++);
+
+            cell(row, 0, chatName(chat), widths);
+            cell(row, 1, chat.type() != null ? chat.type() : "", widths);
+            cell(row, 2, chat.id() != null ? String.valueOf(chat.id()) : "", widths);
+            cell(row, 3, chat.result().getMembersCount(), widths);
+            cell(row, 4, chat.result().getMentionsCount(), widths);
+        }
 
-        // Участники.
+        // Итог по объединению: участник из нескольких чатов учитывается один раз.
+        Row totalRow = sheet.createRow(rowIndex);
+        cell(totalRow, 0, "Всего (уникальных)", widths);
+        cell(totalRow, 3, total.getMembersCount(), widths);
+        cell(totalRow, 4, total.getMentionsCount(), widths);
+        widths.apply(sheet);
+    }
+
+    private String chatName(ChatAnalysis chat) {
+        if (chat.name() != null && !chat.name().isBlank()) {
+            return chat.name();
+        }
+        return chat.id() != null ? "Чат " + chat.id() : "Без названия";
+    }
+
+    /**
+     * Строки участников прямо из результата, без промежуточного списка. Со статистикой участники идут
+     * в порядке обхода MemberIndex, поэтому строка i + 1 - участник с номером i, и колонки статистики
+     * пишутся в ту же строку, пока она в окне SXSSF.
+     */
+    private void writeRowsMembers(Sheet sheet, ChatMsgAnalysisResult result, String exportDate,
+                                  ColumnWidths widths) {
+        MemberStats stats = result.stats();
+        int rowIndex = 1;
         for (Member p : result.members()) {
-            rows.add(new RowData(exportDate.toString(), p.fromId(), p.displayName()));
+            if (rowIndex > EXCEL_LAST_ROW) {
+                // Лист полон - об обрезке предупреждает excelWarning.
+                break;
+            }
+            Row row = sheet.createRow(rowIndex++);
+
+            cell(row, 0, exportDate, widths);
+            cell(row, 1, p.fromId(), widths);
+            cell(row, 2, p.displayName(), widths);
+            if (stats != null) {
+                writeMemberStats(row, rowIndex - 2, stats, widths);
+            }
         }
+    }
 
-        return rows;
+    /**
+     * Колонки статистики в строке участника с номером slot.
+     */
+    private void writeMemberStats(Row row, int slot, MemberStats stats, ColumnWidths widths) {
+        cell(row, 3, stats.messageCount(slot), widths);
+        cell(row, 4, formatDate(stats.firstDate(slot)), widths);
+        cell(row, 5, formatDate(stats.lastDate(slot)), widths);
+        cell(row, 6, stats.mentionCount(slot), widths);
+        // Упоминания mention_name по user_id: ненулевое значение - упомянутый, который сам писал в чат.
+        cell(row, 7, stats.mentionedCount(slot), widths);
     }
 
-    private List<RowData> collectRowsMentions(ChatMsgAnalysisResult result) {
-        List<RowData> rows = new ArrayList<>();
-        LocalDate exportDate = LocalDate.now();
+    private void writeTopSheet(Sheet sheet, MemberIndex members, MemberStats stats, MentionIndex mentions) {
+        ColumnWidths widths = new ColumnWidths(6);
+        Row header = sheet.createRow(0);
 
-        // Упоминания.
-        for (Mention m : result.mentions()) {
-            rows.add(new RowData(exportDate.toString(), m.mentionText(), ""));
+        String[] columns = {
+                "UserId",
+                "Имя и фамилия",
+                "Сообщений",
+                "",
+                "Username",
+                "Упоминаний",
+        };
+
+        for (int i = 0; i < columns.length; i++) {
+            cell(header, i, columns[i], widths);
         }
 
-        return rows;
+        int[] topMembers = TopSelector.top(Math.min(members.size(), stats.size()), stats::messageCount, BotConfig.TOP_N);
+        int[] topMentions = TopSelector.top(mentions.size(), mentions::count, BotConfig.TOP_N);
+        for (int i = 0; i < Math.max(topMembers.length, topMentions.length); i++) {
+            Row row = sheet.createRow(i + 1);
+
+            if (i < topMembers.length) {
+                int slot = topMembers[i];
+                cell(row, 0, members.fromId(slot), widths);
+                cell(row, 1, members.displayName(slot), widths);
+                cell(row, 2, stats.messageCount(slot), widths);
+            }
+            if (i < topMentions.length) {
+                int slot = topMentions[i];
+                cell(row, 4, mentions.mention(slot).mentionText(), widths);
+                cell(row, 5, mentions.count(slot), widths);
+            }
+        }
+        widths.apply(sheet);
     }
 
-    private void writeRowsMembers(Sheet sheet, List<RowData> rows) {
-        int rowIndex = 1;
-        for (RowData data : rows) {
-            Row row = sheet.createRow(rowIndex++);
+    /**
+     * Список рёбер графа ответов: строка на пару «отвечающий -> автор» с числом ответов.
+     * Пары сверх лимита строк листа не выводятся - об этом предупреждает excelWarning.
+     */
+    private void writeRepliesSheet(Sheet sheet, MemberIndex members, ReplyGraph replies) {
+        ColumnWidths widths = new ColumnWidths(5);
+        Row header = sheet.createRow(0);
 
-            row.createCell(0).setCellValue(data.exportDate);
-            row.createCell(1).setCellValue(data.username);
-            row.createCell(2).setCellValue(data.fullName);
+        String[] columns = {
+                "UserId отвечающего",
+                "Отвечающий",
+                "UserId автора",
+                "Автор",
+                "Ответов",
+        };
+
+        for (int i = 0; i < columns.length; i++) {
+            cell(header, i, columns[i], widths);
         }
+
+        int[] rowIndex = {1};
+        replies.forEachEdge((from, to, weight) -> {
+            if (rowIndex[0] > EXCEL_LAST_ROW) {
+                return;
+            }
+            Row row = sheet.createRow(rowIndex[0]++);
+
+            cell(row, 0, members.fromId(from), widths);
+            cell(row, 1, members.displayName(from), widths);
+            cell(row, 2, members.fromId(to), widths);
+            cell(row, 3, members.displayName(to), widths);
+            cell(row, 4, weight, widths);
+        });
+        widths.apply(sheet);
+    }
+
+    static String formatDate(long epochSeconds) {
+        return epochSeconds != MemberStats.NO_DATE
+                ? MESSAGE_DATE_FORMAT.format(Instant.ofEpochSecond(epochSeconds))
+                : "";
     }
 
-    private void writeRowsMentions(Sheet sheet, List<RowData> rows) {
+    private void writeRowsMentions(Sheet sheet, ChatMsgAnalysisResult result, String exportDate,
+                                   ColumnWidths widths) {
         int rowIndex = 1;
-        for (RowData data : rows) {
+        for (Mention m : result.mentions()) {
+            if (rowIndex > EXCEL_LAST_ROW) {
+                break;
+            }
             Row row = sheet.createRow(rowIndex++);
 
-            row.createCell(0).setCellValue(data.exportDate);
-            row.createCell(1).setCellValue(data.username);
+            cell(row, 0, exportDate, widths);
+            cell(row, 1, m.mentionText(), widths);
         }
     }
 
-    private void autosize(Sheet sheet, int count) {
-        for (int i = 0; i < count; i++) {
-            sheet.autoSizeColumn(i);
+    private void cell(Row row, int column, String value, ColumnWidths widths) {
+        if (value != null && value.length() > EXCEL_MAX_TEXT_LENGTH) {
+            // Excel не хранит в ячейке больше 32767 символов.
+            value = value.substring(0, EXCEL_MAX_TEXT_LENGTH);
         }
+        row.createCell(column).setCellValue(value);
+        widths.track(column, value);
+    }
+
+    private void cell(Row row, int column, long value, ColumnWidths widths) {
+        row.createCell(column).setCellValue(value);
+        widths.track(column, value);
     }
 
-    private String sanitizeFileName(String fileName) {
+    private static String sanitizeFileName(String fileName) {
         if (fileName == null) {
             return "chat-export";
         }
@@ -180,7 +502,4 @@ public class ReportRendererImpl implements ReportRenderer {
                 .replaceAll("\\s+", "_")
                 .trim();
     }
-
-    private record RowData(String exportDate, String username, String fullName) {
-    }
 }
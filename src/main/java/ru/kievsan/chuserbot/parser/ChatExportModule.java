@@ -0,0 +1,147 @@
+package ru.kievsan.chuserbot.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import ru.kievsan.chuserbot.domain.ChatExport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Jackson-модуль со специализированными десериализаторами сообщений и текстовых сущностей.
+ * Вместо рефлексивного BeanDeserializer поля выбираются прямым switch по имени,
+ * а тяжёлые неиспользуемые поля (text, photo, file, reactions, edited и т.д.) пропускаются через skipChildren()
+ * без буферизации и поиска свойства.
+ */
+public class ChatExportModule extends SimpleModule {
+
+    public ChatExportModule() {
+        super("ChatExportModule");
+        addDeserializer(ChatExport.Message.class, new MessageDeserializer());
+        addDeserializer(ChatExport.TextEntity.class, new TextEntityDeserializer());
+    }
+
+    /**
+     * Десериализатор сообщения: id, date, date_unixtime, from, from_id, reply_to_message_id, text_entities.
+     */
+    static class MessageDeserializer extends StdDeserializer<ChatExport.Message> {
+
+        private final TextEntityDeserializer entityDeserializer = new TextEntityDeserializer();
+
+        MessageDeserializer() {
+            super(ChatExport.Message.class);
+        }
+
+        @Override
+        public ChatExport.Message deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            ChatExport.Message message = new ChatExport.Message();
+            for (JsonToken t = firstField(p, ctxt, ChatExport.Message.class); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "id" -> message.setId(readLong(p, ctxt));
+                    case "date" -> {
+                        // Локальное время без пояса - только если date_unixtime ещё не встретился.
+                        if (p.currentToken() == JsonToken.VALUE_STRING && message.getDate() == null) {
+                            message.setDate(dateOrNull(MessageDates.localDateTime(
+                                    p.getTextCharacters(), p.getTextOffset(), p.getTextLength())));
+                        }
+                    }
+                    case "date_unixtime" -> {
+                        Long date = readLong(p, ctxt);
+                        if (date != null) {
+                            message.setDate(date);
+                        }
+                    }
+                    case "from" -> message.setFrom(readString(p, ctxt));
+                    case "from_id" -> message.setFromId(readString(p, ctxt));
+                    case "reply_to_message_id" -> message.setReplyToMessageId(readLong(p, ctxt));
+                    case "text_entities" -> message.setTextEntities(readEntities(p, ctxt));
+                    default -> p.skipChildren();
+                }
+            }
+            return message;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<ChatExport.TextEntity> readEntities(JsonParser p, DeserializationContext ctxt)
+                throws IOException {
+            if (p.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (p.currentToken() != JsonToken.START_ARRAY) {
+                return (List<ChatExport.TextEntity>) ctxt.handleUnexpectedToken(List.class, p);
+            }
+            List<ChatExport.TextEntity> entities = new ArrayList<>();
+            JsonToken t;
+            while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+                entities.add(t == JsonToken.VALUE_NULL ? null : entityDeserializer.deserialize(p, ctxt));
+            }
+            return entities;
+        }
+    }
+
+    /**
+     * Десериализатор текстовой сущности: type, text, user_id.
+     */
+    static class TextEntityDeserializer extends StdDeserializer<ChatExport.TextEntity> {
+
+        TextEntityDeserializer() {
+            super(ChatExport.TextEntity.class);
+        }
+
+        @Override
+        public ChatExport.TextEntity deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            ChatExport.TextEntity entity = new ChatExport.TextEntity();
+            for (JsonToken t = firstField(p, ctxt, ChatExport.TextEntity.class); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "type" -> entity.setType(readString(p, ctxt));
+                    case "text" -> entity.setText(readString(p, ctxt));
+                    case "user_id" -> entity.setUserId(readLong(p, ctxt));
+                    default -> p.skipChildren();
+                }
+            }
+            return entity;
+        }
+    }
+
+    private static String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return StringDeserializer.instance.deserialize(p, ctxt);
+    }
+
+    private static Long dateOrNull(long date) {
+        return date != MessageEvent.NO_DATE ? date : null;
+    }
+
+    private static Long readLong(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return ctxt.readValue(p, Long.class);
+    }
+
+    /**
+     * Перейти к первому полю объекта; для значений, не являющихся объектом, сообщить об ошибке как BeanDeserializer.
+     */
+    private static JsonToken firstField(JsonParser p, DeserializationContext ctxt, Class<?> type) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_OBJECT) {
+            return p.nextToken();
+        }
+        if (t == JsonToken.FIELD_NAME || t == JsonToken.END_OBJECT) {
+            return t;
+        }
+        ctxt.handleUnexpectedToken(type, p);
+        return JsonToken.END_OBJECT;
+    }
+}
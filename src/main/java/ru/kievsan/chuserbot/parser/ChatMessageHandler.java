@@ -0,0 +1,34 @@
+package ru.kievsan.chuserbot.parser;
+
+import ru.kievsan.chuserbot.domain.ChatExport;
+
+/**
+ * Обработчик сообщений при потоковом парсинге экспорта чата.
+ * Получает сообщения по одному, не дожидаясь разбора всего файла.
+ */
+@FunctionalInterface
+public interface ChatMessageHandler {
+
+    /**
+     * Обработать очередное сообщение.
+     * Объект события переиспользуется парсером, сохранять ссылку на него нельзя.
+     *
+     * @param message текущее сообщение.
+     */
+    void onMessage(MessageEvent message);
+
+    /**
+     * Начало очередного чата полного экспорта аккаунта (элемент chats.list).
+     * Для экспорта одного чата не вызывается.
+     */
+    default void onChatStart() {
+    }
+
+    /**
+     * Конец чата полного экспорта аккаунта.
+     *
+     * @param header заголовок чата (name, type, id) без списка сообщений.
+     */
+    default void onChatEnd(ChatExport header) {
+    }
+}
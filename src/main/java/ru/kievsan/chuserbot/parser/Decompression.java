@@ -0,0 +1,145 @@
+package ru.kievsan.chuserbot.parser;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Прозрачная потоковая распаковка файлов экспорта: gzip (.json.gz), zip с result.json (.zip) и zstd (.zst).
+ * Формат определяется по сигнатуре первых байтов, распакованные данные идут прямо в парсер
+ * без промежуточной копии в памяти (в zip .json, идущий до result.json, откладывается на диск).
+ */
+public final class Decompression {
+
+    /**
+     * Имя файла экспорта внутри zip-архива Telegram Desktop.
+     */
+    public static final String ZIP_ENTRY_NAME = "result.json";
+
+    private static final int SIGNATURE_LENGTH = 4;
+    private static final String[] SUPPORTED_EXTENSIONS = {".json", ".json.gz", ".gz", ".zip", ".json.zst", ".zst"};
+
+    private Decompression() {
+    }
+
+    /**
+     * Формат сжатия входных данных.
+     */
+    public enum Format {
+        NONE, GZIP, ZIP, ZSTD
+    }
+
+    /**
+     * Поддерживается ли файл с таким именем (JSON или сжатый JSON).
+     */
+    public static boolean isSupportedFileName(String fileName) {
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (String extension : SUPPORTED_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Определить формат по сигнатуре (первым 4 байтам).
+     */
+    public static Format detect(byte[] head, int length) {
+        if (length >= 2 && (head[0] & 0xFF) == 0x1F && (head[1] & 0xFF) == 0x8B) {
+            return Format.GZIP;
+        }
+        if (length >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4) {
+            return Format.ZIP;
+        }
+        if (length >= 4 && (head[0] & 0xFF) == 0x28 && (head[1] & 0xFF) == 0xB5
+                && (head[2] & 0xFF) == 0x2F && (head[3] & 0xFF) == 0xFD) {
+            return Format.ZSTD;
+        }
+        return Format.NONE;
+    }
+
+    /**
+     * Обернуть поток распаковщиком, если данные сжаты; несжатые данные возвращаются как есть.
+     * Закрытие результата закрывает исходный поток.
+     */
+    public static InputStream wrap(InputStream in) throws IOException {
+        BufferedInputStream buffered = in instanceof BufferedInputStream b ? b : new BufferedInputStream(in);
+        buffered.mark(SIGNATURE_LENGTH);
+        byte[] head = buffered.readNBytes(SIGNATURE_LENGTH);
+        buffered.reset();
+
+        return switch (detect(head, head.length)) {
+            case NONE -> buffered;
+            case GZIP -> new GZIPInputStream(buffered);
+            case ZSTD -> new ZstdInputStream(buffered);
+            case ZIP -> openZipEntry(new ZipInputStream(buffered));
+        };
+    }
+
+    /**
+     * Найти в zip-архиве result.json (в корне или в папке экспорта); если его нет - единственный .json-файл.
+     * Архив читается потоком, поэтому .json, встреченный раньше result.json, откладывается во временный файл
+     * до конца архива (удаляется при закрытии результата или если нашёлся result.json).
+     */
+    private static InputStream openZipEntry(ZipInputStream zip) throws IOException {
+        Path candidate = null;
+        int jsonEntries = 0;
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName().toLowerCase(Locale.ROOT);
+                if (name.equals(ZIP_ENTRY_NAME) || name.endsWith("/" + ZIP_ENTRY_NAME)) {
+                    InputStream result = zip;
+                    zip = null;
+                    return result;
+                }
+                if (name.endsWith(".json") && jsonEntries++ == 0) {
+                    candidate = Files.createTempFile("chuserbot-zip-", ".json");
+                    Files.copy(zip, candidate, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (jsonEntries != 1) {
+                throw new IOException(jsonEntries == 0
+                        ? "Zip archive does not contain " + ZIP_ENTRY_NAME
+                        : "Zip archive contains several .json files but no " + ZIP_ENTRY_NAME);
+            }
+            InputStream result = deleteOnClose(candidate);
+            candidate = null;
+            return result;
+        } finally {
+            if (zip != null) {
+                zip.close();
+            }
+            if (candidate != null) {
+                Files.deleteIfExists(candidate);
+            }
+        }
+    }
+
+    private static InputStream deleteOnClose(Path file) throws IOException {
+        return new FilterInputStream(new BufferedInputStream(Files.newInputStream(file))) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package ru.kievsan.chuserbot.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Быстрая проверка формата по первым килобайтам файла, до полного разбора.
+ * Корень должен быть JSON-объектом, а среди его полей в пределах окна должен встретиться признак экспорта Telegram:
+ * массив messages или type с типом чата Telegram (экспорт одного чата), personal_information/chats/left_chats
+ * (полный экспорт). Общие поля name/id/about признаком не считаются - они есть почти в любом JSON.
+ * Если документ целиком умещается в окно, решение оставляется полному разбору - он дешёвый.
+ */
+public final class ExportFormatSniffer {
+
+    /**
+     * Размер окна проверки в байтах.
+     */
+    public static final int HEAD_BYTES = 8 * 1024;
+
+    private static final Set<String> FULL_EXPORT_FIELDS = Set.of("personal_information", "chats", "left_chats");
+    /**
+     * Значения поля type у экспорта одного чата (Telegram Desktop).
+     */
+    private static final Set<String> CHAT_TYPES = Set.of(
+            "personal_chat", "bot_chat", "private_group", "private_supergroup", "public_supergroup",
+            "private_channel", "public_channel", "saved_messages", "replies", "verify_codes");
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ExportFormatSniffer() {
+    }
+
+    /**
+     * Проверить начало потока и вернуть поток, из которого прочитанное окно будет прочитано заново.
+     * Сжатые данные не проверяются: их проверит парсер после распаковки.
+     *
+     * @throws Parser.UnsupportedExportFormatException если начало файла не похоже на экспорт Telegram.
+     */
+    public static InputStream peek(InputStream in) throws IOException, Parser.UnsupportedExportFormatException {
+        BufferedInputStream buffered = in instanceof BufferedInputStream b ? b : new BufferedInputStream(in);
+        buffered.mark(HEAD_BYTES);
+        byte[] head = buffered.readNBytes(HEAD_BYTES);
+        buffered.reset();
+
+        if (Decompression.detect(head, head.length) == Decompression.Format.NONE) {
+            check(head, head.length);
+        }
+        return buffered;
+    }
+
+    /**
+     * Проверить начало строкового содержимого.
+     */
+    static void check(String json) throws Parser.UnsupportedExportFormatException {
+        byte[] head = json.substring(0, Math.min(json.length(), HEAD_BYTES)).getBytes(StandardCharsets.UTF_8);
+        check(head, head.length, json.length() > HEAD_BYTES);
+    }
+
+    /**
+     * Проверить первые байты несжатого файла.
+     *
+     * @param head   начало файла.
+     * @param length число байт начала; окно считается заполненным, если length не меньше {@link #HEAD_BYTES}.
+     */
+    public static void check(byte[] head, int length) throws Parser.UnsupportedExportFormatException {
+        check(head, Math.min(length, head.length), length >= HEAD_BYTES);
+    }
+
+    /**
+     * @param windowFull файл продолжается за пределами окна.
+     */
+    private static void check(byte[] head, int length, boolean windowFull)
+            throws Parser.UnsupportedExportFormatException {
+        int usable = utf8Boundary(head, length);
+
+        try (JsonParser parser = JSON_FACTORY.createParser(head, 0, usable)) {
+            JsonToken root = parser.nextToken();
+            if (root == null) {
+                return;
+            }
+            if (root != JsonToken.START_OBJECT) {
+                throw new Parser.UnsupportedExportFormatException(
+                        "Root JSON value must be an object, found " + root.asString());
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("messages".equals(field)) {
+                    if (value == JsonToken.START_ARRAY) {
+                        return;
+                    }
+                    if (value != JsonToken.VALUE_NULL) {
+                        throw new Parser.UnsupportedExportFormatException("Field 'messages' must be an array");
+                    }
+                }
+                if ("type".equals(field) && value == JsonToken.VALUE_STRING && CHAT_TYPES.contains(parser.getText())) {
+                    return;
+                }
+                if (FULL_EXPORT_FIELDS.contains(field) && value.isStructStart()) {
+                    return;
+                }
+                parser.skipChildren();
+            }
+            // Корневой объект закончился внутри окна - остальное проверит полный разбор.
+        } catch (JsonEOFException e) {
+            if (windowFull) {
+                throw new Parser.UnsupportedExportFormatException(
+                        "No Telegram export fields in the first " + HEAD_BYTES + " bytes");
+            }
+            // Файл короче окна и оборван - это сообщит полный разбор.
+        } catch (JsonProcessingException e) {
+            throw new Parser.UnsupportedExportFormatException("Not a JSON document: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            // Чтение из массива не выполняет ввод-вывод; прочие ошибки оставляем полному разбору.
+        }
+    }
+
+    /**
+     * Обрезать окно по границе UTF-8 символа, чтобы не получить ошибку кодировки на последнем байте.
+     */
+    private static int utf8Boundary(byte[] head, int length) {
+        int start = length;
+        while (start > 0 && start > length - 4 && (head[start - 1] & 0xC0) == 0x80) {
+            start--;
+        }
+        if (start == 0) {
+            return length;
+        }
+        int lead = head[start - 1] & 0xFF;
+        int expected = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+        return length - (start - 1) < expected ? start - 1 : length;
+    }
+}
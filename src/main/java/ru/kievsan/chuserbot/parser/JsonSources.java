@@ -0,0 +1,86 @@
+package ru.kievsan.chuserbot.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import ru.kievsan.chuserbot.domain.RawChatFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Создание Jackson JsonParser поверх источника {@link RawChatFile}.
+ * Байтовые источники читаются напрямую как UTF-8, без промежуточной строки.
+ */
+final class JsonSources {
+
+    private JsonSources() {
+    }
+
+    /**
+     * Открыть парсер для содержимого файла.
+     * Сжатые байтовые источники (gzip, zip, zstd) распаковываются на лету.
+     * Начало содержимого проверяется {@link ExportFormatSniffer} до полного разбора.
+     * Потоки и каналы вызывающей стороны не закрываются, файл с диска закрывается вместе с парсером.
+     *
+     * @throws Parser.ChatExportParseException если строковое содержимое пустое или не похоже на экспорт Telegram.
+     */
+    static JsonParser open(JsonFactory factory, RawChatFile file) throws IOException, Parser.ChatExportParseException {
+        return switch (file.source()) {
+            case RawChatFile.TextSource text -> {
+                if (text.json().isBlank()) {
+                    throw new Parser.ChatExportParseException("JSON content is blank");
+                }
+                ExportFormatSniffer.check(text.json());
+                yield factory.createParser(text.json());
+            }
+            case RawChatFile.StreamSource stream -> factory.createParser(
+                    ExportFormatSniffer.peek(Decompression.wrap(borrowed(stream.inputStream()))));
+            case RawChatFile.ChannelSource channel -> factory.createParser(
+                    ExportFormatSniffer.peek(Decompression.wrap(borrowed(Channels.newInputStream(channel.channel())))));
+            case RawChatFile.PathSource path -> factory.createParser(
+                    ExportFormatSniffer.peek(Decompression.wrap(openMapped(path.path()))));
+        };
+    }
+
+    /**
+     * Поток вызывающей стороны: закрытие обёрток (распаковщиков, парсера) его не закрывает.
+     */
+    private static InputStream borrowed(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public void close() {
+                // Поток закрывает владелец.
+            }
+        };
+    }
+
+    /**
+     * Открыть файл на чтение через отображение в память: байты не попадают в кучу целиком,
+     * Jackson читает их небольшими порциями из MappedByteBuffer.
+     * Файлы больше 2 ГБ (предел одного отображения) читаются через FileChannel.
+     */
+    static InputStream openMapped(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return Channels.newInputStream(channel);
+            }
+            // Отображение остаётся действительным и после закрытия канала.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            channel.close();
+            return new ByteBufferBackedInputStream(buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+}
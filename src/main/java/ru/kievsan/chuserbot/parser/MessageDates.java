@@ -0,0 +1,76 @@
+package ru.kievsan.chuserbot.parser;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Разбор даты сообщения в секунды эпохи прямо из символов токена (без промежуточных строк).
+ * date_unixtime - секунды UTC; date - локальное время экспорта "yyyy-MM-ddTHH:mm:ss" без часового пояса,
+ * используется только при отсутствии date_unixtime и трактуется как UTC.
+ * Неразборчивое значение даёт {@link MessageEvent#NO_DATE}.
+ */
+final class MessageDates {
+
+    private static final int LOCAL_DATE_TIME_LENGTH = 19;
+
+    private MessageDates() {
+    }
+
+    /**
+     * Секунды из десятичной записи date_unixtime.
+     */
+    static long unixtime(char[] chars, int offset, int length) {
+        if (length <= 0 || length > 12) {
+            return MessageEvent.NO_DATE;
+        }
+        long seconds = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return MessageEvent.NO_DATE;
+            }
+            seconds = seconds * 10 + (c - '0');
+        }
+        return seconds > 0 ? seconds : MessageEvent.NO_DATE;
+    }
+
+    /**
+     * Секунды из локального времени date ("2024-01-31T12:34:56").
+     */
+    static long localDateTime(char[] chars, int offset, int length) {
+        if (length != LOCAL_DATE_TIME_LENGTH
+                || chars[offset + 4] != '-' || chars[offset + 7] != '-' || chars[offset + 10] != 'T'
+                || chars[offset + 13] != ':' || chars[offset + 16] != ':') {
+            return MessageEvent.NO_DATE;
+        }
+        int year = digits(chars, offset, 4);
+        int month = digits(chars, offset + 5, 2);
+        int day = digits(chars, offset + 8, 2);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+        int second = digits(chars, offset + 17, 2);
+        if (year < 1971 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return MessageEvent.NO_DATE;
+        }
+        try {
+            return LocalDate.of(year, month, day).toEpochDay() * 86_400 + hour * 3_600L + minute * 60L + second;
+        } catch (DateTimeException e) {
+            return MessageEvent.NO_DATE;
+        }
+    }
+
+    /**
+     * Неотрицательное число из count цифр или -1.
+     */
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,209 @@
+package ru.kievsan.chuserbot.parser;
+
+import ru.kievsan.chuserbot.domain.ChatExport;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Сообщение чата в виде переиспользуемого события для потокового парсинга.
+ * Содержит только поля, нужные для анализа: id, дата, автор, id сообщения, на которое дан ответ, и текстовые сущности.
+ * Один экземпляр заполняется парсером заново для каждого сообщения.
+ * Повторяющиеся строки (автор, from_id, тип сущности) парсер берёт из общего для прохода {@link StringPool}.
+ */
+public final class MessageEvent {
+
+    /**
+     * Значение {@link #id()}, {@link #replyToId()} и {@link #entityUserId(int)} при отсутствии id.
+     */
+    public static final long NO_ID = -1;
+
+    /**
+     * Значение {@link #date()} для сообщения без даты.
+     */
+    public static final long NO_DATE = 0;
+
+    private static final int INITIAL_ENTITIES_CAPACITY = 8;
+
+    private long id = NO_ID;
+    private long date = NO_DATE;
+    private String from;
+    private String fromId;
+    private long replyToId = NO_ID;
+    private String[] entityTypes = new String[INITIAL_ENTITIES_CAPACITY];
+    private String[] entityTexts = new String[INITIAL_ENTITIES_CAPACITY];
+    private long[] entityUserIds = new long[INITIAL_ENTITIES_CAPACITY];
+    private int entityCount;
+    private final StringPool strings = new StringPool();
+
+    /**
+     * Идентификатор сообщения в чате или {@link #NO_ID}.
+     */
+    public long id() {
+        return id;
+    }
+
+    /**
+     * Дата сообщения в секундах эпохи (UTC) или {@link #NO_DATE}.
+     */
+    public long date() {
+        return date;
+    }
+
+    /**
+     * Имя автора сообщения (может быть null).
+     */
+    public String from() {
+        return from;
+    }
+
+    /**
+     * Идентификатор автора сообщения (может быть null).
+     */
+    public String fromId() {
+        return fromId;
+    }
+
+    /**
+     * Идентификатор сообщения, на которое это сообщение отвечает, или {@link #NO_ID}.
+     */
+    public long replyToId() {
+        return replyToId;
+    }
+
+    /**
+     * Количество текстовых сущностей в сообщении.
+     */
+    public int entityCount() {
+        return entityCount;
+    }
+
+    /**
+     * Тип текстовой сущности (plain, mention и т.д.).
+     */
+    public String entityType(int index) {
+        checkEntityIndex(index);
+        return entityTypes[index];
+    }
+
+    /**
+     * Текст текстовой сущности.
+     */
+    public String entityText(int index) {
+        checkEntityIndex(index);
+        return entityTexts[index];
+    }
+
+    /**
+     * user_id текстовой сущности (есть у mention_name) или {@link #NO_ID}.
+     */
+    public long entityUserId(int index) {
+        checkEntityIndex(index);
+        return entityUserIds[index];
+    }
+
+    /**
+     * Кэш строк прохода парсера, которому принадлежит событие.
+     */
+    StringPool strings() {
+        return strings;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    void setDate(long date) {
+        this.date = date;
+    }
+
+    void setFrom(String from) {
+        this.from = from;
+    }
+
+    void setFromId(String fromId) {
+        this.fromId = fromId;
+    }
+
+    void setReplyToId(long replyToId) {
+        this.replyToId = replyToId;
+    }
+
+    void addEntity(String type, String text, long userId) {
+        if (entityCount == entityTypes.length) {
+            entityTypes = Arrays.copyOf(entityTypes, entityCount * 2);
+            entityTexts = Arrays.copyOf(entityTexts, entityCount * 2);
+            entityUserIds = Arrays.copyOf(entityUserIds, entityCount * 2);
+        }
+        entityTypes[entityCount] = type;
+        entityTexts[entityCount] = text;
+        entityUserIds[entityCount] = userId;
+        entityCount++;
+    }
+
+    /**
+     * Очистить событие перед заполнением следующим сообщением.
+     */
+    void reset() {
+        id = NO_ID;
+        date = NO_DATE;
+        from = null;
+        fromId = null;
+        replyToId = NO_ID;
+        Arrays.fill(entityTypes, 0, entityCount, null);
+        Arrays.fill(entityTexts, 0, entityCount, null);
+        entityCount = 0;
+    }
+
+    /**
+     * Заполнить событие из сообщения доменной модели.
+     */
+    public MessageEvent fill(ChatExport.Message message) {
+        reset();
+        setId(message.getId() != null ? message.getId() : NO_ID);
+        setDate(message.getDate() != null ? message.getDate() : NO_DATE);
+        setFrom(message.getFrom());
+        setFromId(message.getFromId());
+        setReplyToId(message.getReplyToMessageId() != null ? message.getReplyToMessageId() : NO_ID);
+        List<ChatExport.TextEntity> entities = message.getTextEntities();
+        if (entities != null) {
+            // Обход по индексу - без итератора на каждое сообщение.
+            for (int i = 0; i < entities.size(); i++) {
+                ChatExport.TextEntity entity = entities.get(i);
+                if (entity != null) {
+                    addEntity(entity.getType(), entity.getText(),
+                            entity.getUserId() != null ? entity.getUserId() : NO_ID);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Собрать сообщение доменной модели из текущего состояния события.
+     */
+    public ChatExport.Message toMessage() {
+        ChatExport.Message message = new ChatExport.Message();
+        message.setId(id != NO_ID ? id : null);
+        message.setDate(date != NO_DATE ? date : null);
+        message.setFrom(from);
+        message.setFromId(fromId);
+        message.setReplyToMessageId(replyToId != NO_ID ? replyToId : null);
+        ChatExport.TextEntity[] entities = new ChatExport.TextEntity[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            ChatExport.TextEntity entity = new ChatExport.TextEntity();
+            entity.setType(entityTypes[i]);
+            entity.setText(entityTexts[i]);
+            entity.setUserId(entityUserIds[i] != NO_ID ? entityUserIds[i] : null);
+            entities[i] = entity;
+        }
+        message.setTextEntities(List.of(entities));
+        return message;
+    }
+
+    private void checkEntityIndex(int index) {
+        if (index < 0 || index >= entityCount) {
+            throw new IndexOutOfBoundsException("Entity index " + index + " out of bounds: " + entityCount);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ru.kievsan.chuserbot.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Быстрый предварительный проход по байтам JSON-экспорта: находит массив messages верхнего уровня
+ * и разделители (запятые) между его элементами вблизи заданных границ фрагментов.
+ * Учитывает вложенность скобок и строки с экранированием, токены не строит.
+ */
+final class MessagesArrayScanner {
+
+    private static final byte[] MESSAGES_KEY = "messages".getBytes(StandardCharsets.US_ASCII);
+
+    private MessagesArrayScanner() {
+    }
+
+    /**
+     * Разметка массива messages.
+     *
+     * @param arrayStart позиция '[' массива.
+     * @param arrayEnd   позиция ']' массива.
+     * @param boundaries позиции разделителей, по которым массив делится на фрагменты
+     *                   (первый элемент - arrayStart, последний - arrayEnd).
+     */
+    record Layout(int arrayStart, int arrayEnd, int[] boundaries) {
+
+        int chunkCount() {
+            return boundaries.length - 1;
+        }
+    }
+
+    /**
+     * Разметить массив messages на фрагменты примерно одинакового размера.
+     *
+     * @return разметка или null, если массив messages верхнего уровня не найден.
+     */
+    static Layout scan(ByteBuffer buffer, int chunkCount) {
+        int arrayStart = findMessagesArray(buffer);
+        if (arrayStart < 0) {
+            return null;
+        }
+
+        int limit = buffer.limit();
+        long chunkSize = Math.max(1, (long) (limit - arrayStart) / Math.max(1, chunkCount));
+        long nextTarget = arrayStart + chunkSize;
+
+        int[] boundaries = new int[Math.max(2, chunkCount + 1)];
+        int count = 0;
+        boundaries[count++] = arrayStart;
+
+        int depth = 0;
+        boolean inString = false;
+        for (int i = arrayStart + 1; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (b) {
+                case '"' -> inString = true;
+                case '{', '[' -> depth++;
+                case '}' -> depth--;
+                case ']' -> {
+                    if (depth == 0) {
+                        if (count == boundaries.length) {
+                            boundaries = Arrays.copyOf(boundaries, count + 1);
+                        }
+                        boundaries[count++] = i;
+                        return new Layout(arrayStart, i, Arrays.copyOf(boundaries, count));
+                    }
+                    depth--;
+                }
+                case ',' -> {
+                    if (depth == 0 && i >= nextTarget && count < boundaries.length - 1) {
+                        boundaries[count++] = i;
+                        nextTarget = i + chunkSize;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        // Массив не закрыт - файл обрезан или повреждён.
+        return null;
+    }
+
+    /**
+     * Найти позицию '[' массива, значения ключа "messages" корневого объекта.
+     */
+    private static int findMessagesArray(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int depth = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            switch (b) {
+                case '"' -> {
+                    int start = i + 1;
+                    int end = skipString(buffer, start);
+                    if (end < 0) {
+                        return -1;
+                    }
+                    i = end;
+                    if (depth == 1 && isMessagesKey(buffer, start, end)) {
+                        int colon = skipWhitespace(buffer, end + 1);
+                        if (colon < limit && buffer.get(colon) == ':') {
+                            int value = skipWhitespace(buffer, colon + 1);
+                            if (value < limit && buffer.get(value) == '[') {
+                                return value;
+                            }
+                        }
+                    }
+                }
+                case '{', '[' -> depth++;
+                case '}', ']' -> depth--;
+                default -> {
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Пропустить строку, начинающуюся после открывающей кавычки.
+     *
+     * @return позиция закрывающей кавычки или -1.
+     */
+    private static int skipString(ByteBuffer buffer, int from) {
+        int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isMessagesKey(ByteBuffer buffer, int start, int end) {
+        if (end - start != MESSAGES_KEY.length) {
+            return false;
+        }
+        for (int i = 0; i < MESSAGES_KEY.length; i++) {
+            if (buffer.get(start + i) != MESSAGES_KEY[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from) {
+        int i = from;
+        while (i < buffer.limit()) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,173 @@
+package ru.kievsan.chuserbot.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.RawChatFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Параллельный парсер JSON-экспорта чата.
+ * Файл на диске отображается в память, быстрый предварительный проход находит границы элементов массива messages,
+ * после чего фрагменты массива разбираются потоковым парсером на ForkJoinPool - каждый своим обработчиком.
+ * Для строк, потоков, сжатых и небольших файлов работает как {@link StreamingParserImpl}.
+ */
+@Slf4j
+public class ParallelParserImpl implements Parser {
+
+    private static final int DEFAULT_MIN_CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final byte[] OPEN_ARRAY = "[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE_ARRAY = "]".getBytes(StandardCharsets.US_ASCII);
+
+    private final StreamingParserImpl streamingParser;
+    private final ForkJoinPool pool;
+    private final int minChunkBytes;
+
+    public ParallelParserImpl() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_BYTES);
+    }
+
+    /**
+     * @param pool          пул для разбора фрагментов.
+     * @param minChunkBytes минимальный размер фрагмента в байтах (файлы меньше двух фрагментов разбираются целиком).
+     */
+    public ParallelParserImpl(ForkJoinPool pool, int minChunkBytes) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        if (minChunkBytes <= 0) {
+            throw new IllegalArgumentException("minChunkBytes must be positive");
+        }
+        this.streamingParser = new StreamingParserImpl();
+        this.pool = pool;
+        this.minChunkBytes = minChunkBytes;
+    }
+
+    @Override
+    public ChatExport parse(RawChatFile file) throws ChatExportParseException {
+        return streamingParser.parse(file);
+    }
+
+    @Override
+    public ChatExport parse(RawChatFile file, ChatMessageHandler handler) throws ChatExportParseException {
+        return streamingParser.parse(file, handler);
+    }
+
+    @Override
+    public <H extends ChatMessageHandler> Chunks<H> parseChunks(RawChatFile file, Supplier<H> handlers)
+            throws ChatExportParseException {
+        if (!(file.source() instanceof RawChatFile.PathSource pathSource)) {
+            return Parser.super.parseChunks(file, handlers);
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(pathSource.path(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size < 2L * minChunkBytes) {
+                return Parser.super.parseChunks(file, handlers);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            log.error("Parse error: {}", e.getMessage());
+            throw new ChatExportParseException("Failed to read file: " + e.getMessage(), e);
+        }
+
+        byte[] head = new byte[Math.min(ExportFormatSniffer.HEAD_BYTES, buffer.limit())];
+        buffer.get(0, head);
+        if (Decompression.detect(head, head.length) != Decompression.Format.NONE) {
+            // Сжатый файл делится на фрагменты только после распаковки - разбираем последовательно.
+            return Parser.super.parseChunks(file, handlers);
+        }
+        // Чужой файл отклоняем до прохода по всему файлу.
+        ExportFormatSniffer.check(head, head.length);
+
+        int chunkCount = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, buffer.limit() / minChunkBytes);
+        MessagesArrayScanner.Layout layout = MessagesArrayScanner.scan(buffer, chunkCount);
+        if (layout == null || layout.chunkCount() < 2) {
+            // Массив messages не найден или слишком мал - ошибки формата сообщит обычный потоковый разбор.
+            return Parser.super.parseChunks(file, handlers);
+        }
+
+        log.info("Parallel parsing file: {} ({} chunks)", file.fileName(), layout.chunkCount());
+        ChatExport header = parseHeader(file, buffer, layout);
+        return new Chunks<>(header, parseMessageChunks(buffer, layout, handlers));
+    }
+
+    /**
+     * Разобрать корневой объект без содержимого массива messages: проверить структуру и прочитать поля заголовка.
+     */
+    private ChatExport parseHeader(RawChatFile file, MappedByteBuffer buffer, MessagesArrayScanner.Layout layout)
+            throws ChatExportParseException {
+        InputStream header = new SequenceInputStream(
+                slice(buffer, 0, layout.arrayStart() + 1),
+                slice(buffer, layout.arrayEnd(), buffer.limit()));
+        return streamingParser.parse(RawChatFile.ofStream(file.fileName(), header), message -> {
+        });
+    }
+
+    private <H extends ChatMessageHandler> List<H> parseMessageChunks(
+            MappedByteBuffer buffer, MessagesArrayScanner.Layout layout, Supplier<H> handlers)
+            throws ChatExportParseException {
+        int[] boundaries = layout.boundaries();
+        List<H> result = new ArrayList<>(layout.chunkCount());
+        List<Callable<H>> tasks = new ArrayList<>(layout.chunkCount());
+        for (int i = 0; i < layout.chunkCount(); i++) {
+            H handler = handlers.get();
+            int from = boundaries[i] + 1;
+            int to = boundaries[i + 1];
+            result.add(handler);
+            tasks.add(() -> parseChunk(buffer, from, to, handler));
+        }
+
+        try {
+            for (Future<H> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChatExportParseException("Parsing interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            log.error("Parse error: {}", cause.getMessage());
+            throw new ChatExportParseException("Failed to parse JSON: " + cause.getMessage(), cause);
+        }
+        return result;
+    }
+
+    /**
+     * Разобрать фрагмент массива messages [from, to) как отдельный JSON-массив.
+     */
+    private <H extends ChatMessageHandler> H parseChunk(MappedByteBuffer buffer, int from, int to, H handler)
+            throws IOException {
+        InputStream chunk = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(OPEN_ARRAY),
+                slice(buffer, from, to),
+                new ByteArrayInputStream(CLOSE_ARRAY))));
+        try (JsonParser parser = streamingParser.jsonFactory().createParser(chunk)) {
+            streamingParser.parseMessageArray(parser, handler);
+        }
+        return handler;
+    }
+
+    private static InputStream slice(MappedByteBuffer buffer, int from, int to) {
+        return new ByteBufferBackedInputStream(buffer.slice(from, to - from));
+    }
+}
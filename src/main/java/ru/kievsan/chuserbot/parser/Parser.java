@@ -3,6 +3,9 @@ package ru.kievsan.chuserbot.parser;
 import ru.kievsan.chuserbot.domain.ChatExport;
 import ru.kievsan.chuserbot.domain.RawChatFile;
 
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * Интерфейс для парсинга JSON-экспорта чата Telegram в доменную модель.
  */
@@ -17,6 +20,58 @@ public interface Parser {
      */
     ChatExport parse(RawChatFile file) throws ChatExportParseException;
 
+    /**
+     * Распарсить JSON-файл экспорта чата, передавая сообщения обработчику по одному.
+     * Реализация по умолчанию строит полную модель и затем обходит её список сообщений.
+     *
+     * @param file    сырой файл экспорта чата.
+     * @param handler обработчик сообщений.
+     * @return заголовок чата (name, type, id) без списка сообщений.
+     * @throws ChatExportParseException если файл не получается распарсить.
+     */
+    default ChatExport parse(RawChatFile file, ChatMessageHandler handler) throws ChatExportParseException {
+        ChatExport chatExport = parse(file);
+        if (chatExport.getMessages() != null) {
+            MessageEvent event = new MessageEvent();
+            for (ChatExport.Message message : chatExport.getMessages()) {
+                if (message != null) {
+                    handler.onMessage(event.fill(message));
+                }
+            }
+        }
+        ChatExport header = new ChatExport();
+        header.setName(chatExport.getName());
+        header.setType(chatExport.getType());
+        header.setId(chatExport.getId());
+        return header;
+    }
+
+    /**
+     * Распарсить JSON-файл экспорта чата по фрагментам массива messages.
+     * Каждый фрагмент обрабатывается своим обработчиком; реализации могут разбирать фрагменты параллельно.
+     * Реализация по умолчанию разбирает файл одним фрагментом.
+     *
+     * @param file     сырой файл экспорта чата.
+     * @param handlers фабрика обработчиков, по одному на фрагмент.
+     * @return заголовок чата и обработчики в порядке следования фрагментов в файле.
+     * @throws ChatExportParseException если файл не получается распарсить.
+     */
+    default <H extends ChatMessageHandler> Chunks<H> parseChunks(RawChatFile file, Supplier<H> handlers)
+            throws ChatExportParseException {
+        H handler = handlers.get();
+        ChatExport header = parse(file, handler);
+        return new Chunks<>(header, List.of(handler));
+    }
+
+    /**
+     * Результат разбора по фрагментам.
+     *
+     * @param header   заголовок чата (name, type, id) без списка сообщений.
+     * @param handlers обработчики в порядке следования фрагментов в файле.
+     */
+    record Chunks<H extends ChatMessageHandler>(ChatExport header, List<H> handlers) {
+    }
+
     /**
      * Исключение при парсинге JSON-экспорта.
      */
@@ -29,4 +84,46 @@ public interface Parser {
             super(message, cause);
         }
     }
+
+    /**
+     * Файл не похож на экспорт Telegram: отклонён по первым килобайтам, до полного разбора.
+     */
+    class UnsupportedExportFormatException extends ChatExportParseException {
+        public UnsupportedExportFormatException(String message) {
+            super(message);
+        }
+
+        public UnsupportedExportFormatException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Файл оборван: разбор дошёл до конца данных внутри JSON-структуры.
+     * Сообщения до места обрыва уже переданы обработчику, его частичный результат можно использовать.
+     */
+    class TruncatedChatExportException extends ChatExportParseException {
+        private final transient ChatExport header;
+        private final long offset;
+
+        public TruncatedChatExportException(String message, Throwable cause, ChatExport header, long offset) {
+            super(message, cause);
+            this.header = header;
+            this.offset = offset;
+        }
+
+        /**
+         * Поля заголовка чата (name, type, id), прочитанные до обрыва.
+         */
+        public ChatExport header() {
+            return header;
+        }
+
+        /**
+         * Позиция обрыва: байт для байтовых источников, символ для строки (-1, если неизвестна).
+         */
+        public long offset() {
+            return offset;
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package ru.kievsan.chuserbot.parser;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -9,6 +10,7 @@ import ru.kievsan.chuserbot.domain.RawChatFile;
 
 /**
  * Реализация сервиса для парсинга JSON-экспорта чата Telegram в доменную модель.
+ * Сообщения и текстовые сущности разбираются специализированными десериализаторами {@link ChatExportModule}.
  */
 @Slf4j
 public class ParserImpl implements Parser {
@@ -18,6 +20,7 @@ public class ParserImpl implements Parser {
     public ParserImpl() {
         this.objectMapper = new ObjectMapper()
                 .registerModule(new JavaTimeModule())
+                .registerModule(new ChatExportModule())
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
@@ -26,12 +29,13 @@ public class ParserImpl implements Parser {
         try {
             log.info("Parsing file: {}", file.fileName());
 
-            if (file.jsonContent().isBlank()) {
-                throw new ChatExportParseException("JSON content is blank");
+            try (JsonParser jsonParser = JsonSources.open(objectMapper.getFactory(), file)) {
+                return objectMapper.readValue(jsonParser, ChatExport.class);
             }
 
-            return objectMapper.readValue(file.jsonContent(), ChatExport.class);
-
+        } catch (ChatExportParseException e) {
+            log.error("Parse error: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Parse error: {}", e.getMessage());
             throw new ChatExportParseException("Failed to parse JSON: " + e.getMessage(), e);
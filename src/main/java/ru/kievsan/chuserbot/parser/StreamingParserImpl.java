@@ -0,0 +1,280 @@
+package ru.kievsan.chuserbot.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.RawChatFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый парсер JSON-экспорта чата Telegram на базе Jackson JsonParser.
+ * Поддерживает экспорт одного чата и полный экспорт аккаунта (chats.list[] и left_chats.list[]):
+ * границы чатов передаются обработчику через onChatStart/onChatEnd.
+ * Обходит массив messages по одному элементу и читает только id, date/date_unixtime, from, from_id,
+ * reply_to_message_id и text_entities[].type/text/user_id,
+ * остальные поля пропускаются через skipChildren(). Полный список сообщений в памяти не строится,
+ * поэтому расход памяти определяется обработчиком, а не размером файла.
+ */
+@Slf4j
+public class StreamingParserImpl implements Parser {
+
+    private final JsonFactory jsonFactory;
+
+    public StreamingParserImpl() {
+        this.jsonFactory = new JsonFactory();
+    }
+
+    JsonFactory jsonFactory() {
+        return jsonFactory;
+    }
+
+    /**
+     * Собирает модель ChatExport через потоковый обход (только используемые поля сообщений).
+     * Нужен для совместимости; для больших файлов используйте {@link #parse(RawChatFile, ChatMessageHandler)}.
+     */
+    @Override
+    public ChatExport parse(RawChatFile file) throws ChatExportParseException {
+        List<ChatExport.Message> messages = new ArrayList<>();
+        ChatExport chatExport = parse(file, event -> messages.add(event.toMessage()));
+        chatExport.setMessages(messages);
+        return chatExport;
+    }
+
+    @Override
+    public ChatExport parse(RawChatFile file, ChatMessageHandler handler) throws ChatExportParseException {
+        log.info("Streaming parsing file: {}", file.fileName());
+
+        ChatExport header = new ChatExport();
+        long offset = -1;
+        try (JsonParser parser = JsonSources.open(jsonFactory, file)) {
+            try {
+                parseRoot(parser, header, handler);
+            } finally {
+                JsonLocation location = parser.currentLocation();
+                offset = location.getByteOffset() >= 0 ? location.getByteOffset() : location.getCharOffset();
+            }
+            log.info("Streaming parsing completed: {}", file.fileName());
+            return header;
+        } catch (ChatExportParseException e) {
+            throw e;
+        } catch (JsonEOFException e) {
+            // Обработчик уже получил сообщения до места обрыва - сообщаем об обрыве вместе с заголовком.
+            log.error("Truncated JSON at offset {}: {}", offset, e.getOriginalMessage());
+            throw new TruncatedChatExportException(
+                    "JSON is truncated at offset " + offset + ": " + e.getOriginalMessage(), e, header, offset);
+        } catch (Exception e) {
+            log.error("Parse error: {}", e.getMessage());
+            throw new ChatExportParseException("Failed to parse JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private void parseRoot(JsonParser parser, ChatExport header, ChatMessageHandler handler)
+            throws IOException, ChatExportParseException {
+        JsonToken root = parser.nextToken();
+        if (root == null) {
+            throw new ChatExportParseException("JSON content is blank");
+        }
+        if (root != JsonToken.START_OBJECT) {
+            throw new ChatExportParseException("Root JSON value must be an object");
+        }
+
+        parseChat(parser, header, new MessageEvent(), handler, true);
+    }
+
+    /**
+     * Разобрать объект чата (корень экспорта одного чата или элемент chats.list полного экспорта).
+     * Парсер стоит на START_OBJECT, после разбора - на END_OBJECT. Поля заголовка заполняются по мере чтения.
+     */
+    private ChatExport parseChat(JsonParser parser, ChatExport header, MessageEvent event,
+                                 ChatMessageHandler handler, boolean root) throws IOException {
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name" -> header.setName(textOrNull(parser, value));
+                case "type" -> header.setType(textOrNull(parser, value));
+                case "id" -> header.setId(longOrNull(parser, value));
+                case "messages" -> parseMessages(parser, value, event, handler);
+                case "chats", "left_chats" -> {
+                    if (root) {
+                        parseChatList(parser, value, event, handler);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Разобрать список чатов полного экспорта аккаунта: {"about": ..., "list": [ {чат}, ... ]}.
+     */
+    private void parseChatList(JsonParser parser, JsonToken value, MessageEvent event, ChatMessageHandler handler)
+            throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken listValue = parser.nextToken();
+            if (!"list".equals(field) || listValue != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                handler.onChatStart();
+                handler.onChatEnd(parseChat(parser, new ChatExport(), event, handler, false));
+            }
+        }
+    }
+
+    /**
+     * Разобрать массив messages, на начале которого стоит парсер (используется и для отдельных фрагментов массива).
+     */
+    void parseMessageArray(JsonParser parser, ChatMessageHandler handler) throws IOException {
+        parseMessages(parser, parser.nextToken(), new MessageEvent(), handler);
+    }
+
+    private void parseMessages(JsonParser parser, JsonToken value, MessageEvent event, ChatMessageHandler handler)
+            throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                // null или не объект - пропускаем, как и при разборе в ChatExport.
+                parser.skipChildren();
+                continue;
+            }
+            event.reset();
+            parseMessage(parser, event);
+            handler.onMessage(event);
+        }
+    }
+
+    private void parseMessage(JsonParser parser, MessageEvent event) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> event.setId(idOrDefault(parser, value));
+                // date_unixtime точнее (UTC); date учитывается, только если date_unixtime нет.
+                case "date" -> {
+                    if (value == JsonToken.VALUE_STRING && event.date() == MessageEvent.NO_DATE) {
+                        event.setDate(MessageDates.localDateTime(
+                                parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                    }
+                }
+                case "date_unixtime" -> {
+                    long date = unixtimeOrDefault(parser, value);
+                    if (date != MessageEvent.NO_DATE) {
+                        event.setDate(date);
+                    }
+                }
+                case "from" -> event.setFrom(pooledTextOrNull(parser, value, event.strings()));
+                case "from_id" -> event.setFromId(pooledTextOrNull(parser, value, event.strings()));
+                case "reply_to_message_id" -> event.setReplyToId(idOrDefault(parser, value));
+                case "text_entities" -> parseTextEntities(parser, value, event);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseTextEntities(JsonParser parser, JsonToken value, MessageEvent event) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String type = null;
+            String text = null;
+            long userId = MessageEvent.NO_ID;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                switch (field) {
+                    case "type" -> type = pooledTextOrNull(parser, fieldValue, event.strings());
+                    case "text" -> text = textOrNull(parser, fieldValue);
+                    case "user_id" -> userId = idOrDefault(parser, fieldValue);
+                    default -> parser.skipChildren();
+                }
+            }
+            event.addEntity(type, text, userId);
+        }
+    }
+
+    private static long idOrDefault(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        parser.skipChildren();
+        return MessageEvent.NO_ID;
+    }
+
+    private static long unixtimeOrDefault(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return MessageDates.unixtime(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        parser.skipChildren();
+        return MessageEvent.NO_DATE;
+    }
+
+    private static Long longOrNull(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            return Long.valueOf(parser.getText().trim());
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    /**
+     * Как {@link #textOrNull}, но строковые значения берутся из кэша: повторы не создают новых строк.
+     */
+    private static String pooledTextOrNull(JsonParser parser, JsonToken value, StringPool strings)
+            throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return strings.text(parser);
+        }
+        return textOrNull(parser, value);
+    }
+
+    private static String textOrNull(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
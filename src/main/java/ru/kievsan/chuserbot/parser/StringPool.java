@@ -0,0 +1,89 @@
+package ru.kievsan.chuserbot.parser;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Ограниченный кэш канонических строк для повторяющихся значений (автор, from_id, тип сущности).
+ * Ключ - символы текущего токена в буфере парсера ({@link JsonParser#getTextCharacters()}),
+ * поэтому при попадании новая строка не создаётся. Таблица прямого отображения фиксированного размера:
+ * при коллизии старое значение вытесняется, объём памяти не растёт с размером файла.
+ * Экземпляр не потокобезопасен - по одному на проход парсера.
+ */
+final class StringPool {
+
+    /**
+     * Строки длиннее не кэшируются: длинные значения редко повторяются, а сравнение дороже.
+     */
+    static final int MAX_LENGTH = 64;
+
+    private static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    private final String[] table;
+    private final int mask;
+
+    StringPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity число слотов (округляется вверх до степени двойки).
+     */
+    StringPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Текст текущего строкового токена парсера в виде канонической строки.
+     */
+    String text(JsonParser parser) throws IOException {
+        int length = parser.getTextLength();
+        if (length > MAX_LENGTH) {
+            return parser.getText();
+        }
+        return intern(parser.getTextCharacters(), parser.getTextOffset(), length);
+    }
+
+    /**
+     * Каноническая строка для символов chars[offset, offset + length).
+     */
+    String intern(char[] chars, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        String cached = table[slot];
+        if (cached != null && equals(cached, chars, offset, length)) {
+            return cached;
+        }
+        String value = new String(chars, offset, length);
+        table[slot] = value;
+        return value;
+    }
+
+    private static boolean equals(String cached, char[] chars, int offset, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,13 +1,36 @@
 package ru.kievsan.chuserbot.tg;
 
 import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzer;
+import ru.kievsan.chuserbot.analytics.DistinctCountSink;
+import ru.kievsan.chuserbot.analytics.MultiChatAnalysisSink;
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.ActivityIndex;
 import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
 import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.MemberIndex;
+import ru.kievsan.chuserbot.domain.MemberStats;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult.ChatAnalysis;
 import ru.kievsan.chuserbot.domain.RawChatFile;
+import ru.kievsan.chuserbot.domain.ReportCsvExportResult;
+import ru.kievsan.chuserbot.domain.ReportExcelExportResult;
 import ru.kievsan.chuserbot.domain.ReportExportResult;
+import ru.kievsan.chuserbot.domain.ReportTextExportResult;
+import ru.kievsan.chuserbot.domain.TextIndex;
+import ru.kievsan.chuserbot.domain.TextSearchResult;
+import ru.kievsan.chuserbot.domain.TopSelector;
+import ru.kievsan.chuserbot.export.DelimitedReportRenderer;
+import ru.kievsan.chuserbot.export.ReportFormat;
 import ru.kievsan.chuserbot.export.ReportRenderer;
 import ru.kievsan.chuserbot.parser.Parser;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
 /**
  * Сервис обработки файла экспорта чата
  * ( парсер + анализатор + рендерер )
@@ -15,47 +38,436 @@ import ru.kievsan.chuserbot.parser.Parser;
  */
 public class ChatProcService {
 
+    /**
+     * Режим выполнения парсинга и анализа.
+     */
+    public enum ProcMode {
+        /**
+         * Эталонный режим: парсинг в ChatExport, затем анализ полного списка сообщений.
+         */
+        REFERENCE,
+        /**
+         * Совмещённый режим: парсер передаёт сообщения прямо в инкрементальный анализатор за один проход,
+         * без промежуточных ChatExport.Message.
+         */
+        FUSED,
+        /**
+         * Параллельный режим: фрагменты массива messages разбираются и анализируются на нескольких ядрах,
+         * частичные результаты объединяются в порядке следования фрагментов.
+         */
+        PARALLEL
+    }
+
     private final Parser parser;
     private final ChatMessageAnalyzer analyzer;
     private final ReportRenderer renderer;
+    private final ProcMode mode;
 
     public ChatProcService(
             Parser parser,
             ChatMessageAnalyzer analyzer,
             ReportRenderer renderer)
+    {
+        this(parser, analyzer, renderer, ProcMode.REFERENCE);
+    }
+
+    public ChatProcService(
+            Parser parser,
+            ChatMessageAnalyzer analyzer,
+            ReportRenderer renderer,
+            ProcMode mode)
     {
         this.parser = parser;
         this.analyzer = analyzer;
         this.renderer = renderer;
+        this.mode = mode;
     }
 
     /**
      * Обработать один файл экспорта чата: распарсить, проанализировать, отформатировать результат.
+     * Для полного экспорта аккаунта с несколькими чатами формируется общий отчёт со сводкой по чатам.
+     * Если файл оборван, отчёт строится по прочитанной части и содержит предупреждение.
      *
      * @param file файл экспорта чата.
      * @return результат обработки в формате текста или Excel.
      * @throws ChatProcessingException если обработка не удалась.
      */
     public ReportExportResult process(RawChatFile file) throws ChatProcessingException {
+        return process(file, analysisResult -> {
+        });
+    }
+
+    /**
+     * Обработать файл как {@link #process(RawChatFile)} и передать результат анализа получателю до форматирования
+     * (например, чтобы сохранить его для запросов /active без повторного разбора).
+     *
+     * @param file       файл экспорта чата.
+     * @param onAnalyzed получатель результата анализа (в том числе частичного для оборванного файла).
+     * @return результат обработки в формате текста или Excel.
+     * @throws ChatProcessingException если обработка не удалась.
+     */
+    public ReportExportResult process(RawChatFile file, Consumer<MultiChatAnalysisResult> onAnalyzed)
+            throws ChatProcessingException {
+        return process(file, onAnalyzed, ReportFormat.DEFAULT);
+    }
+
+    /**
+     * Обработать файл как {@link #process(RawChatFile, Consumer)} с отчётом в выбранном формате файла.
+     *
+     * @param file       файл экспорта чата.
+     * @param onAnalyzed получатель результата анализа.
+     * @param format     формат файла отчёта (см. {@link #render(MultiChatAnalysisResult, String, ReportFormat)}).
+     * @return результат обработки в формате текста или файла.
+     * @throws ChatProcessingException если обработка не удалась.
+     */
+    public ReportExportResult process(RawChatFile file, Consumer<MultiChatAnalysisResult> onAnalyzed,
+                                      ReportFormat format) throws ChatProcessingException {
+        return process(file, onAnalyzed, format, false);
+    }
+
+    /**
+     * Обработать файл как {@link #process(RawChatFile, Consumer, ReportFormat)}, при textIndex - с индексом слов
+     * для /search (см. {@link #analyzeChats(RawChatFile, boolean)}).
+     */
+    public ReportExportResult process(RawChatFile file, Consumer<MultiChatAnalysisResult> onAnalyzed,
+                                      ReportFormat format, boolean textIndex) throws ChatProcessingException {
+        // 1-2. Парсим и анализируем (по одному из режимов).
+        MultiChatAnalysisResult analysisResult;
+        String warning = null;
+        try {
+            analysisResult = analyzeChats(file, textIndex);
+        } catch (TruncatedExportException e) {
+            analysisResult = e.partialResult();
+            warning = "Внимание: файл оборван на позиции " + e.offset()
+                    + ", отчёт построен по прочитанной части.";
+        }
+        onAnalyzed.accept(analysisResult);
+
+        // 3. Форматируем результат (текст или Excel).
+        ReportExportResult result = render(analysisResult, file.fileName(), format);
+        return warning == null ? result : withWarning(result, warning);
+    }
+
+    /**
+     * Приближённо подсчитать уникальных участников и упоминания файла (режим /count).
+     * Сообщения потоком идут в {@link DistinctCountSink} (по обработчику на фрагмент файла, затем объединение),
+     * списки не строятся - память анализа постоянна. Если файл оборван, оценка строится по прочитанной части.
+     *
+     * @param file файл экспорта чата.
+     * @return текстовый результат с оценками и погрешностью.
+     * @throws ChatProcessingException если обработка не удалась.
+     */
+    public ReportExportResult count(RawChatFile file) throws ChatProcessingException {
+        List<DistinctCountSink> created = new ArrayList<>();
+        DistinctCountSink total;
+        String warning = null;
+        try {
+            List<DistinctCountSink> sinks =
+                    parser.parseChunks(file, () -> track(created, new DistinctCountSink())).handlers();
+            total = sinks.getFirst();
+            for (int i = 1; i < sinks.size(); i++) {
+                total.merge(sinks.get(i));
+            }
+        } catch (Parser.TruncatedChatExportException e) {
+            if (created.size() != 1) {
+                throw new ChatProcessingException("Failed to parse chat export", e);
+            }
+            total = created.getFirst();
+            warning = "Внимание: файл оборван на позиции " + e.offset()
+                    + ", оценка построена по прочитанной части.";
+        } catch (Parser.ChatExportParseException e) {
+            throw new ChatProcessingException("Failed to parse chat export", e);
+        }
+
+        try {
+            ReportExportResult result = renderer.renderCount(total.result(), file.fileName());
+            return warning == null ? result : withWarning(result, warning);
+        } catch (ReportRenderer.ReportRenderException e) {
+            throw new ChatProcessingException("Failed to render report", e);
+        }
+    }
+
+    /**
+     * Отформатировать готовый результат анализа: сводный отчёт для нескольких чатов, обычный - для одного.
+     *
+     * @param analysisResult результат анализа (одного файла или объединённый результат сессии).
+     * @param fileName       имя исходного файла (для имени Excel-файла).
+     * @return результат в формате текста или Excel.
+     * @throws ChatProcessingException если форматирование не удалось.
+     */
+    public ReportExportResult render(MultiChatAnalysisResult analysisResult, String fileName)
+            throws ChatProcessingException {
+        return render(analysisResult, fileName, ReportFormat.DEFAULT);
+    }
+
+    /**
+     * Отформатировать готовый результат анализа в выбранном формате файла. Если сущностей не меньше
+     * {@link BotConfig#CSV_THRESHOLD}, вместо Excel пишется CSV в gzip (с предупреждением).
+     *
+     * @param analysisResult результат анализа.
+     * @param fileName       имя исходного файла (для имени файла отчёта).
+     * @param format         формат файла отчёта.
+     * @return результат в формате текста или файла.
+     * @throws ChatProcessingException если форматирование не удалось.
+     */
+    public ReportExportResult render(MultiChatAnalysisResult analysisResult, String fileName, ReportFormat format)
+            throws ChatProcessingException {
+        String warning = null;
+        if (format.type() == ReportFormat.Type.XLSX
+                && analysisResult.total().getTotalCount() >= BotConfig.CSV_THRESHOLD) {
+            format = ReportFormat.LARGE;
+            warning = "Участников и упоминаний не меньше " + BotConfig.CSV_THRESHOLD
+                    + " - отчёт в CSV (gzip) вместо Excel, без листов «Сводка», «Топ» и «Ответы».";
+        }
+        ReportRenderer formatRenderer = format.type() == ReportFormat.Type.XLSX
+                ? renderer
+                : new DelimitedReportRenderer(renderer, format);
+        try {
+            ReportExportResult result = analysisResult.chats().size() > 1
+                    ? formatRenderer.renderChats(analysisResult, fileName)
+                    : formatRenderer.render(analysisResult.total(), fileName);
+            return warning == null ? result : withWarning(result, warning);
+        } catch (ReportRenderer.ReportRenderException e) {
+            throw new ChatProcessingException("Failed to render report", e);
+        }
+    }
+
+    /**
+     * Отчёт об участниках, писавших в дни [from, to] (UTC), по сохранённому результату анализа - без повторного
+     * разбора файла. Участники берутся из индекса активности по дням ({@link ActivityIndex}).
+     *
+     * @param analysisResult результат анализа со статистикой участников.
+     * @param from           первый день диапазона.
+     * @param to             последний день диапазона.
+     * @return результат в формате текста или Excel (по тому же порогу, что и обычный отчёт).
+     * @throws ChatProcessingException если у результата нет статистики или форматирование не удалось.
+     */
+    public ReportExportResult active(ChatMsgAnalysisResult analysisResult, LocalDate from, LocalDate to)
+            throws ChatProcessingException {
+        if (analysisResult.stats() == null) {
+            throw new ChatProcessingException("Analysis result has no member stats");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from cannot be after to");
+        }
+        MemberIndex members = analysisResult.memberIndex();
+        BitSet slots = analysisResult.stats().activity().activeSlots(from.toEpochDay(), to.toEpochDay());
+        MemberIndex active = new MemberIndex(slots.cardinality());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            active.add(members.fromId(slot), members.displayName(slot));
+        }
+
+        try {
+            return renderer.render(new ChatMsgAnalysisResult(active, Set.of()), "active_" + from + "_" + to + ".json");
+        } catch (ReportRenderer.ReportRenderException e) {
+            throw new ChatProcessingException("Failed to render report", e);
+        }
+    }
+
+    /**
+     * Поиск слова по индексу слов сохранённого результата - без повторного разбора файла.
+     *
+     * @param analysisResult результат анализа с индексом слов.
+     * @param term           одно слово (регистр не важен).
+     * @param limit          сколько участников с наибольшим числом сообщений включить в результат.
+     * @return авторы сообщений со словом и число таких сообщений.
+     * @throws ChatProcessingException если индекса слов нет (не строился, переполнился или удалён).
+     */
+    public TextSearchResult search(ChatMsgAnalysisResult analysisResult, String term, int limit)
+            throws ChatProcessingException {
+        if (!TextIndex.isTerm(term)) {
+            throw new IllegalArgumentException("term must be a single word of "
+                    + TextIndex.MIN_TERM_LENGTH + ".." + TextIndex.MAX_TERM_LENGTH + " letters or digits");
+        }
+        MemberStats stats = analysisResult.stats();
+        TextIndex text = stats != null ? stats.text() : null;
+        if (text == null || text.overflowed()) {
+            throw new ChatProcessingException("Analysis result has no text index");
+        }
+        MemberIndex members = analysisResult.memberIndex();
+        int[] counts = new int[members.size()];
+        long[] messages = new long[1];
+        int[] authors = new int[1];
+        text.search(term, (slot, count) -> {
+            counts[slot] = count;
+            messages[0] += count;
+            authors[0]++;
+        });
+        List<TextSearchResult.Hit> hits = new ArrayList<>();
+        for (int slot : TopSelector.top(counts.length, slot -> counts[slot], limit)) {
+            hits.add(new TextSearchResult.Hit(members.fromId(slot), members.displayName(slot), counts[slot]));
+        }
+        return new TextSearchResult(term, messages[0], authors[0], hits);
+    }
+
+    /**
+     * Отформатировать результат поиска слова.
+     *
+     * @throws ChatProcessingException если форматирование не удалось.
+     */
+    public ReportExportResult renderSearch(TextSearchResult searchResult, String fileName)
+            throws ChatProcessingException {
+        try {
+            return renderer.renderSearch(searchResult, fileName);
+        } catch (ReportRenderer.ReportRenderException e) {
+            throw new ChatProcessingException("Failed to render report", e);
+        }
+    }
+
+    /**
+     * Распарсить и проанализировать файл экспорта чата в текущем режиме.
+     *
+     * @param file файл экспорта чата.
+     * @return результат анализа с уникальными участниками и упоминаниями (по всем чатам файла).
+     * @throws ChatProcessingException если парсинг или анализ не удался.
+     */
+    public ChatMsgAnalysisResult analyze(RawChatFile file) throws ChatProcessingException {
+        return analyzeChats(file).total();
+    }
+
+    /**
+     * Распарсить и проанализировать файл экспорта в текущем режиме с разбивкой по чатам.
+     *
+     * @param file файл экспорта одного чата или полного экспорта аккаунта.
+     * @return результаты по чатам и их объединение.
+     * @throws TruncatedExportException если файл оборван (содержит результат по прочитанной части).
+     * @throws ChatProcessingException  если парсинг или анализ не удался.
+     */
+    public MultiChatAnalysisResult analyzeChats(RawChatFile file) throws ChatProcessingException {
+        return analyzeChats(file, false);
+    }
+
+    /**
+     * Распарсить и проанализировать файл как {@link #analyzeChats(RawChatFile)}. При textIndex потоковые режимы
+     * строят индекс слов сообщений для /search (до {@link BotConfig#SEARCH_INDEX_MAX_BYTES} на чат);
+     * индекс остаётся только у объединённого результата.
+     *
+     * @param file      файл экспорта одного чата или полного экспорта аккаунта.
+     * @param textIndex строить индекс слов.
+     * @return результаты по чатам и их объединение.
+     * @throws TruncatedExportException если файл оборван (содержит результат по прочитанной части).
+     * @throws ChatProcessingException  если парсинг или анализ не удался.
+     */
+    public MultiChatAnalysisResult analyzeChats(RawChatFile file, boolean textIndex) throws ChatProcessingException {
         try {
+            return sealStats(parseAndAnalyze(file, textIndex ? BotConfig.SEARCH_INDEX_MAX_BYTES : 0));
+        } catch (TruncatedExportException e) {
+            sealStats(e.partialResult());
+            throw e;
+        }
+    }
+
+    private MultiChatAnalysisResult parseAndAnalyze(RawChatFile file, long textIndexMaxBytes)
+            throws ChatProcessingException {
+        // Обработчики потоковых режимов: при обрыве файла их частичный результат возвращается в исключении.
+        List<MultiChatAnalysisSink> created = new ArrayList<>();
+        try {
+            if (mode == ProcMode.PARALLEL) {
+                Parser.Chunks<MultiChatAnalysisSink> chunks =
+                        parser.parseChunks(file, () -> track(created, new MultiChatAnalysisSink(textIndexMaxBytes)));
+                List<MultiChatAnalysisSink> sinks = chunks.handlers();
+                if (sinks.size() == 1) {
+                    return sinks.getFirst().result(chunks.header());
+                }
+                // Фрагменты массива messages одного чата - объединяем в порядке следования.
+                ChatMsgAnalysisResult total = null;
+                for (MultiChatAnalysisSink sink : sinks) {
+                    ChatMsgAnalysisResult chunk = sink.result(null).total();
+                    total = total == null ? chunk : total.merge(chunk);
+                }
+                return singleChat(chunks.header(), total);
+            }
+
+            if (mode == ProcMode.FUSED) {
+                MultiChatAnalysisSink sink = track(created, new MultiChatAnalysisSink(textIndexMaxBytes));
+                ChatExport header = parser.parse(file, sink);
+                return sink.result(header);
+            }
+
             // 1. Парсим JSON в доменную модель.
             ChatExport chatExport = parser.parse(file);
 
             // 2. Анализируем и извлекаем участников/упоминания.
-            ChatMsgAnalysisResult analysisResult = analyzer.analyze(chatExport);
-
-            // 3. Форматируем результат (текст или Excel).
-            return renderer.render(analysisResult, file.fileName());
+            return singleChat(chatExport, analyzer.analyze(chatExport));
 
+        } catch (Parser.TruncatedChatExportException e) {
+            if (created.size() != 1) {
+                throw new ChatProcessingException("Failed to parse chat export", e);
+            }
+            throw new TruncatedExportException(e, created.getFirst().result(e.header()));
         } catch (Parser.ChatExportParseException e) {
             throw new ChatProcessingException("Failed to parse chat export", e);
         } catch (ChatMessageAnalyzer.ChatAnalysisException e) {
             throw new ChatProcessingException("Failed to analyze chat export", e);
-        } catch (ReportRenderer.ReportRenderException e) {
-            throw new ChatProcessingException("Failed to render report", e);
         }
     }
 
+    /**
+     * Файл разобран целиком: индексы id сообщений графов ответов больше не нужны, освобождаем их,
+     * а списки индекса слов сжимаем до того, как результат попадёт в сессию или кэш. /search ищет
+     * по объединённому результату, поэтому индексы отдельных чатов полного экспорта удаляются.
+     */
+    private static MultiChatAnalysisResult sealStats(MultiChatAnalysisResult result) {
+        for (ChatAnalysis chat : result.chats()) {
+            MemberStats stats = chat.result().stats();
+            if (stats != null) {
+                if (chat.result() != result.total()) {
+                    stats.dropText();
+                }
+                seal(stats);
+            }
+        }
+        if (result.total().stats() != null) {
+            seal(result.total().stats());
+        }
+        return result;
+    }
+
+    private static void seal(MemberStats stats) {
+        stats.replies().seal();
+        if (stats.text() != null) {
+            stats.text().compact();
+        }
+    }
+
+    private static <H> H track(List<H> created, H handler) {
+        synchronized (created) {
+            created.add(handler);
+        }
+        return handler;
+    }
+
+    /**
+     * Результат с предупреждением (добавляется к уже имеющемуся).
+     */
+    private static ReportExportResult withWarning(ReportExportResult result, String warning) {
+        if (result.warning() != null) {
+            warning = result.warning() + "\n" + warning;
+        }
+        return switch (result) {
+            case ReportTextExportResult text -> new ReportTextExportResult(text.fileName(), text.text(), warning);
+            case ReportExcelExportResult excel ->
+                    new ReportExcelExportResult(excel.fileName(), excel::writeTo, excel.excelFileName(), warning);
+            case ReportCsvExportResult csv ->
+                    new ReportCsvExportResult(csv.fileName(), csv::writeTo, csv.csvFileName(), warning);
+            default -> result;
+        };
+    }
+
+    private static MultiChatAnalysisResult singleChat(ChatExport header, ChatMsgAnalysisResult result) {
+        ChatAnalysis chat = header != null
+                ? new ChatAnalysis(header.getName(), header.getType(), header.getId(), result)
+                : new ChatAnalysis(null, null, null, result);
+        return new MultiChatAnalysisResult(List.of(chat), result);
+    }
+
+    /**
+     * Режим выполнения сервиса.
+     */
+    public ProcMode mode() {
+        return mode;
+    }
+
     /**
      * Исключение при обработке файла.
      */
@@ -68,4 +480,31 @@ public class ChatProcService {
             super(message, cause);
         }
     }
+
+    /**
+     * Файл экспорта оборван; содержит результат анализа по прочитанной части.
+     */
+    public static class TruncatedExportException extends ChatProcessingException {
+        private final transient MultiChatAnalysisResult partialResult;
+
+        public TruncatedExportException(Parser.TruncatedChatExportException cause,
+                                        MultiChatAnalysisResult partialResult) {
+            super("Chat export is truncated", cause);
+            this.partialResult = partialResult;
+        }
+
+        /**
+         * Результат анализа сообщений до места обрыва.
+         */
+        public MultiChatAnalysisResult partialResult() {
+            return partialResult;
+        }
+
+        /**
+         * Позиция обрыва: байт для байтовых источников, символ для строки (-1, если неизвестна).
+         */
+        public long offset() {
+            return ((Parser.TruncatedChatExportException) getCause()).offset();
+        }
+    }
 }
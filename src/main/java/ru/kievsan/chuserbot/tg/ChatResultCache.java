@@ -0,0 +1,184 @@
+package ru.kievsan.chuserbot.tg;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.TextIndex;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Последний результат анализа каждого чата - для запросов по уже загруженному файлу (/active, /search) без
+ * повторного разбора. Память ограничена суммарным числом хранимых сущностей: при превышении удаляются результаты,
+ * к которым дольше всего не обращались; результаты без обращений дольше таймаута удаляются.
+ * Индексы слов ({@link TextIndex}) ограничены отдельным общим пределом байт: при превышении у результатов,
+ * к которым дольше всего не обращались, удаляется только индекс слов.
+ */
+@Slf4j
+public class ChatResultCache {
+
+    private final Duration idleTimeout;
+    private final long maxEntities;
+    private final long maxTextBytes;
+    private final Clock clock;
+    // Порядок доступа: первым идёт результат, к которому дольше всего не обращались.
+    private final Map<Long, Entry> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalEntities;
+    private long totalTextBytes;
+
+    public ChatResultCache() {
+        this(Duration.ofMinutes(BotConfig.RESULT_CACHE_IDLE_MINUTES), BotConfig.RESULT_CACHE_MAX_ENTITIES,
+                BotConfig.SEARCH_INDEX_BUDGET_BYTES / 2, Clock.systemUTC());
+    }
+
+    public ChatResultCache(Duration idleTimeout, long maxEntities, Clock clock) {
+        this(idleTimeout, maxEntities, BotConfig.SEARCH_INDEX_BUDGET_BYTES / 2, clock);
+    }
+
+    /**
+     * @param idleTimeout  время без обращений, после которого результат удаляется.
+     * @param maxEntities  предел хранимых сущностей по всем чатам.
+     * @param maxTextBytes предел памяти индексов слов по всем чатам.
+     * @param clock        часы (для тестов).
+     */
+    public ChatResultCache(Duration idleTimeout, long maxEntities, long maxTextBytes, Clock clock) {
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        if (maxEntities <= 0) {
+            throw new IllegalArgumentException("maxEntities must be positive");
+        }
+        if (maxTextBytes <= 0) {
+            throw new IllegalArgumentException("maxTextBytes must be positive");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.idleTimeout = idleTimeout;
+        this.maxEntities = maxEntities;
+        this.maxTextBytes = maxTextBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Сохранить результат чата вместо предыдущего. Индекс слов больше общего предела не сохраняется.
+     *
+     * @return false, если результат без статистики участников или один больше предела памяти (не сохраняется).
+     */
+    public synchronized boolean put(long chatId, ChatMsgAnalysisResult result) {
+        evictIdle();
+        remove(chatId);
+        long entities = result.getTotalCount();
+        if (result.stats() == null || entities > maxEntities) {
+            return false;
+        }
+        Iterator<Map.Entry<Long, Entry>> it = results.entrySet().iterator();
+        while (totalEntities + entities > maxEntities && it.hasNext()) {
+            Map.Entry<Long, Entry> eldest = it.next();
+            totalEntities -= eldest.getValue().entities;
+            totalTextBytes -= eldest.getValue().textBytes;
+            it.remove();
+            log.info("Cached result evicted for chat {} (memory limit)", eldest.getKey());
+        }
+        Entry entry = new Entry(result, entities, clock.instant());
+        if (entry.textBytes > maxTextBytes) {
+            entry.dropText();
+            log.info("Text index of chat {} not kept (memory limit)", chatId);
+        }
+        for (Iterator<Map.Entry<Long, Entry>> texts = results.entrySet().iterator();
+             totalTextBytes + entry.textBytes > maxTextBytes && texts.hasNext(); ) {
+            Map.Entry<Long, Entry> eldest = texts.next();
+            if (eldest.getValue().textBytes > 0) {
+                totalTextBytes -= eldest.getValue().textBytes;
+                eldest.getValue().dropText();
+                log.info("Cached text index evicted for chat {} (memory limit)", eldest.getKey());
+            }
+        }
+        results.put(chatId, entry);
+        totalEntities += entities;
+        totalTextBytes += entry.textBytes;
+        return true;
+    }
+
+    /**
+     * Последний сохранённый результат чата или null.
+     */
+    public synchronized ChatMsgAnalysisResult get(long chatId) {
+        evictIdle();
+        Entry entry = results.get(chatId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = clock.instant();
+        return entry.result;
+    }
+
+    /**
+     * Удалить результаты без обращений дольше таймаута.
+     *
+     * @return число удалённых результатов.
+     */
+    public synchronized int evictIdle() {
+        Instant deadline = clock.instant().minus(idleTimeout);
+        int evicted = 0;
+        Iterator<Map.Entry<Long, Entry>> it = results.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Entry> entry = it.next();
+            if (entry.getValue().lastAccess.isBefore(deadline)) {
+                totalEntities -= entry.getValue().entities;
+                totalTextBytes -= entry.getValue().textBytes;
+                it.remove();
+                evicted++;
+                log.info("Idle cached result evicted for chat {}", entry.getKey());
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Число сущностей, хранимых всеми результатами.
+     */
+    public synchronized long totalEntities() {
+        return totalEntities;
+    }
+
+    /**
+     * Оценка памяти индексов слов всех результатов в байтах.
+     */
+    public synchronized long totalTextBytes() {
+        return totalTextBytes;
+    }
+
+    private void remove(long chatId) {
+        Entry entry = results.remove(chatId);
+        if (entry != null) {
+            totalEntities -= entry.entities;
+            totalTextBytes -= entry.textBytes;
+        }
+    }
+
+    private static final class Entry {
+        private final ChatMsgAnalysisResult result;
+        private final long entities;
+        private long textBytes;
+        private Instant lastAccess;
+
+        Entry(ChatMsgAnalysisResult result, long entities, Instant lastAccess) {
+            this.result = result;
+            this.entities = entities;
+            this.lastAccess = lastAccess;
+            TextIndex text = result.stats().text();
+            this.textBytes = text != null ? text.estimatedBytes() : 0;
+        }
+
+        void dropText() {
+            result.stats().dropText();
+            textBytes = 0;
+        }
+    }
+}
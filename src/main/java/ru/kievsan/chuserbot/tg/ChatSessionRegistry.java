@@ -0,0 +1,235 @@
+package ru.kievsan.chuserbot.tg;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult.ChatAnalysis;
+import ru.kievsan.chuserbot.domain.TextIndex;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сессии загрузки нескольких файлов: /session открывает сессию для чата, каждый файл анализируется при получении
+ * и сразу объединяется с накопленным результатом (повторный разбор не нужен), /done выдаёт общий отчёт.
+ * Память ограничена суммарным числом хранимых сущностей (участники и упоминания по всем сессиям);
+ * сессии без активности дольше таймаута удаляются.
+ * Индекс слов ({@link TextIndex}) сессия хранит только у объединённого результата; их память ограничена
+ * отдельным общим пределом байт - при превышении индекс сессии удаляется.
+ */
+@Slf4j
+public class ChatSessionRegistry {
+
+    private final Duration idleTimeout;
+    private final long maxEntities;
+    private final long maxTextBytes;
+    private final Clock clock;
+    private final Map<Long, Session> sessions = new HashMap<>();
+    private long totalEntities;
+    private long totalTextBytes;
+
+    public ChatSessionRegistry() {
+        this(Duration.ofMinutes(BotConfig.SESSION_IDLE_MINUTES), BotConfig.SESSION_MAX_ENTITIES,
+                BotConfig.SEARCH_INDEX_BUDGET_BYTES / 2, Clock.systemUTC());
+    }
+
+    public ChatSessionRegistry(Duration idleTimeout, long maxEntities, Clock clock) {
+        this(idleTimeout, maxEntities, BotConfig.SEARCH_INDEX_BUDGET_BYTES / 2, clock);
+    }
+
+    /**
+     * @param idleTimeout  время без активности, после которого сессия удаляется.
+     * @param maxEntities  предел хранимых сущностей по всем сессиям.
+     * @param maxTextBytes предел памяти индексов слов по всем сессиям.
+     * @param clock        часы (для тестов).
+     */
+    public ChatSessionRegistry(Duration idleTimeout, long maxEntities, long maxTextBytes, Clock clock) {
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        if (maxEntities <= 0) {
+            throw new IllegalArgumentException("maxEntities must be positive");
+        }
+        if (maxTextBytes <= 0) {
+            throw new IllegalArgumentException("maxTextBytes must be positive");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.idleTimeout = idleTimeout;
+        this.maxEntities = maxEntities;
+        this.maxTextBytes = maxTextBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Открыть новую сессию для чата (предыдущая сессия чата сбрасывается).
+     */
+    public synchronized void start(long chatId) {
+        evictIdle();
+        remove(chatId);
+        sessions.put(chatId, new Session(clock.instant()));
+        log.info("Session started for chat {}", chatId);
+    }
+
+    /**
+     * Есть ли у чата открытая сессия.
+     */
+    public synchronized boolean isActive(long chatId) {
+        evictIdle();
+        return sessions.containsKey(chatId);
+    }
+
+    /**
+     * Добавить результат анализа очередного файла в сессию чата.
+     *
+     * @return число файлов в сессии после добавления.
+     * @throws IllegalStateException если у чата нет открытой сессии.
+     * @throws SessionLimitException если после добавления будет превышен предел памяти (файл не добавляется).
+     */
+    public synchronized int add(long chatId, MultiChatAnalysisResult fileResult) throws SessionLimitException {
+        evictIdle();
+        Session session = sessions.get(chatId);
+        if (session == null) {
+            throw new IllegalStateException("No active session for chat " + chatId);
+        }
+
+        ChatMsgAnalysisResult total = session.total == null ? fileResult.total() : session.total.mergeChat(fileResult.total());
+        long entities = total.getTotalCount() + session.chatEntities + chatEntities(fileResult.chats());
+        if (totalEntities - session.entities + entities > maxEntities) {
+            throw new SessionLimitException("Session memory limit exceeded: " + maxEntities + " entities");
+        }
+
+        session.chats.addAll(fileResult.chats());
+        session.chatEntities += chatEntities(fileResult.chats());
+        session.total = total;
+        updateText(chatId, session);
+        totalEntities += entities - session.entities;
+        session.entities = entities;
+        session.files++;
+        session.lastAccess = clock.instant();
+        return session.files;
+    }
+
+    /**
+     * Закрыть сессию чата и вернуть объединённый результат.
+     *
+     * @return результат по всем файлам сессии или null, если сессии нет либо в неё не добавлено ни одного файла.
+     */
+    public synchronized MultiChatAnalysisResult finish(long chatId) {
+        evictIdle();
+        Session session = remove(chatId);
+        if (session == null || session.total == null) {
+            return null;
+        }
+        log.info("Session finished for chat {}: {} files, {} chats", chatId, session.files, session.chats.size());
+        return new MultiChatAnalysisResult(session.chats, session.total);
+    }
+
+    /**
+     * Удалить сессии без активности дольше таймаута.
+     *
+     * @return число удалённых сессий.
+     */
+    public synchronized int evictIdle() {
+        Instant deadline = clock.instant().minus(idleTimeout);
+        int evicted = 0;
+        Iterator<Map.Entry<Long, Session>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Session> entry = it.next();
+            if (entry.getValue().lastAccess.isBefore(deadline)) {
+                totalEntities -= entry.getValue().entities;
+                totalTextBytes -= entry.getValue().textBytes;
+                it.remove();
+                evicted++;
+                log.info("Idle session evicted for chat {}", entry.getKey());
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Число сущностей, хранимых всеми сессиями.
+     */
+    public synchronized long totalEntities() {
+        return totalEntities;
+    }
+
+    /**
+     * Оценка памяти индексов слов всех сессий в байтах.
+     */
+    public synchronized long totalTextBytes() {
+        return totalTextBytes;
+    }
+
+    private Session remove(long chatId) {
+        Session session = sessions.remove(chatId);
+        if (session != null) {
+            totalEntities -= session.entities;
+            totalTextBytes -= session.textBytes;
+        }
+        return session;
+    }
+
+    /**
+     * Индекс слов остаётся только у объединённого результата сессии (у результатов отдельных чатов удаляется)
+     * и только в пределах общей памяти индексов.
+     */
+    private void updateText(long chatId, Session session) {
+        for (ChatAnalysis chat : session.chats) {
+            if (chat.result() != session.total && chat.result().stats() != null) {
+                chat.result().stats().dropText();
+            }
+        }
+        TextIndex text = session.total.stats() != null ? session.total.stats().text() : null;
+        long textBytes = text != null ? text.estimatedBytes() : 0;
+        if (textBytes > 0 && totalTextBytes - session.textBytes + textBytes > maxTextBytes) {
+            session.total.stats().dropText();
+            textBytes = 0;
+            log.info("Text index of session for chat {} dropped (memory limit)", chatId);
+        }
+        totalTextBytes += textBytes - session.textBytes;
+        session.textBytes = textBytes;
+    }
+
+    private static long chatEntities(List<ChatAnalysis> chats) {
+        long count = 0;
+        for (ChatAnalysis chat : chats) {
+            count += chat.result().getTotalCount();
+        }
+        return count;
+    }
+
+    /**
+     * Накопленное состояние сессии одного чата.
+     */
+    private static final class Session {
+        private final List<ChatAnalysis> chats = new ArrayList<>();
+        private ChatMsgAnalysisResult total;
+        private long chatEntities;
+        private long entities;
+        private long textBytes;
+        private int files;
+        private Instant lastAccess;
+
+        Session(Instant lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Превышен предел памяти сессий.
+     */
+    public static class SessionLimitException extends Exception {
+        public SessionLimitException(String message) {
+            super(message);
+        }
+    }
+}
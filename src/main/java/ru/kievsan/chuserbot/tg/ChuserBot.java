@@ -12,18 +12,40 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.ActivityIndex;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.HyperLogLog;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
 import ru.kievsan.chuserbot.domain.RawChatFile;
+import ru.kievsan.chuserbot.domain.ReportBody;
+import ru.kievsan.chuserbot.domain.ReportCsvExportResult;
 import ru.kievsan.chuserbot.domain.ReportExcelExportResult;
 import ru.kievsan.chuserbot.domain.ReportExportResult;
 import ru.kievsan.chuserbot.domain.ReportTextExportResult;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import ru.kievsan.chuserbot.domain.TextIndex;
+import ru.kievsan.chuserbot.domain.TextSearchResult;
+import ru.kievsan.chuserbot.export.ReportFormat;
+import ru.kievsan.chuserbot.parser.Decompression;
+import ru.kievsan.chuserbot.parser.ExportFormatSniffer;
+import ru.kievsan.chuserbot.parser.Parser;
+
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Базовый класс Telegram-бота.
@@ -33,17 +55,40 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
 
     private static final String COMMAND_START = "/start";
     private static final String COMMAND_HELP = "/help";
+    private static final String COMMAND_SESSION = "/session";
+    private static final String COMMAND_DONE = "/done";
+    private static final String COMMAND_COUNT = "/count";
+    private static final String COMMAND_ACTIVE = "/active";
+    private static final String COMMAND_SEARCH = "/search";
+    private static final String COMMAND_INDEX = "/index";
+    private static final String COMMAND_FORMAT = "/format";
+    private static final String SESSION_REPORT_FILE_NAME = "session.json";
     private static final String API_TELEGRAM_FILE_BOT_BASE_URL = "https://api.telegram.org/file/bot";
 
     private final TelegramClient tgClient;
     private final String botToken;
     private final ChatProcService procService;
+    private final ChatSessionRegistry sessions;
+    private final ChatResultCache results;
+    // Чаты, включившие режим приближённого подсчёта (/count).
+    private final Set<Long> countModeChats = ConcurrentHashMap.newKeySet();
+    // Чаты, включившие индекс слов для /search (/index): без него индекс не строится.
+    private final Set<Long> textIndexChats = ConcurrentHashMap.newKeySet();
+    // Формат файла отчёта, выбранный командой /format (нет записи - Excel).
+    private final Map<Long, ReportFormat> reportFormats = new ConcurrentHashMap<>();
 
     public ChuserBot(String botToken, ChatProcService procService) {
+        this(botToken, procService, new ChatSessionRegistry(), new ChatResultCache());
+    }
+
+    public ChuserBot(String botToken, ChatProcService procService, ChatSessionRegistry sessions,
+                     ChatResultCache results) {
         log.info("ChuserBot instance creating...");
         this.tgClient = new OkHttpTelegramClient(botToken);
         this.botToken = botToken;
         this.procService = procService;
+        this.sessions = sessions;
+        this.results = results;
         log.info("OK");
     }
 
@@ -114,7 +159,19 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
                 Hi! Я Chuser Bot. Я умею:
                 
                 - Принимаю JSON-экспорт истории чата (Telegram Desktop -> Export chat history -> JSON).
+                - Файл можно сжать: .json.gz, .zip (с result.json) или .zst - так загрузка в разы быстрее.
                 - Каждый файл обрабатывается сразу после отправки.
+                - /session - несколько файлов в один отчёт: отправьте файлы (например, разные чаты
+                  или части одного экспорта), затем /done - получите общий отчёт.
+                - /count - включить/выключить режим подсчёта для очень больших архивов: только оценка
+                  числа уникальных участников и упоминаний (без списков, с указанием погрешности).
+                - /active 2024-01-01 2024-01-31 - кто писал в эти дни (UTC) по последнему отчёту,
+                  без повторной загрузки файла; одна дата - за один день.
+                - /index - включить/выключить индекс слов для следующих файлов (нужен для /search).
+                - /search слово - кто и сколько раз писал это слово, по последнему отчёту.
+                - /format csv - отчёт файлом CSV вместо Excel (или tsv; добавьте sorted - с сортировкой,
+                  gz - сжатый; без листов сводки, топа и ответов); /format xlsx - снова Excel.
+                  Очень большие отчёты всегда идут в CSV (gzip).
                 - Извлекаю участников (авторов сообщений) и упоминания (@username).
                 - Если всего сущностей <= 50 - отправляю список прямо в чат.
                 - Если всего сущностей >= 51 - формирую и отправляю Excel-файл.
@@ -129,6 +186,13 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
         switch (command) {
             case COMMAND_START -> sendStartMsg(chatId);
             case COMMAND_HELP -> sendHelpMsg(chatId);
+            case COMMAND_SESSION -> startSession(chatId);
+            case COMMAND_DONE -> finishSession(chatId);
+            case COMMAND_COUNT -> toggleCountMode(chatId);
+            case COMMAND_INDEX -> toggleTextIndex(chatId);
+            case COMMAND_ACTIVE -> queryActive(chatId, text);
+            case COMMAND_SEARCH -> querySearch(chatId, text);
+            case COMMAND_FORMAT -> selectFormat(chatId, text);
             default -> sendText(chatId, "Неизвестная команда. Выполните '/start' или '/help'");
         }
     }
@@ -159,35 +223,37 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
             fileName = "unknown.json";
         }
 
-        if (!fileName.toLowerCase().endsWith(".json")) {
-            sendText(chatId, "Принимаются только файлы экспорта чата с расширением '.json'. " +
+        if (!Decompression.isSupportedFileName(fileName)) {
+            sendText(chatId, "Принимаются только файлы экспорта чата с расширением '.json' " +
+                    "(или сжатые: '.json.gz', '.zip', '.zst'). " +
                     "Убедитесь, что подгружаем именно такие файлы из истории чата Telegram Desktop в формате JSON!");
             return;
         }
 
         String fileId = doc.getFileId();
+        boolean spoolToDisk = doc.getFileSize() != null && doc.getFileSize() > BotConfig.SPOOL_THRESHOLD_BYTES;
+        Path spooledFile = null;
 
         try (InputStream inputStream = downloadFileByStream(fileId)) {
-            // in-memory
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            inputStream.transferTo(buffer);
-
-            // Преобразуем в JSON (UTF-8).
-            String jsonContent = buffer.toString(java.nio.charset.StandardCharsets.UTF_8);
-            RawChatFile rawFile = new RawChatFile(fileName, jsonContent);
+            RawChatFile rawFile;
+            if (spoolToDisk) {
+                // Крупный файл - во временный файл, парсер читает его через отображение в память.
+                // Начало файла проверяем до записи на диск: чужой файл не скачивается целиком.
+                spooledFile = spoolToTempFile(ExportFormatSniffer.peek(inputStream));
+                rawFile = RawChatFile.ofPath(fileName, spooledFile);
+            } else {
+                // Парсер читает UTF-8 байты прямо из потока загрузки, без копии файла в памяти.
+                rawFile = RawChatFile.ofStream(fileName, inputStream);
+            }
             sendText(chatId, "Обработка файла \"" + fileName + "\"...");
 
-            ReportExportResult result = procService.process(rawFile);
-
-            // Отправляем результат
-            switch (result) {
-                case ReportTextExportResult txtResult -> sendTextResult(chatId, tчtResult.text());
-                case ReportExcelExportResult excelResult ->
-                        sendExcelResult(chatId, excelResult.excelBytes(), excelResult.excelFileName());
-                default -> {
-                    log.error("Unknown ReportExportResult type: {}", result.getClass());
-                    sendText(chatId, "Error forming the result!");
-                }
+            if (countModeChats.contains(chatId)) {
+                sendReport(chatId, procService.count(rawFile));
+            } else if (sessions.isActive(chatId)) {
+                addToSession(chatId, fileName, rawFile);
+            } else {
+                sendReport(chatId, procService.process(rawFile, result -> results.put(chatId, result.total()),
+                        reportFormat(chatId), textIndexChats.contains(chatId)));
             }
 
             log.info("File {} processed successfully for chat {}", fileName, chatId);
@@ -197,12 +263,253 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
         } catch (IOException e) {
             log.error("IO error while downloading file for chat {}, fileId {}", chatId, fileId, e);
             sendText(chatId, "File reading error \"" + fileName + "\".");
+        } catch (Parser.UnsupportedExportFormatException e) {
+            log.warn("Rejected file {} for chat {}: {}", fileName, chatId, e.getMessage());
+            sendText(chatId, unsupportedFormatMsg(fileName));
         } catch (ChatProcService.ChatProcessingException e) {
+            if (e.getCause() instanceof Parser.UnsupportedExportFormatException) {
+                log.warn("Rejected file {} for chat {}: {}", fileName, chatId, e.getCause().getMessage());
+                sendText(chatId, unsupportedFormatMsg(fileName));
+                return;
+            }
             log.error("Failed to process file {} for chat {}", fileName, chatId, e);
             sendText(chatId, "File processing error \"" + fileName + "\".");
         } catch (Exception e) {
             log.error("Unexpected error while processing file for chat {}, fileId {}", chatId, fileId, e);
             sendText(chatId, "Unexpected error during file processing \"" + fileName + "\".");
+        } finally {
+            deleteSpooledFile(spooledFile);
+        }
+    }
+
+    private static String unsupportedFormatMsg(String fileName) {
+        return "Файл \"" + fileName + "\" не похож на JSON-экспорт чата Telegram Desktop " +
+                "(ожидаются поля name, type, id и messages).";
+    }
+
+    private void toggleCountMode(Long chatId) {
+        if (countModeChats.remove(chatId)) {
+            sendText(chatId, "Режим подсчёта выключен: файлы снова обрабатываются с полными списками.");
+            return;
+        }
+        countModeChats.add(chatId);
+        sendText(chatId, "Режим подсчёта включён: для каждого файла пришлю оценку числа уникальных участников " +
+                "и упоминаний (HyperLogLog, погрешность около ±" +
+                String.format(Locale.ROOT, "%.1f", HyperLogLog.relativeError(BotConfig.HLL_PRECISION) * 100) +
+                "%). Повторите " + COMMAND_COUNT + ", чтобы выключить.");
+    }
+
+    private void toggleTextIndex(Long chatId) {
+        if (BotConfig.SEARCH_INDEX_MAX_BYTES == 0) {
+            sendText(chatId, "Индекс слов отключён в настройках бота, " + COMMAND_SEARCH + " недоступен.");
+            return;
+        }
+        if (textIndexChats.remove(chatId)) {
+            sendText(chatId, "Индекс слов выключен: следующие файлы обрабатываются без него.");
+            return;
+        }
+        textIndexChats.add(chatId);
+        sendText(chatId, "Индекс слов включён: для следующих файлов можно будет искать слова командой " +
+                COMMAND_SEARCH + ". Повторите " + COMMAND_INDEX + ", чтобы выключить.");
+    }
+
+    /**
+     * Выбрать формат файла отчёта чата; без аргументов - показать текущий.
+     */
+    private void selectFormat(Long chatId, String text) {
+        String[] args = text.strip().split("\\s+", 2);
+        if (args.length < 2) {
+            sendText(chatId, "Формат отчёта: " + reportFormat(chatId) + ". Выбор: " + COMMAND_FORMAT +
+                    " xlsx | csv | tsv [sorted] [gz], например " + COMMAND_FORMAT + " csv sorted gz.");
+            return;
+        }
+        ReportFormat format;
+        try {
+            format = ReportFormat.parse(args[1]);
+        } catch (IllegalArgumentException e) {
+            sendText(chatId, "Не понял формат. Пример: " + COMMAND_FORMAT + " csv sorted gz " +
+                    "(sorted и gz - только для csv и tsv).");
+            return;
+        }
+        if (format.equals(ReportFormat.DEFAULT)) {
+            reportFormats.remove(chatId);
+        } else {
+            reportFormats.put(chatId, format);
+        }
+        sendText(chatId, "Формат отчёта: " + format + ".");
+    }
+
+    private ReportFormat reportFormat(Long chatId) {
+        return reportFormats.getOrDefault(chatId, ReportFormat.DEFAULT);
+    }
+
+    /**
+     * Участники, писавшие в заданные дни, по последнему результату анализа чата - без повторного разбора файла.
+     */
+    private void queryActive(Long chatId, String text) {
+        ChatMsgAnalysisResult result = results.get(chatId);
+        if (result == null) {
+            sendText(chatId, "Нет сохранённого отчёта: сначала отправьте файл экспорта " +
+                    "(или завершите сессию командой " + COMMAND_DONE + ").");
+            return;
+        }
+
+        String[] args = text.strip().split("\\s+");
+        LocalDate from;
+        LocalDate to;
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw new DateTimeParseException("Expected one or two dates", text, 0);
+            }
+            from = LocalDate.parse(args[1]);
+            to = args.length == 3 ? LocalDate.parse(args[2]) : from;
+        } catch (DateTimeParseException e) {
+            sendText(chatId, "Укажите даты в формате ГГГГ-ММ-ДД: " + COMMAND_ACTIVE + " 2024-01-01 2024-01-31.");
+            return;
+        }
+        if (from.isAfter(to)) {
+            sendText(chatId, "Начальная дата позже конечной.");
+            return;
+        }
+
+        ActivityIndex activity = result.stats().activity();
+        long messages = activity.messageCount(from.toEpochDay(), to.toEpochDay());
+        String summary = "С " + from + " по " + to + " (UTC): сообщений " + messages + ".";
+        if (messages == 0 && activity.dayCount() > 0) {
+            summary += " Сообщения в отчёте - с " + LocalDate.ofEpochDay(activity.firstEpochDay())
+                    + " по " + LocalDate.ofEpochDay(activity.lastEpochDay()) + ".";
+        }
+        sendText(chatId, summary);
+        try {
+            sendReport(chatId, procService.active(result, from, to));
+        } catch (ChatProcService.ChatProcessingException e) {
+            log.error("Failed to render active members report for chat {}", chatId, e);
+            sendText(chatId, "Error forming the result!");
+        }
+    }
+
+    /**
+     * Авторы сообщений со словом по индексу слов последнего результата анализа чата - без повторного разбора файла.
+     */
+    private void querySearch(Long chatId, String text) {
+        ChatMsgAnalysisResult result = results.get(chatId);
+        if (result == null) {
+            sendText(chatId, "Нет сохранённого отчёта: сначала отправьте файл экспорта " +
+                    "(или завершите сессию командой " + COMMAND_DONE + ").");
+            return;
+        }
+        String[] args = text.strip().split("\\s+");
+        if (args.length != 2 || !TextIndex.isTerm(args[1])) {
+            sendText(chatId, "Укажите одно слово (буквы и цифры, от " + TextIndex.MIN_TERM_LENGTH + " до "
+                    + TextIndex.MAX_TERM_LENGTH + " символов): " + COMMAND_SEARCH + " привет.");
+            return;
+        }
+        TextIndex index = result.stats().text();
+        if (index == null || index.overflowed()) {
+            sendText(chatId, "Для последнего отчёта нет индекса слов (не включён командой " + COMMAND_INDEX +
+                    ", слишком большой или удалён по памяти). Включите " + COMMAND_INDEX + " и отправьте файл заново.");
+            return;
+        }
+
+        try {
+            TextSearchResult found = procService.search(result, args[1], BotConfig.TOP_N);
+            sendReport(chatId, procService.renderSearch(found, "search_" + args[1] + ".json"));
+        } catch (ChatProcService.ChatProcessingException e) {
+            log.error("Failed to search text index for chat {}", chatId, e);
+            sendText(chatId, "Error forming the result!");
+        }
+    }
+
+    private void startSession(Long chatId) {
+        sessions.start(chatId);
+        sendText(chatId, "Сессия начата. Отправляйте файлы экспорта - каждый будет проанализирован сразу. " +
+                "Когда закончите, выполните " + COMMAND_DONE + " - пришлю общий отчёт.");
+    }
+
+    private void finishSession(Long chatId) {
+        MultiChatAnalysisResult result = sessions.finish(chatId);
+        if (result == null) {
+            sendText(chatId, "Нет активной сессии с файлами. Начните её командой " + COMMAND_SESSION + ".");
+            return;
+        }
+        results.put(chatId, result.total());
+        try {
+            sendReport(chatId, procService.render(result, SESSION_REPORT_FILE_NAME, reportFormat(chatId)));
+        } catch (ChatProcService.ChatProcessingException e) {
+            log.error("Failed to render session report for chat {}", chatId, e);
+            sendText(chatId, "Error forming the result!");
+        }
+    }
+
+    /**
+     * Проанализировать файл и объединить результат с сессией; отчёт - по команде /done.
+     */
+    private void addToSession(Long chatId, String fileName, RawChatFile rawFile)
+            throws ChatProcService.ChatProcessingException {
+        MultiChatAnalysisResult fileResult;
+        try {
+            fileResult = procService.analyzeChats(rawFile, textIndexChats.contains(chatId));
+        } catch (ChatProcService.TruncatedExportException e) {
+            sendText(chatId, "Внимание: файл \"" + fileName + "\" оборван, в сессию добавлена прочитанная часть.");
+            fileResult = e.partialResult();
+        }
+
+        try {
+            int files = sessions.add(chatId, fileResult);
+            sendText(chatId, "Файл \"" + fileName + "\" добавлен в сессию (файлов: " + files + "). " +
+                    "Отправьте ещё файлы или выполните " + COMMAND_DONE + ".");
+        } catch (ChatSessionRegistry.SessionLimitException e) {
+            log.warn("Session limit for chat {}: {}", chatId, e.getMessage());
+            sendText(chatId, "Файл \"" + fileName + "\" не добавлен: превышен лимит памяти сессий. " +
+                    "Выполните " + COMMAND_DONE + ", чтобы получить отчёт по уже добавленным файлам.");
+        } catch (IllegalStateException e) {
+            // Сессия истекла во время обработки файла.
+            sendText(chatId, "Сессия истекла. Начните новую командой " + COMMAND_SESSION + ".");
+        }
+    }
+
+    private void sendReport(Long chatId, ReportExportResult result) {
+        if (result.warning() != null) {
+            sendText(chatId, result.warning());
+        }
+
+        // Отправляем результат
+        switch (result) {
+            case ReportTextExportResult txtResult -> sendTextResult(chatId, txtResult.text());
+            case ReportExcelExportResult excelResult ->
+                    sendFileResult(chatId, excelResult::writeTo, excelResult.excelFileName(), "chuserbot_report.xlsx");
+            case ReportCsvExportResult csvResult ->
+                    sendFileResult(chatId, csvResult::writeTo, csvResult.csvFileName(), "chuserbot_report.csv");
+            default -> {
+                log.error("Unknown ReportExportResult type: {}", result.getClass());
+                sendText(chatId, "Error forming the result!");
+            }
+        }
+    }
+
+    private Path spoolToTempFile(InputStream inputStream) throws IOException {
+        Path tempFile = Files.createTempFile("chuserbot-", ".tmp");
+        try {
+            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Download spooled to temp file {} ({} bytes)", tempFile, Files.size(tempFile));
+            return tempFile;
+        } catch (IOException e) {
+            deleteSpooledFile(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Удалить временный файл сразу после обработки: данные пользователей на сервере не сохраняются.
+     */
+    private void deleteSpooledFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.error("Failed to delete temp file {}", tempFile, e);
         }
     }
 
@@ -228,19 +535,25 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
         }
     }
 
-    private void sendExcelResult(Long chatId, byte[] excelBytes, String fileName) {
-        if (excelBytes == null || excelBytes.length == 0) {
-            log.error("Excel bytes is null or blank for chatId {}", chatId);
-            sendText(chatId, "Ошибка: Excel-файл пуст.");
-            return;
-        }
-
+    /**
+     * Отправить отчёт файлом (Excel или CSV): содержимое пишется во временный файл, а он загружается в Telegram
+     * с диска - без копий файла в памяти (загрузка из InputStream клиент Telegram читает в массив целиком).
+     */
+    private void sendFileResult(Long chatId, ReportBody body, String fileName, String defaultFileName) {
+        String reportFileName = fileName != null && !fileName.isBlank() ? fileName : defaultFileName;
+        Path tempFile = null;
         try {
-            String excelFileName = fileName != null && !fileName.isBlank()
-                    ? fileName
-                    : "chuserbot_report.xlsx";
+            tempFile = Files.createTempFile("chuserbot-report-", ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                body.writeTo(out);
+            }
+            if (Files.size(tempFile) == 0) {
+                log.error("Report file is empty for chatId {}", chatId);
+                sendText(chatId, "Ошибка: файл отчёта пуст.");
+                return;
+            }
 
-            InputFile inputFile = new InputFile(new ByteArrayInputStream(excelBytes), excelFileName);
+            InputFile inputFile = new InputFile(tempFile.toFile(), reportFileName);
             SendDocument sendDocument = SendDocument.builder()
                     .chatId(String.valueOf(chatId))
                     .document(inputFile)
@@ -248,11 +561,16 @@ public class ChuserBot implements LongPollingSingleThreadUpdateConsumer {
                     .build();
 
             tgClient.execute(sendDocument);
-            log.info("Excel file sent to chat {}", chatId);
+            log.info("Report file {} sent to chat {}", reportFileName, chatId);
 
+        } catch (IOException e) {
+            log.error("Failed to write report file for chat {}", chatId, e);
+            sendText(chatId, "Error forming the result!");
         } catch (TelegramApiException e) {
-            log.error("Failed to send Excel file to chat {}", chatId, e);
-            sendText(chatId, "Не удалось отправить Excel-файл.");
+            log.error("Failed to send report file to chat {}", chatId, e);
+            sendText(chatId, "Не удалось отправить файл отчёта.");
+        } finally {
+            deleteSpooledFile(tempFile);
         }
     }
 
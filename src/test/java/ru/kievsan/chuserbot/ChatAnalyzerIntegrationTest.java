@@ -4,10 +4,18 @@ import org.junit.jupiter.api.Test;
 import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzerImpl;
 import ru.kievsan.chuserbot.domain.*;
 import ru.kievsan.chuserbot.domain.Member;
+import ru.kievsan.chuserbot.export.ReportRendererImpl;
 import ru.kievsan.chuserbot.parser.ParserImpl;
+import ru.kievsan.chuserbot.parser.StreamingParserImpl;
+import ru.kievsan.chuserbot.tg.ChatProcService;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,7 +41,7 @@ class ChatAnalyzerIntegrationTest {
         assertTrue(result.members().contains(new Member("user123456789", "Сергей Киевский")));
         assertTrue(result.members().contains(new Member("user123123123", "Sergey Kievskiy")));
 
-        // должны быть 2 уникальных упоминания (@vspochernin и @vspocherninwork).
+        // должны быть 2 уникальных упоминания (@skievskiy и @skievskiywork).
         assertEquals(2, result.getMentionsCount());
         assertTrue(result.mentions().contains(new Mention("@skievskiy")));
         assertTrue(result.mentions().contains(new Mention("@skievskiywork")));
@@ -41,4 +49,154 @@ class ChatAnalyzerIntegrationTest {
         // всего
         assertEquals(4, result.getTotalCount());
     }
+
+    @Test
+    void fusedModeEqualsReferenceModeOnRealChat() throws Exception {
+        RawChatFile file = new RawChatFile("chat1.json", readResourceAsString("chat1.json"));
+
+        assertSameAnalysis(analyzeReference(file), analyzeFused(file));
+    }
+
+    @Test
+    void fusedModeEqualsReferenceModeOnGeneratedChat() throws Exception {
+        RawChatFile file = new RawChatFile("generated.json", generateChatJson(5_000));
+
+        ChatMsgAnalysisResult reference = analyzeReference(file);
+        ChatMsgAnalysisResult fused = analyzeFused(file);
+
+        assertTrue(reference.getMembersCount() > 0);
+        assertTrue(reference.getMentionsCount() > 0);
+        assertSameAnalysis(reference, fused);
+    }
+
+    @Test
+    void analyzeFullAccountExportPerChat() throws Exception {
+        RawChatFile file = new RawChatFile("account_export.json", readResourceAsString("account_export.json"));
+
+        for (ChatProcService.ProcMode mode : List.of(ChatProcService.ProcMode.FUSED, ChatProcService.ProcMode.PARALLEL)) {
+            MultiChatAnalysisResult result = new ChatProcService(new StreamingParserImpl(),
+                    new ChatMessageAnalyzerImpl(), new ReportRendererImpl(), mode).analyzeChats(file);
+
+            assertEquals(3, result.chats().size());
+            MultiChatAnalysisResult.ChatAnalysis first = result.chats().getFirst();
+            assertEquals("Sergey", first.name());
+            assertEquals("personal_chat", first.type());
+            assertEquals(123123123L, first.id());
+            assertEquals(2, first.result().getMembersCount());
+            assertEquals(1, first.result().getMentionsCount());
+
+            MultiChatAnalysisResult.ChatAnalysis group = result.chats().get(1);
+            assertEquals("Учебная группа", group.name());
+            assertEquals(2, group.result().getMembersCount());
+            assertEquals(2, group.result().getMentionsCount());
+
+            assertEquals("Старый канал", result.chats().get(2).name());
+
+            // Объединение: user123456789 встречается в двух чатах, имя - из первого.
+            assertEquals(4, result.total().getMembersCount());
+            assertEquals(3, result.total().getMentionsCount());
+            assertEquals("Сергей Киевский", displayNames(result.total()).get("user123456789"));
+        }
+    }
+
+    @Test
+    void processTruncatedExportWithWarning() throws Exception {
+        String json = readResourceAsString("chat1.json");
+        RawChatFile file = new RawChatFile("chat1.json", json.substring(0, json.length() * 2 / 3));
+        ChatProcService service = new ChatProcService(new StreamingParserImpl(),
+                new ChatMessageAnalyzerImpl(), new ReportRendererImpl(), ChatProcService.ProcMode.FUSED);
+
+        ReportExportResult result = service.process(file);
+
+        assertInstanceOf(ReportTextExportResult.class, result);
+        assertNotNull(result.warning());
+        assertTrue(result.warning().contains("оборван"));
+        ChatMsgAnalysisResult full = analyzeFused(new RawChatFile("chat1.json", json));
+        ChatMsgAnalysisResult partial = assertThrows(ChatProcService.TruncatedExportException.class,
+                () -> service.analyze(file)).partialResult().total();
+        assertTrue(partial.getMembersCount() > 0);
+        assertTrue(full.members().containsAll(partial.members()));
+    }
+
+    @Test
+    void queryActiveMembersFromKeptResult() throws Exception {
+        RawChatFile file = new RawChatFile("chat1.json", readResourceAsString("chat1.json"));
+        ChatProcService service = new ChatProcService(new StreamingParserImpl(),
+                new ChatMessageAnalyzerImpl(), new ReportRendererImpl(), ChatProcService.ProcMode.FUSED);
+        List<MultiChatAnalysisResult> kept = new ArrayList<>();
+
+        service.process(file, kept::add);
+        ChatMsgAnalysisResult result = kept.getFirst().total();
+        String sameDay = ((ReportTextExportResult) service.active(
+                result, LocalDate.of(2026, 2, 25), LocalDate.of(2026, 2, 25))).text();
+        String nextDays = ((ReportTextExportResult) service.active(
+                result, LocalDate.of(2026, 2, 26), LocalDate.of(2026, 3, 1))).text();
+
+        assertEquals(5, result.stats().activity().messageCount(
+                LocalDate.of(2026, 2, 25).toEpochDay(), LocalDate.of(2026, 2, 25).toEpochDay()));
+        assertTrue(sameDay.contains("Количество участников: 2"), sameDay);
+        assertTrue(sameDay.contains("Sergey Kievskiy"), sameDay);
+        assertTrue(nextDays.contains("Количество участников: 0"), nextDays);
+    }
+
+    @Test
+    void searchWordFromKeptResult() throws Exception {
+        RawChatFile file = new RawChatFile("chat1.json", readResourceAsString("chat1.json"));
+        ChatProcService service = new ChatProcService(new StreamingParserImpl(),
+                new ChatMessageAnalyzerImpl(), new ReportRendererImpl(), ChatProcService.ProcMode.FUSED);
+
+        assertNull(service.analyze(file).stats().text());
+        ChatMsgAnalysisResult result = service.analyzeChats(file, true).total();
+        TextSearchResult found = service.search(result, "Message", 1);
+        String text = ((ReportTextExportResult) service.renderSearch(found, "search.json")).text();
+
+        assertEquals(2, found.authorCount());
+        assertEquals(1, found.topAuthors().size());
+        assertEquals("Сергей Киевский", found.topAuthors().getFirst().displayName());
+        assertTrue(found.messages() > found.topAuthors().getFirst().messages());
+        assertTrue(text.startsWith("Слово «Message»: " + found.messages() + " сообщ., участников: 2\n1. "), text);
+        assertEquals(0, service.search(result, "отсутствует", 5).authorCount());
+        assertThrows(IllegalArgumentException.class, () -> service.search(result, "два слова", 5));
+    }
+
+    private ChatMsgAnalysisResult analyzeReference(RawChatFile file) throws Exception {
+        return new ChatProcService(new ParserImpl(), new ChatMessageAnalyzerImpl(), new ReportRendererImpl(),
+                ChatProcService.ProcMode.REFERENCE).analyze(file);
+    }
+
+    private ChatMsgAnalysisResult analyzeFused(RawChatFile file) throws Exception {
+        return new ChatProcService(new StreamingParserImpl(), new ChatMessageAnalyzerImpl(), new ReportRendererImpl(),
+                ChatProcService.ProcMode.FUSED).analyze(file);
+    }
+
+    private void assertSameAnalysis(ChatMsgAnalysisResult expected, ChatMsgAnalysisResult actual) {
+        assertEquals(displayNames(expected), displayNames(actual));
+        assertEquals(expected.mentions(), actual.mentions());
+    }
+
+    private Map<String, String> displayNames(ChatMsgAnalysisResult result) {
+        return result.members().stream().collect(Collectors.toMap(Member::fromId, Member::displayName));
+    }
+
+    static String generateChatJson(int messagesCount) {
+        StringBuilder sb = new StringBuilder("{\"name\":\"Generated\",\"type\":\"private_group\",\"id\":1,\"messages\":[");
+        for (int i = 0; i < messagesCount; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            int author = (i * 31) % 97;
+            String name = author % 13 == 0 ? "Deleted Account" : "Имя " + author + (i % 7 == 0 ? " (новое)" : "");
+            sb.append("{\"id\":").append(i)
+                    .append(",\"type\":\"message\",\"date\":\"2026-02-25T08:20:58\"")
+                    .append(",\"from\":\"").append(name).append('"')
+                    .append(",\"from_id\":\"user").append(author).append('"')
+                    .append(",\"text\":\"message ").append(i).append('"')
+                    .append(",\"text_entities\":[{\"type\":\"plain\",\"text\":\"message ").append(i).append("\"}");
+            if (i % 5 == 0) {
+                sb.append(",{\"type\":\"mention\",\"text\":\" @user").append(i % 41).append(" \"}");
+            }
+            sb.append("]}");
+        }
+        return sb.append("]}").toString();
+    }
 }
@@ -6,8 +6,12 @@ import ru.kievsan.chuserbot.domain.RawChatFile;
 import ru.kievsan.chuserbot.parser.Parser.ChatExportParseException;
 import ru.kievsan.chuserbot.parser.ParserImpl;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -145,4 +149,95 @@ class ChatExportParserImplTest {
         assertTrue(message.getTextEntities().isEmpty());
         assertEquals("", message.getText());
     }
+
+    @Test
+    void parseFromInputStream() throws Exception {
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream("chat1.json")) {
+            assertNotNull(stream);
+            ChatExport result = new ParserImpl().parse(RawChatFile.ofStream("chat1.json", stream));
+
+            assertEquals("Sergey", result.getName());
+            assertEquals(5, result.getMessages().size());
+            assertEquals("Сергей Киевский", result.getMessages().getFirst().getFrom());
+        }
+    }
+
+    @Test
+    void parseFromChannelAndPath() throws Exception {
+        byte[] bytes = readResourceAsString("chat1.json").getBytes(StandardCharsets.UTF_8);
+        ParserImpl parser = new ParserImpl();
+
+        ChatExport fromChannel = parser.parse(
+                RawChatFile.ofChannel("chat1.json", Channels.newChannel(new ByteArrayInputStream(bytes))));
+
+        Path path = Files.createTempFile("chat1-", ".json");
+        try {
+            Files.write(path, bytes);
+            ChatExport fromPath = parser.parse(RawChatFile.ofPath("chat1.json", path));
+
+            assertEquals(fromChannel.getMessages(), fromPath.getMessages());
+            assertEquals(5, fromPath.getMessages().size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void throwExceptionOnEmptyStream() {
+        RawChatFile file = RawChatFile.ofStream("empty.json", new ByteArrayInputStream(new byte[0]));
+        ParserImpl parser = new ParserImpl();
+
+        assertThrows(ChatExportParseException.class, () -> parser.parse(file));
+    }
+
+    @Test
+    void skipHeavyFieldsOfMessages() throws Exception {
+        String json = """
+                {
+                  "name": "Test",
+                  "messages": [
+                    {
+                      "photo": "photos/photo_1.jpg",
+                      "file": "files/doc.pdf",
+                      "edited": "2026-02-25T08:20:58",
+                      "reactions": [{"type": "emoji", "count": 1, "recent": [{"from": "X", "from_id": "user9"}]}],
+                      "text": ["hi ", {"type": "mention", "text": "@fake"}],
+                      "from": "User",
+                      "from_id": "user1",
+                      "text_entities": [
+                        {"type": "plain", "text": "hi ", "document_id": {"nested": [1, 2]}},
+                        null,
+                        {"type": "mention", "text": "@real"}
+                      ]
+                    },
+                    {"from": null, "from_id": "channel1", "text_entities": null}
+                  ]
+                }
+                """;
+
+        ChatExport result = new ParserImpl().parse(new RawChatFile("test.json", json));
+        List<ChatExport.Message> messages = result.getMessages();
+
+        assertEquals(2, messages.size());
+        ChatExport.Message first = messages.getFirst();
+        assertEquals("User", first.getFrom());
+        assertEquals("user1", first.getFromId());
+        assertEquals(3, first.getTextEntities().size());
+        assertNull(first.getTextEntities().get(1));
+        assertEquals("@real", first.getTextEntities().get(2).getText());
+        assertEquals("hi @real", first.getText());
+
+        ChatExport.Message second = messages.get(1);
+        assertNull(second.getFrom());
+        assertEquals("channel1", second.getFromId());
+        assertNull(second.getTextEntities());
+    }
+
+    @Test
+    void throwExceptionOnMessageOfWrongShape() {
+        RawChatFile file = new RawChatFile("test.json", "{\"messages\": [\"not a message\"]}");
+        ParserImpl parser = new ParserImpl();
+
+        assertThrows(ChatExportParseException.class, () -> parser.parse(file));
+    }
 }
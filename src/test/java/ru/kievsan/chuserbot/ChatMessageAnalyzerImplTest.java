@@ -1,17 +1,24 @@
 package ru.kievsan.chuserbot;
 
 import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.analytics.ChatAnalysisSink;
 import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzer;
 import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzerImpl;
 import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
 import ru.kievsan.chuserbot.domain.ChatExport;
 import ru.kievsan.chuserbot.domain.Member;
+import ru.kievsan.chuserbot.domain.MemberIndex;
+import ru.kievsan.chuserbot.domain.MemberStats;
 import ru.kievsan.chuserbot.domain.Mention;
+import ru.kievsan.chuserbot.parser.MessageEvent;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class ChatMessageAnalyzerImplTest {
 
@@ -37,7 +44,7 @@ class ChatMessageAnalyzerImplTest {
 
         assertEquals(2, members.size());
         assertTrue(members.contains(new Member("user123456789", "Сергей Киевский")));
-        assertTrue(members.contains(new Member("user789456123", "Sergey Kievskiy")));
+        assertTrue(members.contains(new Member("user123123123", "Sergey Kievskiy")));
     }
 
     @Test
@@ -253,11 +260,103 @@ class ChatMessageAnalyzerImplTest {
         assertTrue(result.mentions().contains(new Mention("@username")));
     }
 
+    @Test
+    void collectMemberStatsBySlot() throws Exception {
+        ChatExport chatExport = createTestChatExport();
+        List<ChatExport.Message> messages = chatExport.getMessages();
+        for (int i = 0; i < messages.size(); i++) {
+            messages.get(i).setDate(1_700_000_000L + i * 60L);
+        }
+
+        ChatMsgAnalysisResult result = analyzer.analyze(chatExport);
+        MemberIndex members = result.memberIndex();
+        MemberStats stats = result.stats();
+
+        int author = members.slotOf("user123456789");
+        assertEquals(3, stats.messageCount(author));
+        assertEquals(1_700_000_000L, stats.firstDate(author));
+        assertEquals(1_700_000_180L, stats.lastDate(author));
+        assertEquals(3, stats.mentionCount(author));
+
+        int other = members.slotOf("user123123123");
+        assertEquals(1, stats.messageCount(other));
+        assertEquals(1_700_000_060L, stats.firstDate(other));
+        assertEquals(0, stats.mentionCount(other));
+    }
+
+    @Test
+    void linkMentionNameToAuthorsByUserId() throws Exception {
+        ChatExport.Message first = new ChatExport.Message();
+        first.setFrom("Первый");
+        first.setFromId("user1");
+        first.setTextEntities(List.of(mentionName(2), mentionName(3)));
+        ChatExport.Message second = new ChatExport.Message();
+        second.setFrom("Второй");
+        second.setFromId("user2");
+        second.setTextEntities(List.of(mentionName(1), mentionName(2)));
+        ChatExport chatExport = new ChatExport();
+        chatExport.setMessages(List.of(first, second));
+
+        ChatMsgAnalysisResult result = analyzer.analyze(chatExport);
+        MemberIndex members = result.memberIndex();
+
+        // user2 упомянут до своего первого сообщения, user3 в чат не писал.
+        assertEquals(1, result.stats().mentionedCount(members.slotOf("user1")));
+        assertEquals(2, result.stats().mentionedCount(members.slotOf("user2")));
+        assertEquals(1, result.stats().pendingUserCount());
+        assertEquals(2, result.stats().mentionCount(members.slotOf("user1")));
+        assertEquals(0, result.getMentionsCount());
+    }
+
     @Test
     void throwExceptionOnNullChatExport() {
         assertThrows(ChatMessageAnalyzer.ChatAnalysisException.class, () -> analyzer.analyze(null));
     }
 
+    @Test
+    void duplicateAuthorsAndMentionsAllocateNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        List<ChatExport.Message> messages = new ArrayList<>(createTestChatExport().getMessages());
+        ChatExport.Message deleted = new ChatExport.Message();
+        deleted.setFrom(" Deleted Account ");
+        deleted.setFromId("user000");
+        deleted.setTextEntities(List.of());
+        messages.add(deleted);
+
+        ChatAnalysisSink sink = new ChatAnalysisSink();
+        MessageEvent event = new MessageEvent();
+        int rounds = 100_000;
+        // Прогрев: все авторы и упоминания уже в индексах, код скомпилирован.
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < messages.size(); i++) {
+                sink.onMessage(event.fill(messages.get(i)));
+            }
+        }
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < messages.size(); i++) {
+                sink.onMessage(event.fill(messages.get(i)));
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        double perMessage = (double) allocated / (rounds * messages.size());
+        assertTrue(perMessage < 0.1, "Allocated " + perMessage + " bytes per message");
+        assertEquals(2, sink.result().getMembersCount());
+    }
+
+    private static ChatExport.TextEntity mentionName(long userId) {
+        ChatExport.TextEntity entity = new ChatExport.TextEntity();
+        entity.setType("mention_name");
+        entity.setText("Имя " + userId);
+        entity.setUserId(userId);
+        return entity;
+    }
+
     private ChatExport createTestChatExport() {
         ChatExport chatExport = new ChatExport();
         chatExport.setName("Тест");
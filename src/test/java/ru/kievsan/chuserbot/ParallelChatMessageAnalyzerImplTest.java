@@ -0,0 +1,151 @@
+package ru.kievsan.chuserbot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzer;
+import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzerImpl;
+import ru.kievsan.chuserbot.analytics.ParallelChatMessageAnalyzerImpl;
+import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.Member;
+import ru.kievsan.chuserbot.domain.MemberIndex;
+import ru.kievsan.chuserbot.domain.RawChatFile;
+import ru.kievsan.chuserbot.parser.ParserImpl;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelChatMessageAnalyzerImplTest {
+
+    private ForkJoinPool pool;
+    private ParallelChatMessageAnalyzerImpl analyzer;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+        analyzer = new ParallelChatMessageAnalyzerImpl(pool, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void parallelAnalysisEqualsSequential() throws Exception {
+        ChatExport chatExport = new ParserImpl().parse(
+                new RawChatFile("generated.json", ChatAnalyzerIntegrationTest.generateChatJson(5_000)));
+
+        ChatMsgAnalysisResult expected = new ChatMessageAnalyzerImpl().analyze(chatExport);
+        ChatMsgAnalysisResult actual = analyzer.analyze(chatExport);
+
+        assertEquals(displayNames(expected), displayNames(actual));
+        assertEquals(expected.mentions(), actual.mentions());
+    }
+
+    @Test
+    void parallelMemberStatsEqualSequential() throws Exception {
+        ChatExport chatExport = new ParserImpl().parse(
+                new RawChatFile("generated.json", ChatAnalyzerIntegrationTest.generateChatJson(5_000)));
+
+        ChatMsgAnalysisResult expected = new ChatMessageAnalyzerImpl().analyze(chatExport);
+        ChatMsgAnalysisResult actual = analyzer.analyze(chatExport);
+
+        MemberIndex actualMembers = actual.memberIndex();
+        for (Member member : expected.members()) {
+            int expectedSlot = expected.memberIndex().slotOf(member.fromId());
+            int actualSlot = actualMembers.slotOf(member.fromId());
+            assertEquals(expected.stats().messageCount(expectedSlot), actual.stats().messageCount(actualSlot));
+            assertEquals(expected.stats().mentionCount(expectedSlot), actual.stats().mentionCount(actualSlot));
+            assertEquals(expected.stats().firstDate(expectedSlot), actual.stats().firstDate(actualSlot));
+        }
+    }
+
+    @Test
+    void resolveMentionNameAcrossRanges() throws Exception {
+        List<ChatExport.Message> messages = new ArrayList<>();
+        ChatExport.TextEntity mention = new ChatExport.TextEntity();
+        mention.setType("mention_name");
+        mention.setText("Поздний автор");
+        mention.setUserId(999L);
+        for (int i = 0; i < 1_000; i++) {
+            ChatExport.Message message = message("user" + (i % 10), "Имя " + i);
+            message.setTextEntities(i < 10 ? List.of(mention) : List.of());
+            messages.add(message);
+        }
+        messages.add(message("user999", "Поздний автор"));
+        ChatExport chatExport = new ChatExport();
+        chatExport.setMessages(messages);
+
+        ChatMsgAnalysisResult result = analyzer.analyze(chatExport);
+
+        assertEquals(10, result.stats().mentionedCount(result.memberIndex().slotOf("user999")));
+        assertEquals(0, result.stats().pendingUserCount());
+    }
+
+    @Test
+    void linkRepliesAcrossRanges() throws Exception {
+        List<ChatExport.Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ChatExport.Message message = message("user" + (i % 10), "Имя " + (i % 10));
+            message.setId((long) i);
+            // Каждое сообщение - ответ на первое сообщение чата (автор user0), кроме самого первого.
+            message.setReplyToMessageId(i > 0 ? 0L : null);
+            messages.add(message);
+        }
+        ChatExport chatExport = new ChatExport();
+        chatExport.setMessages(messages);
+
+        ChatMsgAnalysisResult expected = new ChatMessageAnalyzerImpl().analyze(chatExport);
+        ChatMsgAnalysisResult actual = analyzer.analyze(chatExport);
+
+        // 900 ответов от user1..user9; ответы user0 самому себе не считаются.
+        assertEquals(900, expected.stats().replies().replyCount());
+        assertEquals(900, actual.stats().replies().replyCount());
+        assertEquals(9, actual.stats().replies().edgeCount());
+        assertEquals(0, actual.stats().replies().unresolvedCount());
+    }
+
+    @Test
+    void firstSeenDisplayNameWinsAcrossRanges() throws Exception {
+        List<ChatExport.Message> messages = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            messages.add(message("user" + (i % 10), "Имя " + i));
+        }
+        ChatExport chatExport = new ChatExport();
+        chatExport.setMessages(new LinkedList<>(messages));
+
+        ChatMsgAnalysisResult result = analyzer.analyze(chatExport);
+
+        assertEquals(10, result.getMembersCount());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Имя " + i, displayNames(result).get("user" + i));
+        }
+    }
+
+    @Test
+    void handleNullMessagesList() throws Exception {
+        ChatMsgAnalysisResult result = analyzer.analyze(new ChatExport());
+
+        assertEquals(0, result.getTotalCount());
+        assertThrows(ChatMessageAnalyzer.ChatAnalysisException.class, () -> analyzer.analyze(null));
+    }
+
+    private static ChatExport.Message message(String fromId, String from) {
+        ChatExport.Message message = new ChatExport.Message();
+        message.setFromId(fromId);
+        message.setFrom(from);
+        return message;
+    }
+
+    private static Map<String, String> displayNames(ChatMsgAnalysisResult result) {
+        return result.members().stream().collect(Collectors.toMap(Member::fromId, Member::displayName));
+    }
+}
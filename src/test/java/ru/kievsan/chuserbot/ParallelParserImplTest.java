@@ -0,0 +1,154 @@
+package ru.kievsan.chuserbot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.analytics.ChatAnalysisSink;
+import ru.kievsan.chuserbot.analytics.ChatMessageAnalyzerImpl;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.Member;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
+import ru.kievsan.chuserbot.domain.RawChatFile;
+import ru.kievsan.chuserbot.domain.ReportExportResult;
+import ru.kievsan.chuserbot.domain.ReportTextExportResult;
+import ru.kievsan.chuserbot.export.ReportRendererImpl;
+import ru.kievsan.chuserbot.parser.ParallelParserImpl;
+import ru.kievsan.chuserbot.parser.Parser.ChatExportParseException;
+import ru.kievsan.chuserbot.parser.ParserImpl;
+import ru.kievsan.chuserbot.tg.ChatProcService;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelParserImplTest {
+
+    private ForkJoinPool pool;
+    private ParallelParserImpl parser;
+    private Path path;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        parser = new ParallelParserImpl(pool, 1024);
+        path = Files.createTempFile("parallel-", ".json");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.shutdownNow();
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    void splitMessagesArrayIntoSeveralChunks() throws Exception {
+        Files.writeString(path, ChatAnalyzerIntegrationTest.generateChatJson(2_000), StandardCharsets.UTF_8);
+
+        List<ChatAnalysisSink> sinks = parser.parseChunks(RawChatFile.ofPath("generated.json", path),
+                ChatAnalysisSink::new).handlers();
+
+        assertTrue(sinks.size() > 1, "Expected several chunks, got " + sinks.size());
+    }
+
+    @Test
+    void parallelModeEqualsReferenceMode() throws Exception {
+        Files.writeString(path, ChatAnalyzerIntegrationTest.generateChatJson(5_000), StandardCharsets.UTF_8);
+
+        ChatMsgAnalysisResult reference = analyze(new ParserImpl(), ChatProcService.ProcMode.REFERENCE);
+        ChatMsgAnalysisResult parallel = analyze(parser, ChatProcService.ProcMode.PARALLEL);
+
+        assertEquals(displayNames(reference), displayNames(parallel));
+        assertEquals(reference.mentions(), parallel.mentions());
+    }
+
+    @Test
+    void keepChatHeaderInParallelMode() throws Exception {
+        ChatProcService service = new ChatProcService(parser, new ChatMessageAnalyzerImpl(), new ReportRendererImpl(),
+                ChatProcService.ProcMode.PARALLEL);
+
+        // Несколько фрагментов и файл меньше двух фрагментов (один обработчик).
+        for (int messages : List.of(5_000, 2)) {
+            Files.writeString(path, ChatAnalyzerIntegrationTest.generateChatJson(messages), StandardCharsets.UTF_8);
+
+            MultiChatAnalysisResult result = service.analyzeChats(RawChatFile.ofPath("chat.json", path));
+
+            MultiChatAnalysisResult.ChatAnalysis chat = result.chats().getFirst();
+            assertEquals("Generated", chat.name(), "messages: " + messages);
+            assertEquals("private_group", chat.type());
+            assertEquals(1L, chat.id());
+        }
+    }
+
+    @Test
+    void ignoreBracketsAndQuotesInsideStrings() throws Exception {
+        StringBuilder sb = new StringBuilder("{\"name\":\"messages\",\"about\":{\"messages\":[1,2]},\"messages\":[");
+        for (int i = 0; i < 300; i++) {
+            if (i > 0) {
+                sb.append(",\n");
+            }
+            sb.append("{\"from\":\"Name ").append(i).append(" \\\"],}{\\\\\",\"from_id\":\"user").append(i)
+                    .append("\",\"text\":[\"x, ]} [{\",{\"type\":\"link\",\"text\":\"a,b\"}]")
+                    .append(",\"text_entities\":[{\"type\":\"mention\",\"text\":\"@u").append(i % 17).append("\"}]}");
+        }
+        sb.append("],\"tail\":[\"]\"]}");
+        Files.writeString(path, sb.toString(), StandardCharsets.UTF_8);
+
+        ChatMsgAnalysisResult reference = analyze(new ParserImpl(), ChatProcService.ProcMode.REFERENCE);
+        ChatMsgAnalysisResult parallel = analyze(parser, ChatProcService.ProcMode.PARALLEL);
+
+        assertEquals(300, parallel.getMembersCount());
+        assertEquals(17, parallel.getMentionsCount());
+        assertEquals(displayNames(reference), displayNames(parallel));
+        assertEquals(reference.mentions(), parallel.mentions());
+    }
+
+    @Test
+    void countModeMergesChunkSketches() throws Exception {
+        Files.writeString(path, ChatAnalyzerIntegrationTest.generateChatJson(5_000), StandardCharsets.UTF_8);
+        ChatMsgAnalysisResult exact = analyze(new ParserImpl(), ChatProcService.ProcMode.REFERENCE);
+
+        ReportExportResult result = new ChatProcService(parser, new ChatMessageAnalyzerImpl(), new ReportRendererImpl(),
+                ChatProcService.ProcMode.PARALLEL).count(RawChatFile.ofPath("chat.json", path));
+
+        // Малые множества HyperLogLog оценивает линейным подсчётом - практически точно.
+        String text = assertInstanceOf(ReportTextExportResult.class, result).text();
+        assertEquals(exact.getMembersCount(), estimate(text, "Уникальных участников"), 2, text);
+        assertEquals(exact.getMentionsCount(), estimate(text, "Уникальных упоминаний"), 2, text);
+        assertTrue(text.contains("Погрешность оценки: ±1.6%"), text);
+        assertTrue(text.contains("Самые активные участники:\n1. "), text);
+    }
+
+    @Test
+    void throwExceptionOnBrokenMessage() throws Exception {
+        String json = ChatAnalyzerIntegrationTest.generateChatJson(2_000)
+                .replace("{\"id\":1500,", "{\"id\":1500,,");
+        Files.writeString(path, json, StandardCharsets.UTF_8);
+
+        assertThrows(ChatExportParseException.class,
+                () -> parser.parseChunks(RawChatFile.ofPath("broken.json", path), ChatAnalysisSink::new));
+    }
+
+    private ChatMsgAnalysisResult analyze(ru.kievsan.chuserbot.parser.Parser chatParser,
+                                          ChatProcService.ProcMode mode) throws Exception {
+        return new ChatProcService(chatParser, new ChatMessageAnalyzerImpl(), new ReportRendererImpl(), mode)
+                .analyze(RawChatFile.ofPath("chat.json", path));
+    }
+
+    private static long estimate(String text, String label) {
+        Matcher matcher = Pattern.compile(label + ": ~(\\d+)").matcher(text);
+        assertTrue(matcher.find(), text);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private Map<String, String> displayNames(ChatMsgAnalysisResult result) {
+        return result.members().stream().collect(Collectors.toMap(Member::fromId, Member::displayName));
+    }
+}
@@ -0,0 +1,354 @@
+package ru.kievsan.chuserbot;
+
+import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.domain.ChatExport;
+import ru.kievsan.chuserbot.domain.RawChatFile;
+import ru.kievsan.chuserbot.parser.Decompression;
+import ru.kievsan.chuserbot.parser.MessageEvent;
+import ru.kievsan.chuserbot.parser.Parser.ChatExportParseException;
+import ru.kievsan.chuserbot.parser.Parser.TruncatedChatExportException;
+import ru.kievsan.chuserbot.parser.Parser.UnsupportedExportFormatException;
+import ru.kievsan.chuserbot.parser.ParserImpl;
+import ru.kievsan.chuserbot.parser.StreamingParserImpl;
+
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingParserImplTest {
+
+    private final StreamingParserImpl parser = new StreamingParserImpl();
+
+    private String readResourceAsString(String resourceName) throws Exception {
+        InputStream stream = getClass().getClassLoader().getResourceAsStream(resourceName);
+        assertNotNull(stream, "Not found: " + resourceName);
+        return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void parseRealChatJsonSameAsParserImpl() throws Exception {
+        RawChatFile file = new RawChatFile("chat1.json", readResourceAsString("chat1.json"));
+
+        ChatExport expected = new ParserImpl().parse(file);
+        ChatExport actual = parser.parse(file);
+
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getMessages(), actual.getMessages());
+    }
+
+    @Test
+    void streamMessagesToHandlerWithoutMessagesList() throws Exception {
+        RawChatFile file = new RawChatFile("chat1.json", readResourceAsString("chat1.json"));
+        List<String> authors = new ArrayList<>();
+        List<String> mentions = new ArrayList<>();
+
+        ChatExport header = parser.parse(file, event -> {
+            authors.add(event.fromId());
+            for (int i = 0; i < event.entityCount(); i++) {
+                if ("mention".equals(event.entityType(i))) {
+                    mentions.add(event.entityText(i));
+                }
+            }
+        });
+
+        assertEquals("Sergey", header.getName());
+        assertEquals(123123123L, header.getId());
+        assertNull(header.getMessages());
+        assertEquals(5, authors.size());
+        assertEquals(List.of("@skievskiy", "@skievskiy", "@skievskiywork"), mentions);
+    }
+
+    @Test
+    void skipUnusedFieldsOfAnyShape() throws Exception {
+        String json = """
+                {
+                  "messages": [
+                    {
+                      "photo": "photos/1.jpg",
+                      "reactions": [{"type": "emoji", "recent": [{"from": "X", "from_id": "user9"}]}],
+                      "text": ["a ", {"type": "mention", "text": "@fake"}],
+                      "from": "User",
+                      "from_id": "user1",
+                      "text_entities": [{"type": "mention", "text": "@real", "document_id": {"a": [1, 2]}}]
+                    },
+                    null,
+                    {"type": "service", "actor": "Someone"}
+                  ],
+                  "name": "Test"
+                }
+                """;
+
+        List<String> seen = new ArrayList<>();
+        ChatExport header = parser.parse(new RawChatFile("test.json", json), event -> {
+            seen.add(event.from() + "|" + event.fromId() + "|" + event.entityCount());
+        });
+
+        assertEquals("Test", header.getName());
+        assertEquals(List.of("User|user1|1", "null|null|0"), seen);
+    }
+
+    @Test
+    void throwExceptionOnBlankContent() {
+        RawChatFile file = new RawChatFile("empty.json", "  ");
+
+        assertThrows(ChatExportParseException.class, () -> parser.parse(file, event -> { }));
+    }
+
+    @Test
+    void throwExceptionOnInvalidJson() {
+        RawChatFile file = new RawChatFile("invalid.json", "{ invalid json }");
+
+        assertThrows(ChatExportParseException.class, () -> parser.parse(file, event -> { }));
+    }
+
+    @Test
+    void rejectForeignJsonByHeadWithoutReadingWholeStream() {
+        StringBuilder sb = new StringBuilder("{\"rows\":[");
+        for (int i = 0; i < 100_000; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"value\":").append(i).append('}');
+        }
+        ByteArrayInputStream stream = new ByteArrayInputStream(sb.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+        List<MessageEvent> seen = new ArrayList<>();
+
+        assertThrows(UnsupportedExportFormatException.class,
+                () -> parser.parse(RawChatFile.ofStream("rows.json", stream), seen::add));
+        assertTrue(seen.isEmpty());
+        // Прочитано только окно проверки, а не весь поток.
+        assertTrue(stream.available() > 1_000_000);
+    }
+
+    @Test
+    void rejectForeignJsonWithNameAndIdFields() {
+        // GeoJSON: name, id и type есть, но это не экспорт Telegram.
+        StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"name\":\"roads\",\"id\":7,\"features\":[");
+        for (int i = 0; i < 10_000; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"type\":\"Feature\",\"id\":").append(i).append('}');
+        }
+        ByteArrayInputStream stream = new ByteArrayInputStream(sb.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(UnsupportedExportFormatException.class,
+                () -> parser.parse(RawChatFile.ofStream("roads.json", stream), event -> { }));
+    }
+
+    @Test
+    void rejectRootArrayAndNonArrayMessages() {
+        assertThrows(UnsupportedExportFormatException.class,
+                () -> parser.parse(new RawChatFile("array.json", "[{\"name\":\"x\"}]"), event -> { }));
+        assertThrows(UnsupportedExportFormatException.class,
+                () -> parser.parse(new RawChatFile("bad.json", "{\"messages\":\"none\"}"), event -> { }));
+    }
+
+    @Test
+    void reportTruncatedTailWithMessagesReadSoFar() throws Exception {
+        String json = readResourceAsString("chat1.json");
+        String truncated = json.substring(0, json.length() * 2 / 3);
+        List<String> seen = new ArrayList<>();
+
+        TruncatedChatExportException e = assertThrows(TruncatedChatExportException.class,
+                () -> parser.parse(RawChatFile.ofStream("chat1.json",
+                                new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8))),
+                        event -> seen.add(event.fromId())));
+
+        assertFalse(seen.isEmpty());
+        assertEquals(new ParserImpl().parse(new RawChatFile("chat1.json", json)).getName(), e.header().getName());
+        assertTrue(e.offset() > 0);
+    }
+
+    @Test
+    void repeatedAuthorFieldsShareOneStringInstance() throws Exception {
+        String json = "{\"name\":\"Test\",\"type\":\"private_group\",\"id\":1,\"messages\":["
+                + "{\"from\":\"Иван\",\"from_id\":\"user1\",\"text_entities\":[{\"type\":\"plain\",\"text\":\"a\"}]},"
+                + "{\"from\":\"Иван\",\"from_id\":\"user1\",\"text_entities\":[{\"type\":\"plain\",\"text\":\"b\"}]}]}";
+        List<String> strings = new ArrayList<>();
+
+        parser.parse(RawChatFile.ofStream("chat.json", new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))),
+                event -> {
+                    strings.add(event.from());
+                    strings.add(event.fromId());
+                    strings.add(event.entityType(0));
+                });
+
+        assertEquals(6, strings.size());
+        assertEquals("Иван", strings.get(3));
+        assertSame(strings.get(0), strings.get(3));
+        assertSame(strings.get(1), strings.get(4));
+        assertSame(strings.get(2), strings.get(5));
+    }
+
+    @Test
+    void parseMessageIdAndDatePreferringUnixtime() throws Exception {
+        String json = "{\"name\":\"Test\",\"type\":\"private_group\",\"id\":1,\"messages\":["
+                + "{\"id\":10,\"date\":\"2026-02-25T11:20:58\",\"date_unixtime\":\"1771996858\",\"from_id\":\"user1\"},"
+                + "{\"id\":11,\"date\":\"2026-02-25T05:21:02\",\"from_id\":\"user1\"},"
+                + "{\"date\":\"not a date\",\"from_id\":\"user1\"}]}";
+        List<long[]> seen = new ArrayList<>();
+
+        parser.parse(new RawChatFile("chat.json", json), event -> seen.add(new long[]{event.id(), event.date()}));
+
+        assertArrayEquals(new long[]{10, 1771996858L}, seen.get(0));
+        assertArrayEquals(new long[]{11, 1771996862L}, seen.get(1));
+        assertArrayEquals(new long[]{MessageEvent.NO_ID, MessageEvent.NO_DATE}, seen.get(2));
+        List<ChatExport.Message> expected = new ParserImpl().parse(new RawChatFile("chat.json", json)).getMessages();
+        assertEquals(List.of(10L, 11L), expected.stream().limit(2).map(ChatExport.Message::getId).toList());
+        assertEquals(List.of(1771996858L, 1771996862L),
+                expected.stream().limit(2).map(ChatExport.Message::getDate).toList());
+        assertNull(expected.get(2).getDate());
+    }
+
+    @Test
+    void parseMentionNameUserId() throws Exception {
+        String json = "{\"messages\":[{\"from_id\":\"user1\",\"text_entities\":["
+                + "{\"type\":\"mention_name\",\"text\":\"Иван\",\"user_id\":42},"
+                + "{\"type\":\"mention\",\"text\":\"@ivan\"}]}]}";
+        List<Long> userIds = new ArrayList<>();
+
+        parser.parse(new RawChatFile("chat.json", json), event -> {
+            userIds.add(event.entityUserId(0));
+            userIds.add(event.entityUserId(1));
+        });
+
+        assertEquals(List.of(42L, MessageEvent.NO_ID), userIds);
+        assertEquals(42L, new ParserImpl().parse(new RawChatFile("chat.json", json))
+                .getMessages().getFirst().getTextEntities().getFirst().getUserId());
+    }
+
+    @Test
+    void parseReplyToMessageId() throws Exception {
+        String json = "{\"messages\":[{\"id\":1,\"from_id\":\"user1\"},"
+                + "{\"id\":2,\"from_id\":\"user2\",\"reply_to_message_id\":1}]}";
+        List<Long> replyTo = new ArrayList<>();
+
+        parser.parse(new RawChatFile("chat.json", json), event -> replyTo.add(event.replyToId()));
+
+        assertEquals(List.of(MessageEvent.NO_ID, 1L), replyTo);
+        assertEquals(1L, new ParserImpl().parse(new RawChatFile("chat.json", json))
+                .getMessages().get(1).getReplyToMessageId());
+    }
+
+    @Test
+    void parseFromUtf8StreamSameAsFromString() throws Exception {
+        String json = readResourceAsString("chat1.json");
+        ByteArrayInputStream stream = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+
+        ChatExport fromString = parser.parse(new RawChatFile("chat1.json", json));
+        ChatExport fromStream = parser.parse(RawChatFile.ofStream("chat1.json", stream));
+
+        assertEquals(fromString, fromStream);
+    }
+
+    @Test
+    void throwExceptionOnEmptyStream() {
+        RawChatFile file = RawChatFile.ofStream("empty.json", new ByteArrayInputStream(new byte[0]));
+
+        assertThrows(ChatExportParseException.class, () -> parser.parse(file, event -> { }));
+    }
+
+    @Test
+    void parseFromMappedFileSameAsFromString() throws Exception {
+        String json = readResourceAsString("chat1.json");
+        Path path = Files.createTempFile("chat1-", ".json");
+        try {
+            Files.writeString(path, json, StandardCharsets.UTF_8);
+
+            ChatExport fromString = parser.parse(new RawChatFile("chat1.json", json));
+            ChatExport fromFile = parser.parse(RawChatFile.ofPath("chat1.json", path));
+
+            assertEquals(fromString, fromFile);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void parseGzipZipAndZstdSameAsPlain() throws Exception {
+        byte[] json = readResourceAsString("chat1.json").getBytes(StandardCharsets.UTF_8);
+        ChatExport expected = parser.parse(RawChatFile.ofStream("chat1.json", new ByteArrayInputStream(json)));
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(json);
+        }
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("ChatExport_2026-02-25/photos/photo_1.jpg"));
+            out.write(new byte[]{1, 2, 3});
+            out.putNextEntry(new ZipEntry("ChatExport_2026-02-25/result.json"));
+            out.write(json);
+        }
+
+        ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+        try (ZstdOutputStream out = new ZstdOutputStream(zstd)) {
+            out.write(json);
+        }
+
+        for (ByteArrayOutputStream compressed : List.of(gzip, zip, zstd)) {
+            ChatExport actual = parser.parse(
+                    RawChatFile.ofStream("chat1.json.gz", new ByteArrayInputStream(compressed.toByteArray())));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void preferResultJsonInZip() throws Exception {
+        byte[] json = readResourceAsString("chat1.json").getBytes(StandardCharsets.UTF_8);
+        ChatExport expected = parser.parse(RawChatFile.ofStream("chat1.json", new ByteArrayInputStream(json)));
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("ChatExport_2026-02-25/lists/stickers.json"));
+            out.write("{\"name\":\"decoy\",\"messages\":[]}".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("ChatExport_2026-02-25/result.json"));
+            out.write(json);
+        }
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(single)) {
+            out.putNextEntry(new ZipEntry("export.json"));
+            out.write(json);
+            out.putNextEntry(new ZipEntry("photos/photo_1.jpg"));
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        for (ByteArrayOutputStream archive : List.of(zip, single)) {
+            ChatExport actual = parser.parse(
+                    RawChatFile.ofStream("chat.zip", new ByteArrayInputStream(archive.toByteArray())));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void throwExceptionOnZipWithoutJson() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("photos/photo_1.jpg"));
+            out.write(new byte[]{1, 2, 3});
+        }
+        RawChatFile file = RawChatFile.ofStream("chat.zip", new ByteArrayInputStream(zip.toByteArray()));
+
+        assertThrows(ChatExportParseException.class, () -> parser.parse(file, event -> { }));
+    }
+
+    @Test
+    void acceptCompressedFileNames() {
+        assertTrue(Decompression.isSupportedFileName("result.json"));
+        assertTrue(Decompression.isSupportedFileName("result.JSON.gz"));
+        assertTrue(Decompression.isSupportedFileName("export.zip"));
+        assertTrue(Decompression.isSupportedFileName("result.json.zst"));
+        assertFalse(Decompression.isSupportedFileName("result.txt"));
+        assertFalse(Decompression.isSupportedFileName("result.rar"));
+    }
+}
@@ -0,0 +1,83 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityIndexTest {
+
+    private static final long DAY_1 = LocalDate.of(2026, 2, 24).toEpochDay();
+    private static final long DAY_2 = DAY_1 + 1;
+    private static final long DAY_3 = DAY_1 + 2;
+
+    @Test
+    void queryActiveSlotsAndMessagesByDayRange() {
+        ActivityIndex activity = new ActivityIndex();
+        activity.add(3, at(DAY_1, 10));
+        activity.add(1, at(DAY_1, 23));
+        activity.add(3, at(DAY_2, 0));
+        activity.add(70, at(DAY_3, 12));
+        activity.add(5, MemberStats.NO_DATE);
+
+        assertEquals(3, activity.dayCount());
+        assertEquals(DAY_1, activity.firstEpochDay());
+        assertEquals(DAY_3, activity.lastEpochDay());
+        assertEquals(bits(1, 3), activity.activeSlots(DAY_1, DAY_1));
+        assertEquals(bits(3, 70), activity.activeSlots(DAY_2, DAY_3));
+        assertEquals(bits(1, 3, 70), activity.activeSlots(DAY_1 - 10, DAY_3 + 10));
+        assertEquals(2, activity.messageCount(DAY_1, DAY_1));
+        assertEquals(4, activity.messageCount(DAY_1, DAY_3));
+        assertTrue(activity.activeSlots(DAY_3 + 1, DAY_3 + 5).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> activity.activeSlots(DAY_2, DAY_1));
+    }
+
+    @Test
+    void switchBusyDayToBitmap() {
+        ActivityIndex activity = new ActivityIndex();
+        int authors = ActivityIndex.ARRAY_LIMIT * 3;
+        // В обратном порядке: вставки в середину массива и переход на битовую карту.
+        for (int slot = authors - 1; slot >= 0; slot--) {
+            activity.add(slot, at(DAY_1, slot % 86_400));
+            activity.add(slot, at(DAY_1, 0));
+        }
+        activity.add(1, at(DAY_2, 0));
+
+        BitSet slots = activity.activeSlots(DAY_1, DAY_2);
+        assertEquals(authors, slots.cardinality());
+        assertEquals(authors - 1, slots.length() - 1);
+        assertEquals(2L * authors + 1, activity.messageCount(DAY_1, DAY_2));
+    }
+
+    @Test
+    void mergeRemapsSlotsAndSumsMessages() {
+        ActivityIndex left = new ActivityIndex();
+        left.add(0, at(DAY_1, 0));
+        ActivityIndex right = new ActivityIndex();
+        right.add(0, at(DAY_1, 5));
+        right.add(1, at(DAY_2, 5));
+        ActivityIndex copy = left.copy();
+
+        left.merge(right, new int[]{4, 0});
+
+        assertEquals(bits(0, 4), left.activeSlots(DAY_1, DAY_1));
+        assertEquals(bits(0), left.activeSlots(DAY_2, DAY_2));
+        assertEquals(3, left.messageCount(DAY_1, DAY_2));
+        assertEquals(1, copy.messageCount(DAY_1, DAY_2));
+    }
+
+    private static long at(long epochDay, int secondOfDay) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay().toEpochSecond(ZoneOffset.UTC) + secondOfDay;
+    }
+
+    private static BitSet bits(int... slots) {
+        BitSet bits = new BitSet();
+        for (int slot : slots) {
+            bits.set(slot);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimateWithinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        int distinct = 200_000;
+        for (int i = 0; i < distinct; i++) {
+            String value = "user" + i;
+            // Повторы не меняют оценку.
+            sketch.add(HyperLogLog.hash(value, 0, value.length()));
+            sketch.add(HyperLogLog.hash(value, 0, value.length()));
+        }
+
+        double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+        assertTrue(error < 3 * sketch.relativeError(), "Relative error " + error);
+        assertEquals(1.04 / 64, sketch.relativeError(), 1e-12);
+    }
+
+    @Test
+    void smallCardinalityIsNearExact() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            String value = "@mention" + i;
+            sketch.add(HyperLogLog.hash(value, 0, value.length()));
+        }
+
+        assertEquals(100, sketch.estimate(), 2);
+        assertEquals(0, new HyperLogLog(12).estimate());
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog(10);
+        HyperLogLog right = new HyperLogLog(10);
+        HyperLogLog all = new HyperLogLog(10);
+        for (int i = 0; i < 50_000; i++) {
+            String value = "user" + i;
+            long hash = HyperLogLog.hash(value, 0, value.length());
+            (i % 3 == 0 ? left : right).add(hash);
+            all.add(hash);
+        }
+
+        left.merge(right);
+
+        assertEquals(all.estimate(), left.estimate());
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HyperLogLog(11)));
+    }
+
+    @Test
+    void hashIgnoresCharsOutsideRange() {
+        String padded = "  @user  ";
+
+        assertEquals(HyperLogLog.hash("@user", 0, 5), HyperLogLog.hash(padded, 2, 7));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+    }
+}
@@ -0,0 +1,94 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemberIndexTest {
+
+    @Test
+    void keepFirstDisplayNameForSameFromId() {
+        MemberIndex index = new MemberIndex();
+
+        int first = index.add("user123", "Первое имя");
+        int second = index.add("user123", "Второе имя");
+
+        assertEquals(first, second);
+        assertEquals(1, index.size());
+        assertEquals("Первое имя", index.displayName(first));
+        assertEquals(new Member("user123", "Первое имя"), index.member(first));
+    }
+
+    @Test
+    void roundTripEncodedAndOtherFromIds() {
+        List<String> fromIds = List.of("user1", "channel1", "chat1", "user0", "user007", "user", "bot42",
+                "user99999999999999999999", "user12a", "Пользователь");
+        MemberIndex index = new MemberIndex();
+
+        for (String fromId : fromIds) {
+            index.add(fromId, "name " + fromId);
+        }
+
+        assertEquals(fromIds.size(), index.size());
+        for (int slot = 0; slot < fromIds.size(); slot++) {
+            assertEquals(fromIds.get(slot), index.fromId(slot));
+            assertEquals(slot, index.slotOf(fromIds.get(slot)));
+        }
+        assertEquals(-1, index.slotOf("user2"));
+        assertEquals(-1, index.slotOf("other"));
+        assertEquals(-1, index.slotOf(null));
+    }
+
+    @Test
+    void behaveAsSetOfMembers() {
+        Set<Member> expected = new HashSet<>();
+        MemberIndex index = new MemberIndex();
+        for (int i = 0; i < 10_000; i++) {
+            Member member = new Member((i % 3 == 0 ? "channel" : "user") + (i % 7_000), "Имя " + i);
+            assertEquals(expected.add(member), index.add(member));
+        }
+
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected, index);
+        assertEquals(index, expected);
+        assertTrue(index.contains(new Member("user1", "другое имя")));
+        assertFalse(index.contains(new Member("user7001", "Имя")));
+    }
+
+    @Test
+    void findUserSlotByNumericId() {
+        MemberIndex index = new MemberIndex();
+        index.add("channel5", "Канал");
+        int user = index.add("user5", "Пользователь");
+
+        assertEquals(user, index.slotOfUser(5));
+        assertEquals(-1, index.slotOfUser(6));
+        assertEquals(-1, index.slotOfUser(-1));
+    }
+
+    @Test
+    void copyIsIndependent() {
+        MemberIndex index = new MemberIndex();
+        index.add("user1", "A");
+
+        MemberIndex copy = index.copy();
+        copy.add("user2", "B");
+
+        assertEquals(1, index.size());
+        assertEquals(2, copy.size());
+        assertEquals(-1, index.slotOf("user2"));
+    }
+
+    @Test
+    void throwExceptionOnInvalidMember() {
+        MemberIndex index = new MemberIndex();
+
+        assertThrows(IllegalArgumentException.class, () -> index.add(" ", "Имя"));
+        assertThrows(IllegalArgumentException.class, () -> index.add("user1", null));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.displayName(0));
+    }
+}
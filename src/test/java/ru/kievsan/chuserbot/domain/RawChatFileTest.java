@@ -0,0 +1,49 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawChatFileTest {
+
+    @Test
+    void createFromStringKeepsJsonContent() {
+        RawChatFile file = new RawChatFile("chat.json", "{}");
+        assertEquals("{}", file.jsonContent());
+        assertInstanceOf(RawChatFile.TextSource.class, file.source());
+    }
+
+    @Test
+    void createFromStream() {
+        InputStream stream = new ByteArrayInputStream(new byte[0]);
+        RawChatFile file = RawChatFile.ofStream("chat.json", stream);
+
+        RawChatFile.StreamSource source = assertInstanceOf(RawChatFile.StreamSource.class, file.source());
+        assertSame(stream, source.inputStream());
+    }
+
+    @Test
+    void throwExceptionOnJsonContentOfByteSource() {
+        RawChatFile file = RawChatFile.ofPath("chat.json", Path.of("chat.json"));
+        assertThrows(IllegalStateException.class, file::jsonContent);
+    }
+
+    @Test
+    void throwExceptionOnNullJsonContent() {
+        assertThrows(IllegalArgumentException.class, () -> new RawChatFile("chat.json", (String) null));
+    }
+
+    @Test
+    void throwExceptionOnNullStream() {
+        assertThrows(IllegalArgumentException.class, () -> RawChatFile.ofStream("chat.json", null));
+    }
+
+    @Test
+    void throwExceptionOnBlankFileName() {
+        assertThrows(IllegalArgumentException.class, () -> new RawChatFile(" ", "{}"));
+    }
+}
@@ -0,0 +1,122 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplyGraphTest {
+
+    @Test
+    void countRepliesBetweenAuthors() {
+        ReplyGraph graph = new ReplyGraph();
+        graph.addMessage(1, 0);
+        graph.addReply(1, 1);
+        graph.addMessage(2, 1);
+        graph.addReply(1, 1);
+        graph.addMessage(3, 1);
+        graph.addReply(0, 3);
+        graph.addMessage(4, 0);
+        // Ответ самому себе и на сообщение не участника в граф не входят.
+        graph.addReply(0, 4);
+        graph.addMessage(5, ReplyGraph.NO_AUTHOR);
+        graph.addReply(2, 5);
+
+        assertEquals(List.of("0->1:1", "1->0:2"), edges(graph));
+        assertEquals(2, graph.edgeCount());
+        assertEquals(3, graph.replyCount());
+        assertEquals(0, graph.unresolvedCount());
+    }
+
+    @Test
+    void indexMessageIdsAcrossPagesInAnyOrder() {
+        ReplyGraph graph = new ReplyGraph();
+        long far = 3L * ReplyGraph.MESSAGE_PAGE_SIZE + 7;
+        graph.addMessage(far, 0);
+        graph.addMessage(5, 1);
+        graph.addMessage(Integer.MAX_VALUE + 1L, 1);
+        graph.addReply(1, far);
+        graph.addReply(0, 5);
+        // Страница между встреченными id и id вне диапазона int - сообщения не найдены.
+        graph.addReply(0, ReplyGraph.MESSAGE_PAGE_SIZE + 1);
+        graph.addReply(0, Integer.MAX_VALUE + 1L);
+        graph.seal();
+
+        assertEquals(List.of("0->1:1", "1->0:1"), edges(graph));
+        assertEquals(2, graph.unresolvedCount());
+    }
+
+    @Test
+    void resolveForwardReferencesAndCountLost() {
+        ReplyGraph graph = new ReplyGraph(2);
+        graph.addReply(0, 10);
+        graph.addReply(0, 11);
+        // Буфер ожидающих полон - ответ только считается.
+        graph.addReply(0, 12);
+        graph.addMessage(10, 1);
+        graph.resolvePending();
+
+        assertEquals(List.of("0->1:1"), edges(graph));
+        assertEquals(2, graph.unresolvedCount());
+
+        graph.seal();
+        graph.addMessage(11, 1);
+        assertEquals(1, graph.replyCount());
+        assertEquals(2, graph.unresolvedCount());
+    }
+
+    @Test
+    void mergeNextPartResolvesRepliesToEarlierPart() {
+        ReplyGraph first = new ReplyGraph();
+        first.addMessage(1, 0);
+        ReplyGraph second = new ReplyGraph();
+        second.addReply(0, 1);
+        second.addMessage(2, 0);
+        ReplyGraph otherChat = second.copy();
+
+        // Номер 0 второй части - номер 1 объединения.
+        ReplyGraph merged = first.copy();
+        merged.merge(second, new int[]{1}, true);
+        first.merge(otherChat, new int[]{1}, false);
+
+        assertEquals(List.of("1->0:1"), edges(merged));
+        assertEquals(0, merged.unresolvedCount());
+        assertEquals(List.of(), edges(first));
+        assertEquals(1, first.unresolvedCount());
+    }
+
+    @Test
+    void compactLargeBufferIntoCsr() {
+        ReplyGraph graph = new ReplyGraph();
+        for (int slot = 0; slot < 100; slot++) {
+            graph.addMessage(slot, slot);
+        }
+        int replies = ReplyGraph.COMPACT_THRESHOLD + 1_000;
+        for (int i = 0; i < replies; i++) {
+            graph.addReply(i % 97, (i * 31) % 100);
+        }
+
+        long selfReplies = 0;
+        for (int i = 0; i < replies; i++) {
+            if (i % 97 == (i * 31) % 100) {
+                selfReplies++;
+            }
+        }
+        assertEquals(replies - selfReplies, graph.replyCount());
+        assertTrue(graph.edgeCount() <= 97 * 99);
+        int[] previous = {-1, -1};
+        graph.forEachEdge((from, to, weight) -> {
+            assertTrue(from > previous[0] || (from == previous[0] && to > previous[1]));
+            previous[0] = from;
+            previous[1] = to;
+        });
+    }
+
+    private static List<String> edges(ReplyGraph graph) {
+        List<String> edges = new ArrayList<>();
+        graph.forEachEdge((from, to, weight) -> edges.add(from + "->" + to + ":" + weight));
+        return edges;
+    }
+}
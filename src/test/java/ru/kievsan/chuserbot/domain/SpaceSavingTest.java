@@ -0,0 +1,83 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+
+    @Test
+    void exactWhileWithinCapacity() {
+        SpaceSaving summary = new SpaceSaving(10);
+        for (int i = 0; i < 5; i++) {
+            for (int n = 0; n <= i; n++) {
+                summary.add("k" + i, "label" + i);
+            }
+        }
+
+        List<SpaceSaving.Entry> top = summary.top(3);
+
+        assertTrue(summary.exact());
+        assertEquals(List.of(
+                new SpaceSaving.Entry("k4", "label4", 5, 0),
+                new SpaceSaving.Entry("k3", "label3", 4, 0),
+                new SpaceSaving.Entry("k2", "label2", 3, 0)), top);
+    }
+
+    @Test
+    void heavyHittersSurviveEviction() {
+        SpaceSaving summary = new SpaceSaving(50);
+        // 3 частых значения среди 10 000 редких.
+        for (int i = 0; i < 10_000; i++) {
+            summary.add("rare" + i, "");
+            if (i % 10 == 0) {
+                summary.add("hot1", "");
+            }
+            if (i % 20 == 0) {
+                summary.add("hot2", "");
+            }
+            if (i % 40 == 0) {
+                summary.add("hot3", "");
+            }
+        }
+
+        List<SpaceSaving.Entry> top = summary.top(3);
+
+        assertFalse(summary.exact());
+        assertEquals(List.of("hot1", "hot2", "hot3"), top.stream().map(SpaceSaving.Entry::key).toList());
+        long[] truth = {1000, 500, 250};
+        for (int i = 0; i < truth.length; i++) {
+            SpaceSaving.Entry entry = top.get(i);
+            assertTrue(entry.count() >= truth[i] && entry.count() - entry.error() <= truth[i], entry.toString());
+        }
+    }
+
+    @Test
+    void mergeSumsCounts() {
+        SpaceSaving left = new SpaceSaving(10);
+        SpaceSaving right = new SpaceSaving(10);
+        left.add("a", "A");
+        left.add("a", "A");
+        left.add("b", "B");
+        right.add("a", "A");
+        right.add("c", "C");
+        right.add("c", "C");
+        right.add("c", "C");
+        right.add("c", "C");
+
+        left.merge(right);
+
+        assertTrue(left.exact());
+        assertEquals(List.of(
+                new SpaceSaving.Entry("c", "C", 4, 0),
+                new SpaceSaving.Entry("a", "A", 3, 0),
+                new SpaceSaving.Entry("b", "B", 1, 0)), left.top(5));
+    }
+
+    @Test
+    void rejectNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSaving(0));
+    }
+}
@@ -0,0 +1,76 @@
+package ru.kievsan.chuserbot.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextIndexTest {
+
+    @Test
+    void countMessagesPerAuthorIgnoringCaseAndRepeats() {
+        TextIndex text = new TextIndex(1 << 20);
+        message(text, 0, "Привет, мир! привет");
+        message(text, 0, "ПРИВЕТ ещё раз", "и снова @привет");
+        message(text, 2, "Всем привет", "ёлка");
+        message(text, 0, "a b c");
+
+        assertEquals(Map.of(0, 2, 2, 1), search(text, "привет"));
+        assertEquals(Map.of(0, 1), search(text, "Еще"));
+        assertEquals(Map.of(2, 1), search(text, "елка"));
+        // Однобуквенные слова не индексируются.
+        assertEquals(Map.of(), search(text, "a"));
+        assertEquals(Map.of(), search(text, "нет"));
+    }
+
+    @Test
+    void mergeWithSlotMapAndCopy() {
+        TextIndex first = new TextIndex(1 << 20);
+        message(first, 0, "отчёт готов");
+        message(first, 1, "отчёт");
+        TextIndex second = new TextIndex(1 << 20);
+        message(second, 0, "где отчёт");
+        message(second, 1, "отчёт");
+        first.compact();
+
+        TextIndex copy = first.copy();
+        first.merge(second, new int[]{1, 2});
+
+        assertEquals(Map.of(0, 1, 1, 2, 2, 1), search(first, "отчет"));
+        assertEquals(Map.of(1, 1), search(first, "где"));
+        assertEquals(Map.of(0, 1, 1, 1), search(copy, "отчёт"));
+    }
+
+    @Test
+    void dropIndexOverMemoryLimit() {
+        TextIndex text = new TextIndex(4_096);
+        for (int i = 0; i < 1_000 && !text.overflowed(); i++) {
+            message(text, i, "word" + i);
+        }
+
+        assertTrue(text.overflowed());
+        assertEquals(0, text.termCount());
+        assertEquals(0, text.estimatedBytes());
+        assertEquals(Map.of(), search(text, "word1"));
+
+        TextIndex other = new TextIndex(1 << 20);
+        message(other, 0, "word1");
+        other.merge(text, new int[0]);
+        assertTrue(other.overflowed());
+    }
+
+    private static void message(TextIndex text, int slot, String... entities) {
+        text.nextMessage();
+        for (String entity : entities) {
+            text.add(slot, entity);
+        }
+    }
+
+    private static Map<Integer, Integer> search(TextIndex text, String term) {
+        Map<Integer, Integer> found = new TreeMap<>();
+        text.search(term, found::put);
+        return found;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.kievsan.chuserbot.export;
+
+import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.config.BotConfig;
+import ru.kievsan.chuserbot.domain.*;
+import ru.kievsan.chuserbot.domain.Member;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DelimitedReportRendererTest {
+
+    private final ReportRendererImpl fallback = new ReportRendererImpl();
+
+    private static Set<Mention> createMentions(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Mention("@username" + i))
+                .collect(Collectors.toSet());
+    }
+
+    private static String lines(ReportCsvExportResult result) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        result.writeTo(out);
+        String text = out.toString(StandardCharsets.UTF_8);
+        assertEquals('\uFEFF', text.charAt(0));
+        return text.substring(1);
+    }
+
+    @Test
+    void returnTextBelowThreshold() throws Exception {
+        DelimitedReportRenderer renderer = new DelimitedReportRenderer(fallback, ReportFormat.parse("csv"));
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(
+                Set.of(new Member("user1", "Иван Иванов")), Set.of(new Mention("@username1")));
+
+        assertInstanceOf(ReportTextExportResult.class, renderer.render(result, "test.json"));
+    }
+
+    @Test
+    void writeCsvWithStatsAndEscaping() throws Exception {
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        int slot = members.add("user123", "Иванов, \"Ваня\"");
+        stats.addMessage(slot, 1_771_996_858L);
+        stats.addMentions(slot, 3);
+        members.add("user456", "Петр\nПетров");
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(
+                members, createMentions(BotConfig.EXCEL_THRESHOLD - 2), stats);
+        DelimitedReportRenderer renderer = new DelimitedReportRenderer(fallback, ReportFormat.parse("csv"));
+
+        ReportCsvExportResult csv = (ReportCsvExportResult) renderer.render(result, "test.json");
+
+        assertTrue(csv.csvFileName().endsWith(".csv"));
+        String[] rows = lines(csv).split("\r\n");
+        assertEquals("Тип,Id,Имя,Сообщений", rows[0].substring(0, rows[0].indexOf(",Первое")));
+        assertEquals("участник,user123,\"Иванов, \"\"Ваня\"\"\",1,2026-02-25 05:20:58,2026-02-25 05:20:58,3,0",
+                rows[1]);
+        assertEquals("участник,user456,\"Петр\nПетров\",0,,,0,0", rows[2]);
+        assertEquals(3 + BotConfig.EXCEL_THRESHOLD - 2, rows.length);
+        assertTrue(rows[3].matches("упоминание,@username\\d+,,,,,,"), rows[3]);
+    }
+
+    @Test
+    void writeSortedGzipTsv() throws Exception {
+        MemberIndex members = new MemberIndex();
+        members.add("user2", "борис\tб");
+        members.add("user1", "Анна");
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(
+                members, createMentions(BotConfig.EXCEL_THRESHOLD), new MemberStats());
+        DelimitedReportRenderer renderer = new DelimitedReportRenderer(fallback, ReportFormat.parse("tsv sorted gz"));
+
+        ReportCsvExportResult tsv = (ReportCsvExportResult) renderer.render(result, "test.json");
+
+        assertTrue(tsv.csvFileName().endsWith(".tsv.gz"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tsv.writeTo(out);
+        String text;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8).substring(1);
+        }
+        String[] rows = text.split("\n");
+        assertTrue(rows[1].startsWith("участник\tuser1\tАнна\t"));
+        assertTrue(rows[2].startsWith("участник\tuser2\tборис б\t"));
+        assertEquals("упоминание\t@username0" + "\t".repeat(6), rows[3]);
+        assertEquals("упоминание\t@username1" + "\t".repeat(6), rows[4]);
+        assertEquals("упоминание\t@username10" + "\t".repeat(6), rows[5]);
+    }
+
+    @Test
+    void parseReportFormat() {
+        assertEquals(ReportFormat.DEFAULT, ReportFormat.parse(" XLSX "));
+        assertEquals(new ReportFormat(ReportFormat.Type.CSV, true, true), ReportFormat.parse("csv gz sorted"));
+        assertEquals(".csv.gz", ReportFormat.LARGE.extension());
+        assertThrows(IllegalArgumentException.class, () -> ReportFormat.parse("xlsx gz"));
+        assertThrows(IllegalArgumentException.class, () -> ReportFormat.parse("pdf"));
+        assertThrows(IllegalArgumentException.class, () -> ReportFormat.parse(""));
+    }
+}
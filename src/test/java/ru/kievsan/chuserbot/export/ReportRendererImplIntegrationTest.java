@@ -64,13 +64,46 @@ class ReportRendererImplIntegrationTest {
 
         // участников
         assertTrue(text.contains("Участники:"));
-        assertTrue(text.contains("Владислав Почернин"));
-        assertTrue(text.contains("Егор Мартынов"));
+        assertTrue(text.contains("Сергей Киевский"));
+        assertTrue(text.contains("Sergey Kievskiy"));
 
         // упоминания
         assertTrue(text.contains("Упоминания:"));
-        assertTrue(text.contains("@vspochernin"));
-        assertTrue(text.contains("@vspocherninwork"));
+        assertTrue(text.contains("@skievskiy"));
+        assertTrue(text.contains("@skievskiywork"));
+    }
+
+    @Test
+    void renderExcelWithSummaryForFullAccountExport() throws Exception {
+        ChatMsgAnalysisResult first = new ChatMsgAnalysisResult(createMembers(30), createMentions(10));
+        ChatMsgAnalysisResult second = new ChatMsgAnalysisResult(createMembers(60), createMentions(5));
+        MultiChatAnalysisResult analysisResult = new MultiChatAnalysisResult(
+                java.util.List.of(
+                        new MultiChatAnalysisResult.ChatAnalysis("Чат 1", "private_group", 1L, first),
+                        new MultiChatAnalysisResult.ChatAnalysis(null, "personal_chat", 2L, second)),
+                first.merge(second));
+
+        ReportExportResult reportRes = renderer.renderChats(analysisResult, "result.json");
+
+        assertInstanceOf(ReportExcelExportResult.class, reportRes);
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) reportRes;
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            assertEquals(3, workbook.getNumberOfSheets());
+
+            Sheet summary = workbook.getSheetAt(0);
+            assertEquals("Сводка", summary.getSheetName());
+            assertEquals("Чат", summary.getRow(0).getCell(0).getStringCellValue());
+            assertEquals("Чат 1", summary.getRow(1).getCell(0).getStringCellValue());
+            assertEquals(30, (int) summary.getRow(1).getCell(3).getNumericCellValue());
+            assertEquals("Чат 2", summary.getRow(2).getCell(0).getStringCellValue());
+            assertEquals("Всего (уникальных)", summary.getRow(3).getCell(0).getStringCellValue());
+            assertEquals(60, (int) summary.getRow(3).getCell(3).getNumericCellValue());
+            assertEquals(10, (int) summary.getRow(3).getCell(4).getNumericCellValue());
+
+            assertEquals("Участники", workbook.getSheetAt(1).getSheetName());
+            assertEquals(60, workbook.getSheetAt(1).getLastRowNum());
+            assertEquals("Упоминания", workbook.getSheetAt(2).getSheetName());
+        }
     }
 
     @Test
@@ -236,6 +236,236 @@ class ReportRendererImplTest {
         }
     }
 
+    @Test
+    void createExcelWithMemberStatsColumns() throws Exception {
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        int slot = members.add("user123", "Иван Иванов");
+        stats.addMessage(slot, 1_771_996_858L);
+        stats.addMessage(slot, 1_771_996_862L);
+        stats.addMentions(slot, 3);
+        members.add("user456", "Петр Петров");
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(
+                members, createMentions(BotConfig.EXCEL_THRESHOLD - 2), stats);
+
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(result, "test.json");
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            Sheet participantsSheet = workbook.getSheetAt(0);
+            assertEquals("Сообщений", participantsSheet.getRow(0).getCell(3).getStringCellValue());
+            assertEquals("Упоминаний в сообщениях", participantsSheet.getRow(0).getCell(6).getStringCellValue());
+
+            Row row = participantsSheet.getRow(1);
+            assertEquals("user123", row.getCell(1).getStringCellValue());
+            assertEquals(2, (int) row.getCell(3).getNumericCellValue());
+            assertEquals("2026-02-25 05:20:58", row.getCell(4).getStringCellValue());
+            assertEquals("2026-02-25 05:21:02", row.getCell(5).getStringCellValue());
+            assertEquals(3, (int) row.getCell(6).getNumericCellValue());
+            assertEquals(0, (int) participantsSheet.getRow(2).getCell(3).getNumericCellValue());
+            assertEquals("", participantsSheet.getRow(2).getCell(4).getStringCellValue());
+
+            assertEquals(2, workbook.getSheetAt(1).getRow(0).getLastCellNum());
+        }
+    }
+
+    @Test
+    void createExcelWithMemberStatsBeyondRowWindow() throws Exception {
+        int count = ReportRendererImpl.EXCEL_ROW_WINDOW * 5 + 7;
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        for (int i = 0; i < count; i++) {
+            int slot = members.add("user" + i, "User " + i);
+            for (int m = 0; m <= i % 3; m++) {
+                stats.addMessage(slot, MemberStats.NO_DATE);
+            }
+        }
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(members, Set.of(), stats);
+
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(result, "test.json");
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            Sheet participantsSheet = workbook.getSheetAt(0);
+            assertEquals(count, participantsSheet.getLastRowNum());
+            for (int i : new int[]{0, ReportRendererImpl.EXCEL_ROW_WINDOW, count - 1}) {
+                Row row = participantsSheet.getRow(i + 1);
+                assertEquals("user" + i, row.getCell(1).getStringCellValue());
+                assertEquals(i % 3 + 1, (int) row.getCell(3).getNumericCellValue());
+            }
+        }
+    }
+
+    @Test
+    void setColumnWidthsFromLongestValue() throws Exception {
+        Set<Member> members = new java.util.HashSet<>(createMembers(BotConfig.EXCEL_THRESHOLD));
+        members.add(new Member("user_long", "Щукина Жанна Шамилевна-Мышкина"));
+
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(
+                new ChatMsgAnalysisResult(members, Set.of()), "test.json");
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            Sheet participantsSheet = workbook.getSheetAt(0);
+            int nameWidth = participantsSheet.getColumnWidth(2);
+            // Колонка вмещает самое длинное имя; эмодзи (пара char) - один широкий знак.
+            assertEquals(2, ColumnWidths.estimate("\uD83D\uDE00"));
+            assertTrue(nameWidth >= ColumnWidths.estimate("Щукина Жанна Шамилевна-Мышкина") * 256, "width " + nameWidth);
+            assertTrue(participantsSheet.getColumnWidth(0) < nameWidth);
+        }
+    }
+
+    @Test
+    void writeExcelStraightToStream() throws Exception {
+        ChatMsgAnalysisResult result = createLargeResult(BotConfig.EXCEL_THRESHOLD);
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(result, "test.json");
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("report-", ".xlsx");
+        try {
+            try (java.io.OutputStream out = java.nio.file.Files.newOutputStream(file)) {
+                excelResult.writeTo(out);
+            }
+            try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+                assertEquals(result.getMembersCount(), workbook.getSheetAt(0).getLastRowNum());
+                assertEquals(result.getMentionsCount(), workbook.getSheetAt(1).getLastRowNum());
+            }
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void warnWhenMembersExceedExcelRows() throws Exception {
+        // Множество только сообщает размер: строки не пишутся, проверяется предупреждение.
+        Set<Member> members = new java.util.AbstractSet<>() {
+            @Override
+            public java.util.Iterator<Member> iterator() {
+                return java.util.Collections.emptyIterator();
+            }
+
+            @Override
+            public int size() {
+                return ReportRendererImpl.EXCEL_LAST_ROW + 1;
+            }
+        };
+
+        ReportExportResult result = renderer.render(new ChatMsgAnalysisResult(members, Set.of()), "test.json");
+
+        assertNotNull(result.warning());
+        assertTrue(result.warning().contains("участников " + (ReportRendererImpl.EXCEL_LAST_ROW + 1)), result.warning());
+        assertNull(renderer.render(createLargeResult(BotConfig.EXCEL_THRESHOLD), "test.json").warning());
+    }
+
+    @Test
+    void truncateTextOverExcelCellLimitAndReportWriteFailures() throws Exception {
+        Set<Member> members = new java.util.HashSet<>(createMembers(BotConfig.EXCEL_THRESHOLD));
+        members.add(new Member("user_long", "x".repeat(40_000)));
+
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(
+                new ChatMsgAnalysisResult(members, Set.of()), "test.json");
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            int longest = 0;
+            for (Row row : workbook.getSheetAt(0)) {
+                longest = Math.max(longest, row.getCell(2).getStringCellValue().length());
+            }
+            assertEquals(32_767, longest);
+        }
+
+        ReportExcelExportResult failing = new ReportExcelExportResult("test.json", out -> {
+            throw new IllegalArgumentException("Invalid row number");
+        }, "test.xlsx", null);
+        java.io.IOException e = assertThrows(java.io.IOException.class,
+                () -> failing.writeTo(java.io.OutputStream.nullOutputStream()));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
+    @Test
+    void createExcelWithTopSheet() throws Exception {
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        for (int i = 0; i < BotConfig.EXCEL_THRESHOLD; i++) {
+            int slot = members.add("user" + i, "User " + i);
+            for (int m = 0; m < i % 7; m++) {
+                stats.addMessage(slot, MemberStats.NO_DATE);
+            }
+        }
+        MentionIndex mentions = new MentionIndex();
+        mentions.add("@rare");
+        mentions.add("@often");
+        mentions.add("@often");
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(members, mentions, stats);
+
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(result, "test.json");
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            assertEquals(3, workbook.getNumberOfSheets());
+            Sheet topSheet = workbook.getSheetAt(2);
+            assertEquals("Топ", topSheet.getSheetName());
+
+            // 6 сообщений у user6, user13, ... - при равенстве раньше меньший номер.
+            assertEquals("user6", topSheet.getRow(1).getCell(0).getStringCellValue());
+            assertEquals(6, (int) topSheet.getRow(1).getCell(2).getNumericCellValue());
+            assertEquals("user13", topSheet.getRow(2).getCell(0).getStringCellValue());
+            assertEquals(Math.min(BotConfig.TOP_N, 43), topSheet.getLastRowNum());
+
+            assertEquals("@often", topSheet.getRow(1).getCell(4).getStringCellValue());
+            assertEquals(2, (int) topSheet.getRow(1).getCell(5).getNumericCellValue());
+            assertEquals("@rare", topSheet.getRow(2).getCell(4).getStringCellValue());
+            assertNull(topSheet.getRow(3).getCell(4));
+        }
+    }
+
+    @Test
+    void warnWhenReplyPairsExceedExcelRows() throws Exception {
+        // Каждый из 1025 участников отвечает всем остальным: пар больше, чем строк листа.
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        int count = 1025;
+        for (int i = 0; i < count; i++) {
+            int slot = members.add("user" + i, "User " + i);
+            stats.addMessage(slot, MemberStats.NO_DATE);
+            stats.replies().addMessage(slot + 1, slot);
+        }
+        for (int from = 0; from < count; from++) {
+            for (int to = 0; to < count; to++) {
+                stats.replies().addReply(from, to + 1);
+            }
+        }
+
+        ReportExportResult result = renderer.render(new ChatMsgAnalysisResult(members, Set.of(), stats), "test.json");
+
+        assertTrue(stats.replies().edgeCount() > ReportRendererImpl.EXCEL_LAST_ROW);
+        assertNotNull(result.warning());
+        assertTrue(result.warning().contains("«Ответы» " + stats.replies().edgeCount()), result.warning());
+        assertFalse(result.warning().contains("/format csv"), result.warning());
+    }
+
+    @Test
+    void createExcelWithRepliesSheet() throws Exception {
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        int ivan = members.add("user123", "Иван Иванов");
+        int petr = members.add("user456", "Петр Петров");
+        stats.addMessage(ivan, MemberStats.NO_DATE);
+        stats.replies().addMessage(1, ivan);
+        stats.replies().addReply(petr, 1);
+        stats.replies().addReply(petr, 1);
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(
+                members, createMentions(BotConfig.EXCEL_THRESHOLD - 2), stats);
+
+        ReportExcelExportResult excelResult = (ReportExcelExportResult) renderer.render(result, "test.json");
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(excelResult.excelBytes()))) {
+            Sheet repliesSheet = workbook.getSheet("Ответы");
+            assertNotNull(repliesSheet);
+            assertEquals(workbook.getNumberOfSheets() - 1, workbook.getSheetIndex(repliesSheet));
+            Row row = repliesSheet.getRow(1);
+            assertEquals("user456", row.getCell(0).getStringCellValue());
+            assertEquals("Петр Петров", row.getCell(1).getStringCellValue());
+            assertEquals("user123", row.getCell(2).getStringCellValue());
+            assertEquals(2, (int) row.getCell(4).getNumericCellValue());
+            assertEquals(1, repliesSheet.getLastRowNum());
+        }
+    }
+
     @Test
     void createExcelWithCorrectMentionsData() throws Exception {
         LocalDate today = LocalDate.now();
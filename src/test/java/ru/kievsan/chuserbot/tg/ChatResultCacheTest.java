@@ -0,0 +1,126 @@
+package ru.kievsan.chuserbot.tg;
+
+import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.Member;
+import ru.kievsan.chuserbot.domain.MemberIndex;
+import ru.kievsan.chuserbot.domain.MemberStats;
+import ru.kievsan.chuserbot.domain.Mention;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatResultCacheTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void keepLastResultPerChat() {
+        ChatResultCache cache = new ChatResultCache(Duration.ofMinutes(60), 1_000, clock);
+        ChatMsgAnalysisResult first = result("user1");
+        ChatMsgAnalysisResult second = result("user2", "user3");
+
+        assertTrue(cache.put(1L, first));
+        assertTrue(cache.put(1L, second));
+
+        assertSame(second, cache.get(1L));
+        assertNull(cache.get(2L));
+        assertEquals(second.getTotalCount(), cache.totalEntities());
+    }
+
+    @Test
+    void rejectResultWithoutStatsOrOverLimit() {
+        ChatResultCache cache = new ChatResultCache(Duration.ofMinutes(60), 3, clock);
+
+        assertFalse(cache.put(1L, new ChatMsgAnalysisResult(Set.of(new Member("user1", "A")), Set.of())));
+        assertFalse(cache.put(1L, result("user1", "user2", "user3")));
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.totalEntities());
+    }
+
+    @Test
+    void evictLeastRecentlyUsedOverLimitAndIdle() {
+        ChatResultCache cache = new ChatResultCache(Duration.ofMinutes(60), 6, clock);
+        cache.put(1L, result("user1", "user2"));
+        cache.put(2L, result("user3", "user4"));
+        clock.advance(Duration.ofMinutes(10));
+        assertNotNull(cache.get(1L));
+
+        // Чат 2 - дольше всего без обращений, уступает место.
+        cache.put(3L, result("user5", "user6"));
+        assertNull(cache.get(2L));
+        assertNotNull(cache.get(1L));
+
+        clock.advance(Duration.ofMinutes(61));
+        assertEquals(2, cache.evictIdle());
+        assertEquals(0, cache.totalEntities());
+    }
+
+    @Test
+    void evictTextIndexOfLeastRecentlyUsedOverBudget() {
+        ChatMsgAnalysisResult first = withText(result("user1"), "первый чат");
+        ChatMsgAnalysisResult second = withText(result("user2"), "второй чат");
+        long firstBytes = first.stats().text().estimatedBytes();
+        assertEquals(firstBytes, second.stats().text().estimatedBytes());
+        // Помещается только один индекс.
+        ChatResultCache cache = new ChatResultCache(Duration.ofMinutes(60), 1_000, firstBytes * 3 / 2, clock);
+
+        cache.put(1L, first);
+        assertEquals(firstBytes, cache.totalTextBytes());
+        cache.put(2L, second);
+
+        // Результат остаётся, удаляется только индекс слов.
+        assertSame(first, cache.get(1L));
+        assertNull(first.stats().text());
+        assertNotNull(second.stats().text());
+        assertEquals(second.stats().text().estimatedBytes(), cache.totalTextBytes());
+
+        clock.advance(Duration.ofMinutes(61));
+        cache.evictIdle();
+        assertEquals(0, cache.totalTextBytes());
+    }
+
+    private static ChatMsgAnalysisResult withText(ChatMsgAnalysisResult result, String text) {
+        result.stats().enableText(1 << 20);
+        result.stats().text().nextMessage();
+        result.stats().text().add(0, text);
+        return result;
+    }
+
+    private static ChatMsgAnalysisResult result(String... fromIds) {
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        for (String fromId : fromIds) {
+            stats.addMessage(members.add(fromId, fromId), MemberStats.NO_DATE);
+        }
+        return new ChatMsgAnalysisResult(members, Set.of(new Mention("@common")), stats);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
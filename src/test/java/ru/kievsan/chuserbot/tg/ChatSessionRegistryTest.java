@@ -0,0 +1,146 @@
+package ru.kievsan.chuserbot.tg;
+
+import org.junit.jupiter.api.Test;
+import ru.kievsan.chuserbot.domain.ChatMsgAnalysisResult;
+import ru.kievsan.chuserbot.domain.Member;
+import ru.kievsan.chuserbot.domain.MemberIndex;
+import ru.kievsan.chuserbot.domain.MemberStats;
+import ru.kievsan.chuserbot.domain.Mention;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult;
+import ru.kievsan.chuserbot.domain.MultiChatAnalysisResult.ChatAnalysis;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatSessionRegistryTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void mergeFilesIncrementallyKeepingFirstDisplayName() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry(Duration.ofMinutes(30), 1_000, clock);
+        registry.start(1L);
+
+        assertEquals(1, registry.add(1L, file("Чат 1", new Member("user1", "Первое"), new Member("user2", "B"))));
+        assertEquals(2, registry.add(1L, file("Чат 2", new Member("user1", "Второе"), new Member("user3", "C"))));
+        MultiChatAnalysisResult result = registry.finish(1L);
+
+        assertEquals(List.of("Чат 1", "Чат 2"), result.chats().stream().map(ChatAnalysis::name).toList());
+        assertEquals(3, result.total().getMembersCount());
+        assertEquals(1, result.total().getMentionsCount());
+        assertTrue(result.total().members().stream()
+                .anyMatch(m -> m.fromId().equals("user1") && m.displayName().equals("Первое")));
+        assertFalse(registry.isActive(1L));
+        assertEquals(0, registry.totalEntities());
+    }
+
+    @Test
+    void finishWithoutFilesOrSessionReturnsNull() {
+        ChatSessionRegistry registry = new ChatSessionRegistry(Duration.ofMinutes(30), 1_000, clock);
+
+        assertNull(registry.finish(1L));
+        registry.start(1L);
+        assertNull(registry.finish(1L));
+        assertThrows(IllegalStateException.class, () -> registry.add(1L, file("Чат", new Member("user1", "A"))));
+    }
+
+    @Test
+    void evictIdleSessionsAndReleaseMemory() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry(Duration.ofMinutes(30), 1_000, clock);
+        registry.start(1L);
+        registry.add(1L, file("Чат", new Member("user1", "A")));
+        clock.advance(Duration.ofMinutes(20));
+        registry.start(2L);
+        assertTrue(registry.totalEntities() > 0);
+
+        clock.advance(Duration.ofMinutes(15));
+
+        assertFalse(registry.isActive(1L));
+        assertTrue(registry.isActive(2L));
+        assertEquals(0, registry.totalEntities());
+    }
+
+    @Test
+    void rejectFileOverMemoryLimitKeepingSession() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry(Duration.ofMinutes(30), 10, clock);
+        registry.start(1L);
+        registry.add(1L, file("Чат 1", new Member("user1", "A")));
+        long entities = registry.totalEntities();
+
+        assertThrows(ChatSessionRegistry.SessionLimitException.class, () -> registry.add(1L,
+                file("Чат 2", new Member("user2", "B"), new Member("user3", "C"), new Member("user4", "D"))));
+
+        assertEquals(entities, registry.totalEntities());
+        assertEquals(1, registry.finish(1L).chats().size());
+    }
+
+    @Test
+    void keepTextIndexOnlyOnSessionTotalWithinBudget() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry(Duration.ofMinutes(30), 1_000, 1 << 20, clock);
+        registry.start(1L);
+        ChatMsgAnalysisResult first = indexedResult("user1", "привет");
+        ChatMsgAnalysisResult second = indexedResult("user2", "привет");
+
+        registry.add(1L, new MultiChatAnalysisResult(List.of(new ChatAnalysis("Чат 1", null, 1L, first)), first));
+        assertEquals(first.stats().text().estimatedBytes(), registry.totalTextBytes());
+        registry.add(1L, new MultiChatAnalysisResult(List.of(new ChatAnalysis("Чат 2", null, 2L, second)), second));
+
+        MultiChatAnalysisResult result = registry.finish(1L);
+        assertNull(first.stats().text());
+        assertNull(second.stats().text());
+        assertNotNull(result.total().stats().text());
+        assertEquals(0, registry.totalTextBytes());
+
+        ChatSessionRegistry tight = new ChatSessionRegistry(Duration.ofMinutes(30), 1_000, 1, clock);
+        tight.start(1L);
+        ChatMsgAnalysisResult large = indexedResult("user1", "привет");
+        tight.add(1L, new MultiChatAnalysisResult(List.of(new ChatAnalysis("Чат", null, 1L, large)), large));
+        assertNull(large.stats().text());
+        assertEquals(0, tight.totalTextBytes());
+    }
+
+    private static ChatMsgAnalysisResult indexedResult(String fromId, String text) {
+        MemberIndex members = new MemberIndex();
+        MemberStats stats = new MemberStats();
+        stats.enableText(1 << 20);
+        int slot = members.add(fromId, fromId);
+        stats.addMessage(slot, MemberStats.NO_DATE);
+        stats.text().nextMessage();
+        stats.text().add(slot, text);
+        return new ChatMsgAnalysisResult(members, Set.of(), stats);
+    }
+
+    private static MultiChatAnalysisResult file(String chatName, Member... members) {
+        ChatMsgAnalysisResult result = new ChatMsgAnalysisResult(Set.of(members), Set.of(new Mention("@common")));
+        return new MultiChatAnalysisResult(List.of(new ChatAnalysis(chatName, "private_group", 1L, result)), result);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}